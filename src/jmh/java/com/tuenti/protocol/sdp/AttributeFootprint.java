@@ -0,0 +1,89 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.AbstractPacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.CandidatePacketExtension;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares the heap retained by the attributes of an extension in the compact attribute store of
+ * {@link AbstractPacketExtension}, two parallel arrays, with the <tt>LinkedHashMap</tt> it used to keep them in. The
+ * extensions are given the attributes of a server reflexive candidate, the values being shared by all of them so
+ * that only the storage is measured.
+ *
+ * Run with <tt>gradle footprint -Pfootprint=AttributeFootprint</tt>.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+public final class AttributeFootprint {
+
+	private static final int EXTENSIONS = 100000;
+
+	private static final String[] NAMES = {
+			CandidatePacketExtension.COMPONENT_ATTR_NAME,
+			CandidatePacketExtension.FOUNDATION_ATTR_NAME,
+			CandidatePacketExtension.GENERATION_ATTR_NAME,
+			CandidatePacketExtension.ID_ATTR_NAME,
+			CandidatePacketExtension.IP_ATTR_NAME,
+			CandidatePacketExtension.NETWORK_ATTR_NAME,
+			CandidatePacketExtension.PORT_ATTR_NAME,
+			CandidatePacketExtension.PRIORITY_ATTR_NAME,
+			CandidatePacketExtension.PROTOCOL_ATTR_NAME,
+			CandidatePacketExtension.TYPE_ATTR_NAME,
+			CandidatePacketExtension.REL_ADDR_ATTR_NAME,
+			CandidatePacketExtension.REL_PORT_ATTR_NAME
+	};
+
+	private static final String[] VALUES = {
+			"1", "2", "0", "el0747fg11", "172.22.76.221", "1", "36798", "1694498815", "udp", "srflx", "10.0.34.44",
+			"48296"
+	};
+
+	/**
+	 * An extension that keeps all its attributes in the attribute store, unlike the candidate, which has fields of
+	 * its own for them.
+	 */
+	private static final class Element extends AbstractPacketExtension {
+		Element() {
+			super(null, "element");
+		}
+	}
+
+	private AttributeFootprint() {
+	}
+
+	public static void main(final String[] args) {
+		long empty = HeapFootprint.bytesPerInstance(new HeapFootprint.Factory<Element>() {
+			@Override
+			public Element create(int index) {
+				return new Element();
+			}
+		}, EXTENSIONS);
+		long compact = HeapFootprint.bytesPerInstance(new HeapFootprint.Factory<Element>() {
+			@Override
+			public Element create(int index) {
+				Element element = new Element();
+				for (int i = 0; i < NAMES.length; i++) {
+					element.setAttribute(NAMES[i], VALUES[i]);
+				}
+				return element;
+			}
+		}, EXTENSIONS);
+		long map = HeapFootprint.bytesPerInstance(new HeapFootprint.Factory<Map<String, Object>>() {
+			@Override
+			public Map<String, Object> create(int index) {
+				Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+				for (int i = 0; i < NAMES.length; i++) {
+					attributes.put(NAMES[i], VALUES[i]);
+				}
+				return attributes;
+			}
+		}, EXTENSIONS);
+
+		System.out.println(NAMES.length + " attributes, bytes per extension:");
+		System.out.println("  without attributes:             " + empty);
+		System.out.println("  compact attribute store:        " + compact);
+		System.out.println("  LinkedHashMap attribute store:  " + (empty + map) + " (map alone: " + map + ")");
+	}
+}
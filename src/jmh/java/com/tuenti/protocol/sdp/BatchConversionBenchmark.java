@@ -0,0 +1,62 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.JingleIQ;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of batch conversions for different pool sizes. Compare the scores of the
+ * <tt>parallelism</tt> values to see how the batch scales with cores.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchConversionBenchmark {
+
+	private static final int BATCH_SIZE = 1000;
+
+	@Param({"1", "2", "4", "8"})
+	public int parallelism;
+
+	private ForkJoinPool pool;
+	private List<String> sdps;
+	private List<JingleIQ> jingles;
+
+	@Setup
+	public void setUp() {
+		pool = new ForkJoinPool(parallelism);
+		sdps = new ArrayList<String>(BATCH_SIZE);
+		jingles = new ArrayList<JingleIQ>(BATCH_SIZE);
+		String sdp = SampleSdp.withContents(2);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			sdps.add(sdp);
+			jingles.add(SdpToJingle.jingleFromSdp((CharSequence) sdp));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public List<ConversionResult<JingleIQ>> jingleFromSdpBatch() {
+		return SdpToJingle.jingleFromSdpBatch(sdps, pool);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public List<ConversionResult<String>> sdpFromJingleBatch() {
+		return SdpToJingle.sdpFromJingleBatch(jingles, pool);
+	}
+}
@@ -0,0 +1,77 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.ContentPacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.JingleAction;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.JingleIQ;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.JingleIQProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways a conference focus can get a copy of the contents of a participant for each of the others:
+ * deep-copying the contents, converting the SDP again and parsing the Jingle XML again.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentCopyBenchmark {
+
+	@Param({"100"})
+	public int participants;
+
+	private String sdp;
+
+	private String xml;
+
+	private List<ContentPacketExtension> contents;
+
+	private JingleIQProvider provider;
+
+	@Setup
+	public void setUp() {
+		sdp = SampleSdp.withContents(2);
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) sdp);
+		jingle.setAction(JingleAction.SESSION_INITIATE);
+		xml = jingle.getChildElementXML();
+		contents = jingle.getContentList();
+		provider = new JingleIQProvider();
+	}
+
+	@Benchmark
+	public void deepCopy(final Blackhole blackhole) {
+		for (int i = 0; i < participants; i++) {
+			for (ContentPacketExtension content : contents) {
+				blackhole.consume(content.deepCopy());
+			}
+		}
+	}
+
+	@Benchmark
+	public void jingleFromSdp(final Blackhole blackhole) {
+		for (int i = 0; i < participants; i++) {
+			blackhole.consume(SdpToJingle.jingleFromSdp((CharSequence) sdp).getContentList());
+		}
+	}
+
+	@Benchmark
+	public void parseXml(final Blackhole blackhole) throws Exception {
+		for (int i = 0; i < participants; i++) {
+			XmlPullParser parser = new MXParser();
+			parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+			parser.setInput(new StringReader(xml));
+			parser.next();
+			blackhole.consume(provider.parseIQ(parser).getContentList());
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.tuenti.protocol.sdp;
+
+/**
+ * Measures the heap retained by the objects a factory creates: the used heap after a full collection is compared
+ * before and after creating many of them, and divided by their number. JOL would give the exact layout of one
+ * instance; this only needs the JDK and measures what a live process actually retains.
+ *
+ * Run the measurements with a collector that compacts on <tt>System.gc()</tt>, e.g. <tt>-XX:+UseSerialGC</tt>.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+final class HeapFootprint {
+
+	/**
+	 * Creates the objects to measure.
+	 *
+	 * @param <T> Type of the objects created.
+	 */
+	interface Factory<T> {
+		T create(int index);
+	}
+
+	private HeapFootprint() {
+	}
+
+	/**
+	 * @param factory Factory - Creates the objects to measure.
+	 * @param count int - Number of objects kept alive while measuring.
+	 * @return long - The heap retained per object, in bytes.
+	 */
+	static long bytesPerInstance(final Factory<?> factory, final int count) {
+		// Created before the first measurement, so that only the objects are measured.
+		Object[] retained = new Object[count];
+		long before = usedHeap();
+		for (int i = 0; i < count; i++) {
+			retained[i] = factory.create(i);
+		}
+		long after = usedHeap();
+		if (retained[count - 1] == null) {
+			throw new IllegalStateException("The factory created null");
+		}
+		return (after - before) / count;
+	}
+
+	/**
+	 * @return long - The heap in use after a full collection, in bytes.
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		// Until a collection frees nothing more.
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now >= used) {
+				break;
+			}
+			used = now;
+		}
+		return used;
+	}
+}
@@ -0,0 +1,50 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.ContentPacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.JingleIQ;
+
+/**
+ * Measures the heap retained by a Jingle stanza with 2 contents and 20 candidates converted from SDP, the size of a
+ * typical audio and video offer, as converted and as frozen.
+ *
+ * Run with <tt>gradle footprint -Pfootprint=JingleFootprint</tt>.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+public final class JingleFootprint {
+
+	private static final int STANZAS = 20000;
+
+	private JingleFootprint() {
+	}
+
+	public static void main(final String[] args) {
+		final String sdp = SampleSdp.withCandidates(2, 20);
+		// Loads the classes and tables that every stanza shares before measuring.
+		freeze(SdpToJingle.jingleFromSdp((CharSequence) sdp));
+
+		long converted = HeapFootprint.bytesPerInstance(new HeapFootprint.Factory<JingleIQ>() {
+			@Override
+			public JingleIQ create(int index) {
+				return SdpToJingle.jingleFromSdp((CharSequence) sdp);
+			}
+		}, STANZAS);
+		long frozen = HeapFootprint.bytesPerInstance(new HeapFootprint.Factory<JingleIQ>() {
+			@Override
+			public JingleIQ create(int index) {
+				return freeze(SdpToJingle.jingleFromSdp((CharSequence) sdp));
+			}
+		}, STANZAS);
+
+		System.out.println("2 contents, 20 candidates, bytes per stanza:");
+		System.out.println("  converted: " + converted);
+		System.out.println("  frozen:    " + frozen);
+	}
+
+	private static JingleIQ freeze(final JingleIQ jingle) {
+		for (ContentPacketExtension content : jingle.getContentList()) {
+			content.freeze();
+		}
+		return jingle;
+	}
+}
@@ -0,0 +1,42 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.JingleIQ;
+import net.sourceforge.jsdp.SDPFactory;
+import net.sourceforge.jsdp.SDPParseException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares converting an SDP offer through the jsdp object model with scanning the SDP text directly.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JingleFromSdpBenchmark {
+
+	@Param({"2", "20"})
+	public int contents;
+
+	private String sdp;
+
+	@Setup
+	public void setUp() {
+		sdp = SampleSdp.withContents(contents);
+	}
+
+	@Benchmark
+	public JingleIQ sessionDescription() throws SDPParseException {
+		return SdpToJingle.jingleFromSdp(SDPFactory.parseSessionDescription(sdp));
+	}
+
+	@Benchmark
+	public JingleIQ tokenizer() {
+		return SdpToJingle.jingleFromSdp((CharSequence) sdp);
+	}
+}
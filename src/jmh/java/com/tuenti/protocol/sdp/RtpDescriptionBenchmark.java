@@ -0,0 +1,96 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serializing an RTP description with 30 codecs, as sent by browsers that offer every profile of every
+ * codec they support, and looking its payload types up. <tt>getChildExtensions()</tt> used to copy all the children
+ * into a list shared by all callers on every call. Run with "-prof gc" to see the allocation per operation.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RtpDescriptionBenchmark {
+
+	@Param({"30"})
+	public int codecs;
+
+	private RtpDescriptionPacketExtension description;
+
+	private RtpDescriptionPacketExtension frozenDescription;
+
+	@Setup
+	public void setUp() {
+		description = newDescription();
+		frozenDescription = newDescription();
+		frozenDescription.freeze();
+	}
+
+	private RtpDescriptionPacketExtension newDescription() {
+		RtpDescriptionPacketExtension description = new RtpDescriptionPacketExtension();
+		description.setMedia("video");
+		description.setProfile("UDP/TLS/RTP/SAVPF");
+		for (int i = 0; i < codecs; i++) {
+			PayloadTypePacketExtension payloadType = new PayloadTypePacketExtension();
+			payloadType.setId(96 + i);
+			payloadType.setName(i % 2 == 0 ? "H264" : "rtx");
+			payloadType.setClockrate("90000");
+			ParameterPacketExtension parameter = new ParameterPacketExtension();
+			parameter.setName(i % 2 == 0 ? "profile-level-id" : "apt");
+			parameter.setValue(i % 2 == 0 ? "42e01f" : Integer.toString(95 + i));
+			payloadType.addParameter(parameter);
+			description.addPayloadType(payloadType);
+		}
+		EncryptionPacketExtension encryption = new EncryptionPacketExtension();
+		CryptoPacketExtension crypto = new CryptoPacketExtension();
+		crypto.setTag("1");
+		crypto.setCryptoSuite("AES_CM_128_HMAC_SHA1_80");
+		crypto.setKeyParams("inline:5ydJsA+FZVpAyqJMT/nW/UW+tcOmDvXJh/pPhNRe");
+		encryption.addCrypto(crypto);
+		description.addChildExtension(encryption);
+		description.addChildExtension(new RtcpMuxExtension());
+		return description;
+	}
+
+	@Benchmark
+	public String toXml() {
+		return description.toXML();
+	}
+
+	/**
+	 * Serializes the same description from several threads, which used to refill the same children list.
+	 */
+	@Benchmark
+	@Threads(4)
+	public String toXmlConcurrently() {
+		return description.toXML();
+	}
+
+	/**
+	 * Serializes the same frozen description from several threads, which read it without taking any lock.
+	 */
+	@Benchmark
+	@Threads(4)
+	public String frozenToXmlConcurrently() {
+		return frozenDescription.toXML();
+	}
+
+	@Benchmark
+	public List<PayloadTypePacketExtension> payloadTypesOfType() {
+		return description.getChildExtensionsOfType(PayloadTypePacketExtension.class);
+	}
+
+	@Benchmark
+	public EncryptionPacketExtension firstChildOfType() {
+		return description.getFirstChildOfType(EncryptionPacketExtension.class);
+	}
+}
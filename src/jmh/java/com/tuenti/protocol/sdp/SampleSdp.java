@@ -0,0 +1,110 @@
+package com.tuenti.protocol.sdp;
+
+/**
+ * SDP fixtures shared by the benchmarks.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+public final class SampleSdp {
+	private static final String SESSION = "v=0\r\n"
+			+ "o=- 123 1 IN IP4 127.0.0.1\r\n"
+			+ "s=session\r\n"
+			+ "t=0 0\r\n";
+
+	private static final String AUDIO = "m=audio 36798 RTP/AVPF 111 103 104 0 8 106 105 13 126\r\n"
+			+ "c=IN IP4 172.22.76.221\r\n"
+			+ "a=rtcp:36798 IN IP4 172.22.76.221\r\n"
+			+ "a=ice-ufrag:YuWMyUbmK/CX6awo\r\n"
+			+ "a=ice-pwd:DpueNNn6/r6TTRFMqNWw0v/c\r\n"
+			+ "a=candidate:1 2 udp 1 172.22.76.221 47216 typ host generation 0\r\n"
+			+ "a=candidate:1 1 udp 1 172.22.76.221 48235 typ host generation 0\r\n"
+			+ "a=candidate:1 2 udp 2 172.22.76.221 36798 typ srflx raddr 10.0.34.44 rport 48296 generation 0\r\n"
+			+ "a=candidate:1 1 udp 2 172.22.76.221 50102 typ relay raddr 213.99.45.11 rport 4313 generation 0\r\n"
+			+ "a=sendrecv\r\n"
+			+ "a=mid:{{MID}}\r\n"
+			+ "a=rtcp-mux\r\n"
+			+ "a=crypto:0 AES_CM_128_HMAC_SHA1_32 inline:keNcG3HezSNID7LmfDa9J4lfdUL8W1F7TNJKcbuy\r\n"
+			+ "a=rtpmap:111 opus/48000/2\r\n"
+			+ "a=rtpmap:103 ISAC/16000\r\n"
+			+ "a=rtpmap:104 ISAC/32000\r\n"
+			+ "a=rtpmap:0 PCMU/8000\r\n"
+			+ "a=rtpmap:8 PCMA/8000\r\n"
+			+ "a=rtpmap:106 CN/32000\r\n"
+			+ "a=rtpmap:105 CN/16000\r\n"
+			+ "a=rtpmap:13 CN/8000\r\n"
+			+ "a=rtpmap:126 telephone-event/8000\r\n"
+			+ "a=ssrc:2570980487 cname:hsWuSQJxx7przmb8\r\n"
+			+ "a=ssrc:2570980487 mslabel:stream_label\r\n"
+			+ "a=ssrc:2570980487 label:audio_label\r\n";
+
+	private static final String VIDEO = "m=video 39456 RTP/AVPF 100 101 102\r\n"
+			+ "c=IN IP4 172.22.76.221\r\n"
+			+ "a=rtcp:39456 IN IP4 172.22.76.221\r\n"
+			+ "a=ice-ufrag:YuWMyUbmK/CX6awo\r\n"
+			+ "a=ice-pwd:DpueNNn6/r6TTRFMqNWw0v/c\r\n"
+			+ "a=candidate:1 2 udp 1 172.22.76.221 40550 typ host generation 0\r\n"
+			+ "a=candidate:1 1 udp 1 172.22.76.221 53441 typ host generation 0\r\n"
+			+ "a=candidate:1 2 udp 2 172.22.76.221 46128 typ srflx raddr 10.0.34.43 rport 48295 generation 0\r\n"
+			+ "a=candidate:1 1 udp 2 172.22.76.221 39456 typ relay raddr 213.99.45.10 rport 4312 generation 0\r\n"
+			+ "a=sendrecv\r\n"
+			+ "a=mid:{{MID}}\r\n"
+			+ "a=rtcp-mux\r\n"
+			+ "a=crypto:0 AES_CM_128_HMAC_SHA1_80 inline:5ydJsA+FZVpAyqJMT/nW/UW+tcOmDvXJh/pPhNRe\r\n"
+			+ "a=rtpmap:100 VP8/90000\r\n"
+			+ "a=rtpmap:101 red/90000\r\n"
+			+ "a=rtpmap:102 ulpfec/90000\r\n"
+			+ "a=ssrc:43633328 cname:hsWuSQJxx7przmb8\r\n"
+			+ "a=ssrc:43633328 mslabel:stream_label\r\n"
+			+ "a=ssrc:43633328 label:video_label\r\n";
+
+	private SampleSdp() {
+	}
+
+	/**
+	 * Returns an SDP with <tt>contents</tt> media sections, alternating audio and video as a browser offer does.
+	 *
+	 * @param contents int - Number of media sections.
+	 * @return String - The SDP text.
+	 */
+	public static String withContents(int contents) {
+		StringBuilder builder = new StringBuilder(SESSION);
+		for (int i = 0; i < contents; i++) {
+			String section = i % 2 == 0 ? AUDIO : VIDEO;
+			String mid = contents <= 2 ? (i % 2 == 0 ? "audio" : "video") : (i % 2 == 0 ? "audio" : "video") + i;
+			builder.append(section.replace("{{MID}}", mid));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Returns an SDP with <tt>contents</tt> media sections like {@link #withContents(int)}, whose host candidates are
+	 * replaced by <tt>candidates</tt> candidates spread evenly over the sections.
+	 *
+	 * @param contents int - Number of media sections.
+	 * @param candidates int - Total number of candidates.
+	 * @return String - The SDP text.
+	 */
+	public static String withCandidates(int contents, int candidates) {
+		StringBuilder builder = new StringBuilder();
+		int content = -1;
+		int port = 40000;
+		for (String line : withContents(contents).split("\r\n")) {
+			if (line.startsWith("m=")) {
+				content++;
+			}
+			if (line.startsWith("a=candidate:")) {
+				continue;
+			}
+			builder.append(line).append("\r\n");
+			if (line.startsWith("a=ice-pwd:")) {
+				int count = candidates / contents + (content < candidates % contents ? 1 : 0);
+				for (int i = 0; i < count; i++) {
+					builder.append("a=candidate:").append(i + 1).append(' ').append(i % 2 + 1)
+							.append(" udp 2122260223 172.22.76.").append(i + 1).append(' ').append(port++)
+							.append(" typ host generation 0\r\n");
+				}
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,95 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import net.sourceforge.jsdp.SessionDescription;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting a Jingle stanza to SDP, and compares looking the children of every content up once per
+ * type with sorting them in a single traversal. Run with "-prof gc" to see the allocation per operation.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SdpFromJingleBenchmark {
+
+	@Param({"2", "40"})
+	public int contents;
+
+	private JingleIQ jingle;
+	private final StringBuilder text = new StringBuilder(16384);
+
+	@Setup
+	public void setUp() {
+		jingle = SdpToJingle.jingleFromSdp((CharSequence) SampleSdp.withContents(contents));
+	}
+
+	/**
+	 * The child lookups <tt>sdpFromJingle</tt> used to do for every content.
+	 */
+	@Benchmark
+	public void childLookupsPerType(final Blackhole blackhole) {
+		for (ContentPacketExtension content : jingle.getContentList()) {
+			RtpDescriptionPacketExtension descriptionExt
+					= content.getChildExtensionsOfType(RtpDescriptionPacketExtension.class).get(0);
+			blackhole.consume(descriptionExt.getChildExtensionsOfType(PayloadTypePacketExtension.class));
+			RawUdpTransportPacketExtension rawUdpExt
+					= content.getChildExtensionsOfType(RawUdpTransportPacketExtension.class).get(0);
+			blackhole.consume(rawUdpExt.getChildExtensionsOfType(CandidatePacketExtension.class).get(0));
+			List<IceUdpTransportPacketExtension> iceUdpExts = Utils.filterByClass(
+					content.getChildExtensionsOfType(IceUdpTransportPacketExtension.class),
+					IceUdpTransportPacketExtension.class);
+			for (IceUdpTransportPacketExtension iceUdpExt : iceUdpExts) {
+				blackhole.consume(iceUdpExt.getChildExtensionsOfType(CandidatePacketExtension.class));
+			}
+			blackhole.consume(descriptionExt.getChildExtensionsOfType(PayloadTypePacketExtension.class));
+			blackhole.consume(descriptionExt.getChildExtensionsOfType(EncryptionPacketExtension.class));
+			blackhole.consume(descriptionExt.getChildExtensionsOfType(RtcpMuxExtension.class));
+			List<StreamsPacketExtension> streamsExts
+					= descriptionExt.getChildExtensionsOfType(StreamsPacketExtension.class);
+			blackhole.consume(streamsExts.get(0).getChildExtensionsOfType(StreamPacketExtension.class));
+		}
+	}
+
+	/**
+	 * The single traversal that replaced them.
+	 */
+	@Benchmark
+	public void childClassification(final Blackhole blackhole) {
+		for (ContentPacketExtension content : jingle.getContentList()) {
+			ContentChildren children = new ContentChildren(content);
+			blackhole.consume(children.description.getPayloadTypes());
+			blackhole.consume(children.getRawUdpCandidate());
+			for (IceUdpTransportPacketExtension iceUdpExt : children.iceUdps) {
+				for (int i = 0, n = iceUdpExt.getCandidateCount(); i < n; i++) {
+					blackhole.consume(iceUdpExt.getCandidate(i));
+				}
+			}
+			blackhole.consume(children.encryption);
+			blackhole.consume(children.rtcpMux);
+			blackhole.consume(children.streams.getChildExtensions());
+		}
+	}
+
+	@Benchmark
+	public SessionDescription sessionDescription() {
+		return SdpToJingle.sdpFromJingle(jingle);
+	}
+
+	@Benchmark
+	public int sdpText() throws IOException {
+		text.setLength(0);
+		SdpToJingle.sdpFromJingle(jingle, text);
+		return text.length();
+	}
+}
@@ -0,0 +1,45 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.JingleIQ;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting an SDP offer and serializing the resulting stanza on the same thread, from several threads at
+ * once, with the stanza published as usual and with it confined to the converting thread, which builds and reads
+ * it without taking the locks of its extensions.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ThreadConfinedBenchmark {
+
+	@Param({"2", "20"})
+	public int contents;
+
+	private String sdp;
+
+	@Setup
+	public void setUp() {
+		sdp = SampleSdp.withContents(contents);
+	}
+
+	@Benchmark
+	public String published() {
+		JingleIQ jingle = SdpToJingleConverter.forCurrentThread().jingleFromSdp(sdp);
+		return jingle.getChildElementXML();
+	}
+
+	@Benchmark
+	public String confined() {
+		JingleIQ jingle = SdpToJingleConverter.forCurrentThread().confinedJingleFromSdp(sdp);
+		return jingle.getChildElementXML();
+	}
+}
@@ -0,0 +1,98 @@
+package com.tuenti.protocol.sdp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs many independent conversions on a {@link ForkJoinPool}. The batch is split in halves down to a few tasks per
+ * worker, so idle workers steal work from busy ones, and each leaf task converts its items with one {@link Worker}
+ * whose scratch state (tokenizer, buffers) is reused for all of them. A failing item doesn't stop the others: its
+ * exception is reported in its {@link ConversionResult}.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+final class BatchConversion {
+
+	/**
+	 * Converts the items of one leaf task. Not shared between threads.
+	 */
+	interface Worker<S, T> {
+		T convert(S item) throws Exception;
+	}
+
+	/**
+	 * Creates a {@link Worker} for each leaf task.
+	 */
+	interface WorkerFactory<S, T> {
+		Worker<S, T> newWorker();
+	}
+
+	private BatchConversion() {
+	}
+
+	/**
+	 * Converts all the items of a batch.
+	 *
+	 * @param pool ForkJoinPool - Pool running the conversions.
+	 * @param items List - The items to convert.
+	 * @param workerFactory WorkerFactory - Creates the workers converting the items.
+	 * @return List - One result per item, in the order of <tt>items</tt>.
+	 */
+	static <S, T> List<ConversionResult<T>> convert(final ForkJoinPool pool, final List<? extends S> items,
+			final WorkerFactory<S, T> workerFactory) {
+		int size = items.size();
+		// Filled up front so that the tasks only set their own slots, which needs no locking.
+		List<ConversionResult<T>> results = new ArrayList<ConversionResult<T>>(
+				Collections.<ConversionResult<T>>nCopies(size, null));
+		if (size > 0) {
+			int leafSize = Math.max(1, size / (pool.getParallelism() * 4));
+			pool.invoke(new BatchTask<S, T>(items, workerFactory, results, 0, size, leafSize));
+		}
+		return results;
+	}
+
+	/**
+	 * Converts the items in [from, to), splitting the range in halves down to <tt>leafSize</tt> items.
+	 */
+	private static class BatchTask<S, T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<? extends S> items;
+		private final WorkerFactory<S, T> workerFactory;
+		private final List<ConversionResult<T>> results;
+		private final int from;
+		private final int to;
+		private final int leafSize;
+
+		BatchTask(final List<? extends S> items, final WorkerFactory<S, T> workerFactory,
+				final List<ConversionResult<T>> results, final int from, final int to, final int leafSize) {
+			this.items = items;
+			this.workerFactory = workerFactory;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= leafSize) {
+				Worker<S, T> worker = workerFactory.newWorker();
+				for (int i = from; i < to; i++) {
+					try {
+						results.set(i, ConversionResult.success(worker.convert(items.get(i))));
+					} catch (Exception e) {
+						results.set(i, ConversionResult.<T>failure(e));
+					}
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new BatchTask<S, T>(items, workerFactory, results, from, middle, leafSize),
+					new BatchTask<S, T>(items, workerFactory, results, middle, to, leafSize));
+		}
+	}
+}
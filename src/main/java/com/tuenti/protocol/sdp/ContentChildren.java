@@ -0,0 +1,114 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import org.jivesoftware.smack.packet.PacketExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The children of a {@link ContentPacketExtension}, and of its RTP description, that have a counterpart in SDP,
+ * sorted into typed slots in a single traversal. Reading the slots replaces one
+ * <tt>getChildExtensionsOfType</tt> call, and the list it allocates, per child type.
+ *
+ * As with <tt>getChildExtensionsOfType(...).get(0)</tt>, only the first RTP description, raw UDP transport,
+ * encryption and streams are kept. ICE transports are matched on their exact class, like
+ * {@link Utils#filterByClass(List, Class)} does, because {@link RawUdpTransportPacketExtension} extends
+ * {@link IceUdpTransportPacketExtension}.
+ *
+ * An instance can be reused for the contents of consecutive conversions with {@link #read(ContentPacketExtension)},
+ * so it must not be shared between threads.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+final class ContentChildren {
+	/**
+	 * Shared until the first ICE transport is found, so contents without one don't allocate a list.
+	 */
+	private static final List<IceUdpTransportPacketExtension> EMPTY = Collections.emptyList();
+
+	RtpDescriptionPacketExtension description;
+	RawUdpTransportPacketExtension rawUdp;
+	List<IceUdpTransportPacketExtension> iceUdps = EMPTY;
+	EncryptionPacketExtension encryption;
+	boolean rtcpMux;
+	StreamsPacketExtension streams;
+
+	/**
+	 * Creates empty slots, to be filled with {@link #read(ContentPacketExtension)}.
+	 */
+	ContentChildren() {
+	}
+
+	/**
+	 * Sorts the children of a content.
+	 *
+	 * @param content {@link ContentPacketExtension} - The content to read.
+	 */
+	ContentChildren(final ContentPacketExtension content) {
+		read(content);
+	}
+
+	/**
+	 * Empties the slots and sorts the children of another content into them.
+	 *
+	 * @param content {@link ContentPacketExtension} - The content to read.
+	 */
+	void read(final ContentPacketExtension content) {
+		description = null;
+		rawUdp = null;
+		iceUdps.clear();
+		encryption = null;
+		rtcpMux = false;
+		streams = null;
+
+		for (PacketExtension child : content.getChildExtensions()) {
+			if (child instanceof RtpDescriptionPacketExtension) {
+				if (description == null) {
+					description = (RtpDescriptionPacketExtension) child;
+				}
+			} else if (child instanceof RawUdpTransportPacketExtension) {
+				if (rawUdp == null) {
+					rawUdp = (RawUdpTransportPacketExtension) child;
+				}
+			} else if (child.getClass() == IceUdpTransportPacketExtension.class) {
+				if (iceUdps == EMPTY) {
+					iceUdps = new ArrayList<IceUdpTransportPacketExtension>(1);
+				}
+				iceUdps.add((IceUdpTransportPacketExtension) child);
+			}
+		}
+		if (description == null) {
+			return;
+		}
+
+		// Payload types come first and are read with getPayloadTypes().
+		for (PacketExtension child : description.getChildExtensions()) {
+			if (child instanceof PayloadTypePacketExtension) {
+				continue;
+			}
+			if (child instanceof EncryptionPacketExtension) {
+				if (encryption == null) {
+					encryption = (EncryptionPacketExtension) child;
+				}
+			} else if (child instanceof RtcpMuxExtension) {
+				rtcpMux = true;
+			} else if (child instanceof StreamsPacketExtension) {
+				if (streams == null) {
+					streams = (StreamsPacketExtension) child;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return CandidatePacketExtension - The first candidate of the raw UDP transport, or null if there is none.
+	 */
+	CandidatePacketExtension getRawUdpCandidate() {
+		if (rawUdp == null || rawUdp.getCandidateCount() == 0) {
+			return null;
+		}
+		return rawUdp.getCandidate(0);
+	}
+}
@@ -0,0 +1,82 @@
+package com.tuenti.protocol.sdp;
+
+/**
+ * Thrown when SDP or Jingle input can't be converted. It carries a {@link Code} telling what was wrong and, for SDP
+ * input, the offending line, so callers can react to bad input without parsing the message.
+ *
+ * Bad input is expected from clients and is reported often, so no stack trace is captured: it would only point
+ * at the parser, and filling it in is the most expensive part of throwing.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+public class ConversionException extends IllegalArgumentException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * What made a conversion fail.
+	 */
+	public enum Code {
+		/** An SDP line isn't of the form "&lt;type&gt;=&lt;value&gt;". */
+		MALFORMED_LINE,
+		/** The SDP has no "o=" line. */
+		MISSING_ORIGIN,
+		/** A connection uses a network type other than "IN". */
+		UNSUPPORTED_CONNECTION,
+		/** A media section has no "c=" line, nor does the session. */
+		MISSING_CONNECTION,
+		/** An "m=" line lacks its media, port or protocol. */
+		MALFORMED_MEDIA,
+		/** An "rtpmap", "crypto" or "ssrc" attribute lacks a field. */
+		MALFORMED_ATTRIBUTE,
+		/** A "candidate" attribute doesn't follow the RFC 5245 grammar. */
+		MALFORMED_CANDIDATE,
+		/** A numeric field isn't a non negative number in range. */
+		MALFORMED_NUMBER,
+		/** A Jingle content has no RTP description. */
+		MISSING_RTP_DESCRIPTION,
+		/** A Jingle RTP description has no payload type. */
+		MISSING_MEDIA_FORMAT,
+		/** A Jingle content has no raw UDP candidate. */
+		MISSING_RAW_UDP_CANDIDATE,
+		/** jsdp rejected a field of the SDP being built. */
+		INVALID_SDP,
+		/** The conversion failed with an exception other than a {@link ConversionException}. */
+		UNEXPECTED
+	}
+
+	private final Code code;
+	private final String line;
+
+	/**
+	 * @param code Code - What made the conversion fail.
+	 * @param line String - The offending SDP line or candidate, null if the failure isn't tied to one.
+	 * @param message String - Detail message.
+	 */
+	public ConversionException(final Code code, final String line, final String message) {
+		super(message);
+		this.code = code;
+		this.line = line;
+	}
+
+	/**
+	 * @return Code - What made the conversion fail.
+	 */
+	public Code getCode() {
+		return code;
+	}
+
+	/**
+	 * @return String - The offending SDP line or candidate, null if the failure isn't tied to one.
+	 */
+	public String getLine() {
+		return line;
+	}
+
+	/**
+	 * Skips capturing the stack trace.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
@@ -0,0 +1,87 @@
+package com.tuenti.protocol.sdp;
+
+/**
+ * Outcome of a conversion: either the converted value or the exception that made it fail. Returned by the batch
+ * conversions and by the <tt>try...</tt> methods of {@link SdpToJingle} and {@link SdpToJingleConverter}, which
+ * report bad input here instead of throwing.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ *
+ * @param <T> Type of the converted value.
+ */
+public final class ConversionResult<T> {
+	private final T value;
+	private final Exception failure;
+
+	private ConversionResult(final T value, final Exception failure) {
+		this.value = value;
+		this.failure = failure;
+	}
+
+	/**
+	 * @param value T - The converted value.
+	 * @return ConversionResult - A successful result.
+	 */
+	public static <T> ConversionResult<T> success(final T value) {
+		return new ConversionResult<T>(value, null);
+	}
+
+	/**
+	 * @param failure Exception - Why the conversion failed.
+	 * @return ConversionResult - A failed result.
+	 */
+	public static <T> ConversionResult<T> failure(final Exception failure) {
+		if (failure == null) {
+			throw new IllegalArgumentException("failure can't be null");
+		}
+		return new ConversionResult<T>(null, failure);
+	}
+
+	/**
+	 * @return boolean - Whether the conversion succeeded.
+	 */
+	public boolean isSuccess() {
+		return failure == null;
+	}
+
+	/**
+	 * @return T - The converted value, null if the conversion failed.
+	 */
+	public T getValue() {
+		return value;
+	}
+
+	/**
+	 * @return Exception - Why the conversion failed, null if it succeeded.
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return ConversionException.Code - What made the conversion fail, {@link ConversionException.Code#UNEXPECTED}
+	 *			if it failed with another exception, null if it succeeded.
+	 */
+	public ConversionException.Code getErrorCode() {
+		if (failure == null) {
+			return null;
+		}
+		if (failure instanceof ConversionException) {
+			return ((ConversionException) failure).getCode();
+		}
+		return ConversionException.Code.UNEXPECTED;
+	}
+
+	/**
+	 * @return String - The SDP line or candidate that made the conversion fail, null if it succeeded or the failure
+	 *			isn't tied to a line.
+	 */
+	public String getOffendingLine() {
+		return failure instanceof ConversionException ? ((ConversionException) failure).getLine() : null;
+	}
+
+	@Override
+	public String toString() {
+		return isSuccess() ? "ConversionResult[" + value + "]" : "ConversionResult[failure=" + failure + "]";
+	}
+}
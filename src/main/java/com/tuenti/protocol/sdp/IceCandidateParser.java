@@ -0,0 +1,201 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.CandidatePacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.CandidateType;
+
+/**
+ * Parses the value of an SDP "candidate" attribute into a {@link CandidatePacketExtension}, following the grammar of
+ * RFC 5245, section 15.1:
+ *
+ * <pre>
+ * foundation component-id transport priority connection-address port "typ" cand-type
+ *     *(extension-att-name extension-att-value)
+ * </pre>
+ *
+ * "raddr", "rport", "generation", "tcptype" and "network-id" are read in whatever order they appear. Other
+ * extensions, such as "network-cost" or "ufrag" (the ICE user fragment is already carried by the transport), are
+ * skipped. The value is scanned by index: numbers are parsed in place and only the strings stored in the candidate
+ * are copied out of the input.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+final class IceCandidateParser {
+
+	/**
+	 * Candidate types, looked up by name without creating a String for the token.
+	 */
+	private static final CandidateType[] CANDIDATE_TYPES = CandidateType.values();
+
+	private IceCandidateParser() {
+	}
+
+	/**
+	 * @see #parse(CharSequence, int, int)
+	 */
+	static CandidatePacketExtension parse(final CharSequence value) {
+		return parse(value, 0, value.length());
+	}
+
+	/**
+	 * Creates a new {@link CandidatePacketExtension} from the value of an SDP "candidate" attribute.
+	 *
+	 * @param text CharSequence - Text holding the attribute value.
+	 * @param start int - Index of the first character of the value, after the "a=candidate:" prefix.
+	 * @param end int - Index after the last character of the value.
+	 * @return A new {@link CandidatePacketExtension}.
+	 * @throws ConversionException When the value is not a valid candidate.
+	 */
+	static CandidatePacketExtension parse(final CharSequence text, final int start, final int end) {
+		return parse(text, start, end, new CandidatePacketExtension());
+	}
+
+	/**
+	 * Sets the attributes of <tt>candidateExt</tt> from the value of an SDP "candidate" attribute.
+	 *
+	 * @param text CharSequence - Text holding the attribute value.
+	 * @param start int - Index of the first character of the value, after the "a=candidate:" prefix.
+	 * @param end int - Index after the last character of the value.
+	 * @param candidateExt CandidatePacketExtension - A new candidate.
+	 * @return <tt>candidateExt</tt>.
+	 * @throws ConversionException When the value is not a valid candidate.
+	 */
+	static CandidatePacketExtension parse(final CharSequence text, final int start, final int end,
+			final CandidatePacketExtension candidateExt) {
+		// "1 2 udp 2 172.22.76.221 36798 typ srflx raddr 10.0.34.44 rport 48296 generation 0"
+
+		int tokenStart = SdpText.skipSpaces(text, start, end);
+		int tokenEnd = SdpText.tokenEnd(text, tokenStart, end);
+		candidateExt.setFoundation(requiredString(text, tokenStart, tokenEnd, start, end));
+
+		tokenStart = SdpText.skipSpaces(text, tokenEnd, end);
+		tokenEnd = SdpText.tokenEnd(text, tokenStart, end);
+		candidateExt.setComponent(parseInt(text, tokenStart, tokenEnd, start, end));
+
+		tokenStart = SdpText.skipSpaces(text, tokenEnd, end);
+		tokenEnd = SdpText.tokenEnd(text, tokenStart, end);
+		candidateExt.setProtocol(protocol(text, tokenStart, tokenEnd, start, end));
+
+		tokenStart = SdpText.skipSpaces(text, tokenEnd, end);
+		tokenEnd = SdpText.tokenEnd(text, tokenStart, end);
+		candidateExt.setPriority(parseLong(text, tokenStart, tokenEnd, start, end));
+
+		tokenStart = SdpText.skipSpaces(text, tokenEnd, end);
+		tokenEnd = SdpText.tokenEnd(text, tokenStart, end);
+		candidateExt.setIP(requiredString(text, tokenStart, tokenEnd, start, end));
+
+		tokenStart = SdpText.skipSpaces(text, tokenEnd, end);
+		tokenEnd = SdpText.tokenEnd(text, tokenStart, end);
+		candidateExt.setPort(parseInt(text, tokenStart, tokenEnd, start, end));
+
+		tokenStart = SdpText.skipSpaces(text, tokenEnd, end);
+		tokenEnd = SdpText.tokenEnd(text, tokenStart, end);
+		if (!SdpText.regionEquals(text, tokenStart, tokenEnd, "typ")) {
+			throw malformed(text, start, end);
+		}
+		tokenStart = SdpText.skipSpaces(text, tokenEnd, end);
+		tokenEnd = SdpText.tokenEnd(text, tokenStart, end);
+		candidateExt.setType(candidateType(text, tokenStart, tokenEnd, start, end));
+
+		boolean hasGeneration = false;
+		int keyEnd = tokenEnd;
+		while (true) {
+			int keyStart = SdpText.skipSpaces(text, keyEnd, end);
+			if (keyStart == end) {
+				break;
+			}
+			keyEnd = SdpText.tokenEnd(text, keyStart, end);
+			int valueStart = SdpText.skipSpaces(text, keyEnd, end);
+			int valueEnd = SdpText.tokenEnd(text, valueStart, end);
+			if (valueStart == valueEnd) {
+				throw malformed(text, start, end);
+			}
+
+			if (SdpText.regionEquals(text, keyStart, keyEnd, "raddr")) {
+				candidateExt.setRelAddr(SdpText.substring(text, valueStart, valueEnd));
+			} else if (SdpText.regionEquals(text, keyStart, keyEnd, "rport")) {
+				candidateExt.setRelPort(parseInt(text, valueStart, valueEnd, start, end));
+			} else if (SdpText.regionEquals(text, keyStart, keyEnd, "generation")) {
+				candidateExt.setGeneration(parseInt(text, valueStart, valueEnd, start, end));
+				hasGeneration = true;
+			} else if (SdpText.regionEquals(text, keyStart, keyEnd, "tcptype")) {
+				candidateExt.setTcpType(SdpText.substring(text, valueStart, valueEnd));
+			} else if (SdpText.regionEquals(text, keyStart, keyEnd, "network-id")) {
+				candidateExt.setNetwork(parseInt(text, valueStart, valueEnd, start, end));
+			}
+			keyEnd = valueEnd;
+		}
+		if (!hasGeneration) {
+			candidateExt.setGeneration(0);
+		}
+
+		return candidateExt;
+	}
+
+	/**
+	 * Returns the transport, using a constant for the usual lower case "udp" and "tcp".
+	 */
+	private static String protocol(final CharSequence text, final int from, final int to, final int start,
+			final int end) {
+		if (SdpText.regionEquals(text, from, to, "udp")) {
+			return "udp";
+		}
+		if (SdpText.regionEquals(text, from, to, "tcp")) {
+			return "tcp";
+		}
+		return requiredString(text, from, to, start, end);
+	}
+
+	private static CandidateType candidateType(final CharSequence text, final int from, final int to,
+			final int start, final int end) {
+		for (CandidateType type : CANDIDATE_TYPES) {
+			if (SdpText.regionEquals(text, from, to, type.name())) {
+				return type;
+			}
+		}
+		String candidate = SdpText.substring(text, start, end);
+		throw new ConversionException(ConversionException.Code.MALFORMED_CANDIDATE, candidate,
+				"Unknown candidate type '" + text.subSequence(from, to) + "' in candidate '" + candidate + "'");
+	}
+
+	private static String requiredString(final CharSequence text, final int from, final int to, final int start,
+			final int end) {
+		if (from == to) {
+			throw malformed(text, start, end);
+		}
+		return SdpText.substring(text, from, to);
+	}
+
+	private static ConversionException malformed(final CharSequence text, final int start, final int end) {
+		String candidate = SdpText.substring(text, start, end);
+		return new ConversionException(ConversionException.Code.MALFORMED_CANDIDATE, candidate,
+				"Malformed candidate '" + candidate + "'");
+	}
+
+	private static ConversionException malformedNumber(final CharSequence text, final int from, final int to,
+			final int start, final int end) {
+		String candidate = SdpText.substring(text, start, end);
+		return new ConversionException(ConversionException.Code.MALFORMED_CANDIDATE, candidate,
+				"Malformed number '" + text.subSequence(from, to) + "' in candidate '" + candidate + "'");
+	}
+
+	private static int parseInt(final CharSequence text, final int from, final int to, final int start,
+			final int end) {
+		long value = parseLong(text, from, to, start, end);
+		if (value > Integer.MAX_VALUE) {
+			throw malformedNumber(text, from, to, start, end);
+		}
+		return (int) value;
+	}
+
+	private static long parseLong(final CharSequence text, final int from, final int to, final int start,
+			final int end) {
+		if (from == to) {
+			throw malformed(text, start, end);
+		}
+		long value = SdpText.parseLong(text, from, to);
+		if (value < 0) {
+			throw malformedNumber(text, from, to, start, end);
+		}
+		return value;
+	}
+}
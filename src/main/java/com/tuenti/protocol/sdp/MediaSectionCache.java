@@ -0,0 +1,144 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.AbstractPacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.ContentPacketExtension;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the contents converted from the media sections of the last offer of a session, so that a re-offer only
+ * converts the media sections that changed. Renegotiations (adding a screen share, muting through a direction
+ * change, restarting ICE) resend the whole SDP, but usually change one or two sections.
+ *
+ * Sections are looked up by a hash of their text and reused only when their text, and the session level connection
+ * address they may fall back to, are the same. A reused content is the very same {@link ContentPacketExtension}
+ * returned by the previous conversion, so the contents of converted stanzas must not be modified. The cache freezes
+ * them (see {@link AbstractPacketExtension#freeze()}): they are read without locking, modifying them fails, and
+ * {@link AbstractPacketExtension#mutableCopy()} gives a content that can be changed.
+ *
+ * Only the sections of the last successful conversion are kept. Use one cache per session, from one thread at a
+ * time, with {@link SdpToJingle#jingleFromSdp(CharSequence, MediaSectionCache)} or
+ * {@link SdpToJingleConverter#jingleFromSdp(CharSequence, MediaSectionCache)}.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+public class MediaSectionCache {
+
+	/**
+	 * A converted media section.
+	 */
+	private static class Entry {
+		final String text;
+		final String sessionAddress;
+		final ContentPacketExtension content;
+
+		Entry(final String text, final String sessionAddress, final ContentPacketExtension content) {
+			this.text = text;
+			this.sessionAddress = sessionAddress;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * Sections of the last successful conversion, by hash of their text.
+	 */
+	private Map<Integer, Entry> sections = new HashMap<Integer, Entry>();
+
+	/**
+	 * Sections of the conversion in progress.
+	 */
+	private Map<Integer, Entry> nextSections = new HashMap<Integer, Entry>();
+
+	/**
+	 * @return int - Number of media sections kept from the last conversion.
+	 */
+	public int size() {
+		return sections.size();
+	}
+
+	/**
+	 * Forgets all the media sections.
+	 */
+	public void clear() {
+		sections.clear();
+		nextSections.clear();
+	}
+
+	/**
+	 * Returns the content converted from the same section text by the previous conversion, if any. A content is
+	 * reused at most once per conversion.
+	 *
+	 * @param sdp CharSequence - The SDP being converted.
+	 * @param start int - Start of the section, its "m=" line.
+	 * @param end int - End of the section, the start of the next "m=" line or the end of the SDP.
+	 * @param sessionAddress String - Session level connection address, null if there is none.
+	 * @return ContentPacketExtension - The content to reuse, null if the section has to be converted.
+	 */
+	ContentPacketExtension lookup(final CharSequence sdp, final int start, final int end,
+			final String sessionAddress) {
+		Integer hash = hash(sdp, start, end);
+		Entry entry = sections.get(hash);
+		if (entry == null || !regionEquals(entry.text, sdp, start, end)
+				|| !equals(entry.sessionAddress, sessionAddress)) {
+			return null;
+		}
+		sections.remove(hash);
+		nextSections.put(hash, entry);
+		return entry.content;
+	}
+
+	/**
+	 * Keeps the content converted from a section for the next conversion.
+	 */
+	void store(final CharSequence sdp, final int start, final int end, final String sessionAddress,
+			final ContentPacketExtension content) {
+		content.freeze();
+		nextSections.put(hash(sdp, start, end), new Entry(sdp.subSequence(start, end).toString(), sessionAddress,
+				content));
+	}
+
+	/**
+	 * Keeps the sections of the conversion that just succeeded, dropping the others.
+	 */
+	void conversionSucceeded() {
+		Map<Integer, Entry> previous = sections;
+		sections = nextSections;
+		nextSections = previous;
+		nextSections.clear();
+	}
+
+	/**
+	 * Keeps the sections of the previous conversion after one that failed, along with the sections converted
+	 * before the failure.
+	 */
+	void conversionFailed() {
+		sections.putAll(nextSections);
+		nextSections.clear();
+	}
+
+	private static int hash(final CharSequence text, final int start, final int end) {
+		int hash = end - start;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		return hash;
+	}
+
+	private static boolean regionEquals(final String value, final CharSequence text, final int start,
+			final int end) {
+		if (value.length() != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (value.charAt(i - start) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean equals(final String a, final String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
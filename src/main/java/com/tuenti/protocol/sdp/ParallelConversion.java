@@ -0,0 +1,167 @@
+package com.tuenti.protocol.sdp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Configures the parallel conversion of the contents (media sections) of one session: each content is converted
+ * independently on a {@link ForkJoinPool} and the results are put back in their original order. Sessions with
+ * fewer contents than the threshold are converted sequentially on the calling thread, where the cost of handing
+ * the work to the pool would exceed the gain.
+ *
+ * Instances are immutable and can be shared by all threads.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+public class ParallelConversion {
+
+	/**
+	 * Default minimum number of contents for a session to be converted in parallel.
+	 */
+	public static final int DEFAULT_THRESHOLD = 16;
+
+	/**
+	 * Converts one item of a session.
+	 *
+	 * @param <S> Type of the items to convert.
+	 * @param <T> Type of the converted items.
+	 * @param <X> Checked exception thrown by the conversion, {@link RuntimeException} if none.
+	 */
+	interface ItemConverter<S, T, X extends Exception> {
+		T convert(S item) throws X;
+	}
+
+	private final ForkJoinPool pool;
+	private final int threshold;
+
+	/**
+	 * Creates a configuration using {@link #DEFAULT_THRESHOLD}.
+	 *
+	 * @param pool ForkJoinPool - Pool running the conversions.
+	 */
+	public ParallelConversion(final ForkJoinPool pool) {
+		this(pool, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param pool ForkJoinPool - Pool running the conversions.
+	 * @param threshold int - Minimum number of contents for a session to be converted in parallel.
+	 */
+	public ParallelConversion(final ForkJoinPool pool, final int threshold) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool can't be null");
+		}
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be positive, was " + threshold);
+		}
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @return ForkJoinPool - Pool running the conversions.
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * @return int - Minimum number of contents for a session to be converted in parallel.
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Converts all the items, in parallel when there are at least {@link #getThreshold()} of them.
+	 *
+	 * @param items List - The items to convert.
+	 * @param converter ItemConverter - The conversion of one item.
+	 * @return List - The converted items, in the order of <tt>items</tt>.
+	 * @throws X The failure of the first item that failed, in the order of <tt>items</tt>.
+	 */
+	<S, T, X extends Exception> List<T> convert(final List<? extends S> items,
+			final ItemConverter<S, T, X> converter) throws X {
+		int size = items.size();
+		if (size < threshold) {
+			List<T> result = new ArrayList<T>(size);
+			for (S item : items) {
+				result.add(converter.convert(item));
+			}
+			return result;
+		}
+
+		ConvertTask<S, T, X> task = new ConvertTask<S, T, X>(items, converter, new Object[size],
+				new Exception[size], 0, size, leafSize(size));
+		pool.invoke(task);
+		for (Exception failure : task.failures) {
+			if (failure != null) {
+				rethrow(failure);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		List<T> result = (List<T>) Arrays.asList(task.results);
+		return result;
+	}
+
+	/**
+	 * Splits the items in about four tasks per worker, so idle workers can steal work from busy ones.
+	 */
+	private int leafSize(final int size) {
+		return Math.max(1, size / (pool.getParallelism() * 4));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <X extends Exception> void rethrow(final Exception failure) throws X {
+		throw (X) failure;
+	}
+
+	/**
+	 * Converts the items in [from, to), splitting the range in halves down to <tt>leafSize</tt> items. Results and
+	 * failures are stored at the index of their item, so the order of the input is kept whatever thread converts
+	 * each item.
+	 */
+	private static class ConvertTask<S, T, X extends Exception> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<? extends S> items;
+		private final ItemConverter<S, T, X> converter;
+		private final Object[] results;
+		private final Exception[] failures;
+		private final int from;
+		private final int to;
+		private final int leafSize;
+
+		ConvertTask(final List<? extends S> items, final ItemConverter<S, T, X> converter, final Object[] results,
+				final Exception[] failures, final int from, final int to, final int leafSize) {
+			this.items = items;
+			this.converter = converter;
+			this.results = results;
+			this.failures = failures;
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= leafSize) {
+				for (int i = from; i < to; i++) {
+					try {
+						results[i] = converter.convert(items.get(i));
+					} catch (Exception e) {
+						failures[i] = e;
+					}
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ConvertTask<S, T, X>(items, converter, results, failures, from, middle, leafSize),
+					new ConvertTask<S, T, X>(items, converter, results, failures, middle, to, leafSize));
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.AbstractPacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.ContentPacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.JingleIQ;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.ReasonPacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.SessionInfoPacketExtension;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers which SDP text and which Jingle contents were converted into each other, so that converting a
+ * description back into the form it came from is a lookup instead of a conversion. For example, a gateway that
+ * converts a Jingle offer to SDP for its media engine gets the original Jingle contents back when it later
+ * converts that same SDP.
+ *
+ * Jingle stanzas are matched on their structure: their session ID, action, initiator, responder, reason, session info
+ * and contents (see {@link JingleIQ#structurallyEquals(JingleIQ)}), SDP on its text. A lookup returns the other side
+ * of the pair as it was first converted, including the origin session version of the SDP and the type of the stanza. The cache keeps frozen deep copies of the contents it is given or converts (see
+ * {@link AbstractPacketExtension#freeze()}), so callers remain free to modify their own stanzas.
+ * {@link #jingleFromSdp(String)} returns mutable deep copies of those, so the stanzas it returns can be modified
+ * whether or not the SDP was already paired.
+ *
+ * The cache keeps the pairs of the most recent conversions, up to its capacity, and is safe for use by several
+ * threads. Conversions run with {@link SdpToJingleConverter#forCurrentThread()}.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+public class RoundTripCache {
+
+	/**
+	 * Jingle side of a pair: a stanza holding the session ID, the other fields and the contents, which are all part
+	 * of the key, and the type, which is returned with them but isn't.
+	 */
+	private static final class JingleKey {
+		final JingleIQ jingle;
+		final int hash;
+
+		JingleKey(final JingleIQ jingle) {
+			this.jingle = jingle;
+			this.hash = jingle.structuralHashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof JingleKey)) {
+				return false;
+			}
+			JingleKey other = (JingleKey) obj;
+			return hash == other.hash && jingle.structurallyEquals(other.jingle);
+		}
+	}
+
+	/**
+	 * The pairs, least recently used first. Evicting a pair removes it from <tt>jingleBySdp</tt> too.
+	 */
+	private final Map<JingleKey, String> sdpByJingle;
+
+	/**
+	 * The same pairs, by SDP text.
+	 */
+	private final Map<String, JingleKey> jingleBySdp = new HashMap<String, JingleKey>();
+
+	/**
+	 * @param capacity int - Number of pairs to keep.
+	 */
+	public RoundTripCache(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+		}
+		this.sdpByJingle = new LinkedHashMap<JingleKey, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<JingleKey, String> eldest) {
+				if (size() <= capacity) {
+					return false;
+				}
+				jingleBySdp.remove(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns the SDP text paired with the stanza, converting the stanza if there is none.
+	 *
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @return String - The SDP text.
+	 * @throws ConversionException When a content has no RTP description, payload types or raw UDP candidate,
+	 *				or a candidate has no type.
+	 * @see SdpToJingleConverter#sdpTextFromJingle(JingleIQ)
+	 */
+	public String sdpFromJingle(final JingleIQ jingle) {
+		JingleKey key = new JingleKey(jingle);
+		String sdp;
+		synchronized (this) {
+			sdp = sdpByJingle.get(key);
+		}
+		if (sdp == null) {
+			sdp = SdpToJingleConverter.forCurrentThread().sdpTextFromJingle(jingle);
+			put(jingle, sdp);
+		}
+		return sdp;
+	}
+
+	/**
+	 * Returns a stanza with the contents paired with the SDP text, converting the text if there are none. A stanza
+	 * converted from the text is a "set" IQ holding only the session ID and the contents, like the ones created by
+	 * {@link SdpToJingle#jingleFromSdp(CharSequence)}. A stanza paired with the text by
+	 * {@link #sdpFromJingle(JingleIQ)} comes back with its type, action, initiator, responder, reason and session info
+	 * too, but without its addresses and packet ID.
+	 *
+	 * Either way the stanza and all its contents are new and mutable, and belong to the caller.
+	 *
+	 * @param sdp String - The SDP text to convert.
+	 * @return JingleIQ - A new Jingle stanza.
+	 * @throws ConversionException When the SDP is malformed.
+	 */
+	public JingleIQ jingleFromSdp(final String sdp) {
+		JingleKey key;
+		synchronized (this) {
+			key = jingleBySdp.get(sdp);
+			if (key != null) {
+				// Marks the pair as recently used.
+				sdpByJingle.get(key);
+			}
+		}
+		if (key == null) {
+			JingleIQ jingle = SdpToJingleConverter.forCurrentThread().jingleFromSdp(sdp);
+			put(jingle, sdp);
+			return jingle;
+		}
+
+		JingleIQ fields = key.jingle;
+		JingleIQ result = new JingleIQ();
+		result.setType(fields.getType());
+		result.setSID(fields.getSID());
+		result.setAction(fields.getAction());
+		result.setInitiator(fields.getInitiator());
+		result.setResponder(fields.getResponder());
+		ReasonPacketExtension reason = fields.getReason();
+		if (reason != null) {
+			result.setReason(new ReasonPacketExtension(reason.getReason(), reason.getText(),
+					reason.getOtherExtension()));
+		}
+		SessionInfoPacketExtension sessionInfo = fields.getSessionInfo();
+		if (sessionInfo != null) {
+			result.setSessionInfo((SessionInfoPacketExtension) sessionInfo.deepCopy());
+		}
+		for (ContentPacketExtension content : fields.getContentList()) {
+			result.addContent((ContentPacketExtension) content.deepCopy());
+		}
+		return result;
+	}
+
+	/**
+	 * @return int - Number of SDP texts paired with Jingle contents.
+	 */
+	public synchronized int size() {
+		return sdpByJingle.size();
+	}
+
+	/**
+	 * Forgets all the pairs.
+	 */
+	public synchronized void clear() {
+		sdpByJingle.clear();
+		jingleBySdp.clear();
+	}
+
+	/**
+	 * Pairs a copy of the stanza, with frozen copies of its contents, with the SDP text, replacing the pairs either of
+	 * them was part of.
+	 *
+	 * @param jingle JingleIQ - The stanza, which is left untouched.
+	 * @param sdp String - The SDP text.
+	 */
+	private void put(final JingleIQ jingle, final String sdp) {
+		JingleIQ fields = new JingleIQ();
+		fields.setType(jingle.getType());
+		fields.setSID(jingle.getSID());
+		fields.setAction(jingle.getAction());
+		fields.setInitiator(jingle.getInitiator());
+		fields.setResponder(jingle.getResponder());
+		ReasonPacketExtension reason = jingle.getReason();
+		if (reason != null) {
+			fields.setReason(new ReasonPacketExtension(reason.getReason(), reason.getText(),
+					reason.getOtherExtension()));
+		}
+		SessionInfoPacketExtension sessionInfo = jingle.getSessionInfo();
+		if (sessionInfo != null) {
+			fields.setSessionInfo(frozenCopy(sessionInfo));
+		}
+		for (ContentPacketExtension content : new ArrayList<ContentPacketExtension>(jingle.getContentList())) {
+			fields.addContent(frozenCopy(content));
+		}
+		JingleKey key = new JingleKey(fields);
+		synchronized (this) {
+			String previousSdp = sdpByJingle.remove(key);
+			if (previousSdp != null) {
+				jingleBySdp.remove(previousSdp);
+			}
+			JingleKey previousKey = jingleBySdp.remove(sdp);
+			if (previousKey != null) {
+				sdpByJingle.remove(previousKey);
+			}
+			jingleBySdp.put(sdp, key);
+			sdpByJingle.put(key, sdp);
+		}
+	}
+
+	/**
+	 * @return T - The extension if it is frozen, a frozen deep copy of it otherwise.
+	 */
+	private static <T extends AbstractPacketExtension> T frozenCopy(final T extension) {
+		if (extension.isFrozen()) {
+			return extension;
+		}
+		// deepCopy() creates an extension of the same class.
+		@SuppressWarnings("unchecked")
+		T copy = (T) extension.deepCopy();
+		copy.freeze();
+		return copy;
+	}
+}
@@ -0,0 +1,134 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.PayloadTypePacketExtension;
+
+/**
+ * Parsed value of an SDP "rtpmap" attribute:
+ * "&lt;payload type&gt; &lt;encoding name&gt;/&lt;clock rate&gt;[/&lt;encoding parameters&gt;]".
+ *
+ * Instances are immutable and shared through {@link RtpMapCache}, and are used as templates to create
+ * {@link PayloadTypePacketExtension}s from strings that are built only once.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+final class RtpMap {
+	private final String idText;
+	private final String name;
+	private final String clockrateText;
+
+	private RtpMap(final String idText, final String name, final String clockrateText) {
+		this.idText = idText;
+		this.name = name;
+		this.clockrateText = clockrateText;
+	}
+
+	/**
+	 * Parses the value of an "rtpmap" attribute, e.g. "111 opus/48000/2".
+	 *
+	 * @param value String - The attribute value, without the "a=rtpmap:" prefix.
+	 * @return RtpMap - The parsed value.
+	 * @throws ConversionException When the value lacks the payload type, the encoding name or the clock rate, or
+	 *				when the payload type, clock rate or number of channels isn't a number.
+	 */
+	static RtpMap parse(final String value) {
+		int idEnd = value.indexOf(' ');
+		if (idEnd < 0) {
+			throw malformed(value);
+		}
+		int nameStart = idEnd;
+		while (nameStart < value.length() && value.charAt(nameStart) == ' ') {
+			nameStart++;
+		}
+		int slash = value.indexOf('/', nameStart);
+		if (slash < 0) {
+			throw malformed(value);
+		}
+		int clockrateEnd = value.indexOf(' ', slash + 1);
+		if (clockrateEnd < 0) {
+			clockrateEnd = value.length();
+		}
+
+		checkNumber(value, 0, idEnd);
+
+		// "48000/2": the encoding parameters of audio payload types are the number of channels.
+		int channelsSlash = value.indexOf('/', slash + 1);
+		if (channelsSlash > clockrateEnd) {
+			channelsSlash = -1;
+		}
+		checkNumber(value, slash + 1, channelsSlash < 0 ? clockrateEnd : channelsSlash);
+		if (channelsSlash >= 0) {
+			checkNumber(value, channelsSlash + 1, clockrateEnd);
+		}
+
+		return new RtpMap(value.substring(0, idEnd), value.substring(nameStart, slash),
+				value.substring(slash + 1, clockrateEnd));
+	}
+
+	/**
+	 * @throws ConversionException When the text between <tt>from</tt> and <tt>to</tt> isn't a non negative int.
+	 */
+	private static void checkNumber(final String value, final int from, final int to) {
+		if (parseNumber(value, from, to) < 0) {
+			String line = "a=rtpmap:" + value;
+			throw new ConversionException(ConversionException.Code.MALFORMED_NUMBER, line,
+					"Malformed number '" + value.substring(from, to) + "' in line '" + line + "'");
+		}
+	}
+
+	/**
+	 * Parses a non negative int, returning -1 when the text isn't one.
+	 */
+	private static int parseNumber(final String value, final int from, final int to) {
+		if (from >= to || to - from > 9) {
+			return -1;
+		}
+		int result = 0;
+		for (int i = from; i < to; i++) {
+			int digit = value.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	private static ConversionException malformed(final String value) {
+		String line = "a=rtpmap:" + value;
+		return new ConversionException(ConversionException.Code.MALFORMED_ATTRIBUTE, line,
+				"Malformed rtpmap '" + line + "'");
+	}
+
+	/**
+	 * Creates the payload type for this rtpmap. As <tt>jingleFromSdp</tt> has always done, the clockrate attribute
+	 * keeps the encoding parameters, e.g. "48000/2", so that the SDP written back from the Jingle is the same.
+	 *
+	 * @return PayloadTypePacketExtension - A new payload type.
+	 */
+	PayloadTypePacketExtension newPayloadType() {
+		return newPayloadType(false);
+	}
+
+	/**
+	 * Creates the payload type for this rtpmap, optionally confined to the current thread.
+	 *
+	 * @param threadConfined boolean - Whether the payload type is built without locking, see
+	 *				{@link PayloadTypePacketExtension#setThreadConfined(boolean)}.
+	 * @return PayloadTypePacketExtension - A new payload type.
+	 */
+	PayloadTypePacketExtension newPayloadType(final boolean threadConfined) {
+		PayloadTypePacketExtension payloadExt = new PayloadTypePacketExtension();
+		payloadExt.setThreadConfined(threadConfined);
+		payloadExt.setAttribute(PayloadTypePacketExtension.ID_ATTR_NAME, idText);
+		payloadExt.setAttribute(PayloadTypePacketExtension.NAME_ATTR_NAME, name);
+		payloadExt.setAttribute(PayloadTypePacketExtension.CLOCKRATE_ATTR_NAME, clockrateText);
+		return payloadExt;
+	}
+
+	/**
+	 * @return String - The encoding name, e.g. "opus".
+	 */
+	String getName() {
+		return name;
+	}
+}
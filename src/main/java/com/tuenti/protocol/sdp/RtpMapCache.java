@@ -0,0 +1,64 @@
+package com.tuenti.protocol.sdp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of parsed "rtpmap" values. Offers from the same browser version carry the same 15 to 30 rtpmap
+ * lines, so after the first offer the codec list costs a hash lookup per line.
+ *
+ * The cache is emptied when it is full rather than evicting entries one by one: the set of values in use is small
+ * and stable, so it refills right away, and a client sending made up values can't grow it past its capacity.
+ * Values longer than any real rtpmap are parsed but not cached. Safe for use by several threads.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+final class RtpMapCache {
+
+	/**
+	 * Cache shared by all conversions.
+	 */
+	static final RtpMapCache SHARED = new RtpMapCache(512);
+
+	/**
+	 * Longest value kept in the cache. "127 H264/90000/2" is 16 characters long.
+	 */
+	private static final int MAX_CACHED_VALUE_LENGTH = 64;
+
+	private final ConcurrentHashMap<String, RtpMap> rtpMaps = new ConcurrentHashMap<String, RtpMap>();
+	private final int capacity;
+
+	/**
+	 * @param capacity int - Number of values above which the cache is emptied.
+	 */
+	RtpMapCache(final int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the parsed rtpmap value, parsing it if it isn't cached yet.
+	 *
+	 * @param value String - The attribute value, without the "a=rtpmap:" prefix.
+	 * @return RtpMap - The parsed value.
+	 * @throws ConversionException When the value is malformed.
+	 */
+	RtpMap get(final String value) {
+		RtpMap rtpMap = rtpMaps.get(value);
+		if (rtpMap == null) {
+			rtpMap = RtpMap.parse(value);
+			if (value.length() <= MAX_CACHED_VALUE_LENGTH) {
+				if (rtpMaps.size() >= capacity) {
+					rtpMaps.clear();
+				}
+				rtpMaps.put(value, rtpMap);
+			}
+		}
+		return rtpMap;
+	}
+
+	/**
+	 * @return int - Number of cached values.
+	 */
+	int size() {
+		return rtpMaps.size();
+	}
+}
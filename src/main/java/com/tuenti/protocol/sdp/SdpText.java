@@ -0,0 +1,84 @@
+package com.tuenti.protocol.sdp;
+
+/**
+ * Index based scanning of SDP text shared by {@link SdpTokenizer} and {@link IceCandidateParser}. Tokens are
+ * delimited by spaces and located by index, so that nothing is copied out of the text until it is needed.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+final class SdpText {
+
+	private SdpText() {
+	}
+
+	/**
+	 * @return int - Index of the first character at or after <tt>i</tt> that isn't a space, or <tt>end</tt>.
+	 */
+	static int skipSpaces(final CharSequence text, int i, final int end) {
+		while (i < end && text.charAt(i) == ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return int - Index of the first space at or after <tt>i</tt>, or <tt>end</tt>.
+	 */
+	static int tokenEnd(final CharSequence text, int i, final int end) {
+		while (i < end && text.charAt(i) != ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return int - Index of the first <tt>c</tt> between <tt>from</tt> and <tt>to</tt>, or -1.
+	 */
+	static int indexOf(final CharSequence text, final char c, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (text.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return boolean - Whether the text between <tt>from</tt> and <tt>to</tt> is <tt>value</tt>.
+	 */
+	static boolean regionEquals(final CharSequence text, final int from, final int to, final String value) {
+		if (to - from != value.length()) {
+			return false;
+		}
+		for (int i = from; i < to; i++) {
+			if (text.charAt(i) != value.charAt(i - from)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static String substring(final CharSequence text, final int from, final int to) {
+		return text.subSequence(from, to).toString();
+	}
+
+	/**
+	 * Parses the decimal digits between <tt>from</tt> and <tt>to</tt>.
+	 *
+	 * @return long - The value, or -1 when the region is empty, holds anything but digits or overflows a long.
+	 */
+	static long parseLong(final CharSequence text, final int from, final int to) {
+		if (from == to) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+}
@@ -3,13 +3,15 @@ package com.tuenti.protocol.sdp;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 import net.sourceforge.jsdp.*;
 import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.PacketExtension;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.Date;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Converts a PeerConnection SDP Message to Jingle and vice-versa.
@@ -21,6 +23,95 @@ import java.util.Map;
  */
 public class SdpToJingle {
 
+	/**
+	 * User name of the "o=" line. Name is not that important as it doesn't exist in the Jingle IQ.
+	 */
+	static final String ORIGIN_USER_NAME = "ProfessorFarnsworth";
+
+	/**
+	 * Name of the SDP ICE candidate attribute, including the name/value separator.
+	 */
+	private static final String CANDIDATE_PREFIX = "candidate:";
+
+	/**
+	 * Creates the skeleton of every {@link SessionDescription} and SDP text built by this class.
+	 */
+	private static volatile SessionDescriptionFactory sessionDescriptionFactory = new SessionDescriptionFactory();
+
+	/**
+	 * Sets the factory used to create the "v=", "o=", "s=" and "t=" lines, e.g. to configure the origin host name
+	 * instead of looking up the local one.
+	 *
+	 * @param factory SessionDescriptionFactory - The factory to use from now on.
+	 */
+	public static void setSessionDescriptionFactory(final SessionDescriptionFactory factory) {
+		if (factory == null) {
+			throw new IllegalArgumentException("factory can't be null");
+		}
+		sessionDescriptionFactory = factory;
+	}
+
+	/**
+	 * @return SessionDescriptionFactory - The factory used to create the SDP session skeleton.
+	 */
+	public static SessionDescriptionFactory getSessionDescriptionFactory() {
+		return sessionDescriptionFactory;
+	}
+
+	/**
+	 * Renders the value part of the SDP line of a candidate, for {@link #memoizedIceCandidateValue(CandidatePacketExtension)}.
+	 */
+	private static final CandidatePacketExtension.LineRenderer CANDIDATE_VALUE_RENDERER
+			= new CandidatePacketExtension.LineRenderer() {
+		@Override
+		public String render(final CandidatePacketExtension candidate) {
+			return iceCandidateLineFromJingle(candidate, true);
+		}
+	};
+
+	/**
+	 * Converts a content with {@link #mediaDescriptionFromContent(ContentPacketExtension)}.
+	 */
+	private static final ParallelConversion.ItemConverter<ContentPacketExtension, MediaDescription, SDPException>
+			MEDIA_DESCRIPTION_FROM_CONTENT
+			= new ParallelConversion.ItemConverter<ContentPacketExtension, MediaDescription, SDPException>() {
+		@Override
+		public MediaDescription convert(final ContentPacketExtension content) throws SDPException {
+			return mediaDescriptionFromContent(content);
+		}
+	};
+
+	/**
+	 * Creates the converter of the media sections of a session with
+	 * {@link #contentFromMediaDescription(MediaDescription, Connection)}.
+	 *
+	 * @param sessionConnection Connection - The session level connection, null if there is none.
+	 */
+	private static ParallelConversion.ItemConverter<MediaDescription, ContentPacketExtension, RuntimeException>
+			contentFromMediaDescription(final Connection sessionConnection) {
+		return new ParallelConversion.ItemConverter<MediaDescription, ContentPacketExtension, RuntimeException>() {
+			@Override
+			public ContentPacketExtension convert(final MediaDescription mediaDescription) {
+				return contentFromMediaDescription(mediaDescription, sessionConnection);
+			}
+		};
+	}
+
+	/**
+	 * Converts the contents of a session one by one on the calling thread, or through <tt>parallel</tt>.
+	 */
+	private static <S, T, X extends Exception> List<T> convertContents(final List<? extends S> items,
+			final ParallelConversion.ItemConverter<S, T, X> converter, final ParallelConversion parallel) throws X {
+		if (parallel != null) {
+			return parallel.convert(items, converter);
+		}
+		List<T> result = new ArrayList<T>(items.size());
+		for (S item : items) {
+			result.add(converter.convert(item));
+		}
+		return result;
+	}
+
 	/**
 	 * Creates a brand new {@link SessionDescription} object.
 	 *
@@ -28,36 +119,22 @@ public class SdpToJingle {
 	 * @return A new {@link SessionDescription} object.
 	 *
 	 * @throws SDPException When a new {@link Origin} can't be created.
-	 * @throws UnknownHostException When local host can't be resolved to an address.
 	 */
-	private static SessionDescription getNewSessionDescription(final String sid) throws SDPException, UnknownHostException {
-		Version version = Version.parse("v=0");
-		long ntpTime = Time.getNTP(new Date());
-		/**
-		 * Passing in a fake name, all other params are the same as the {@link Origin#Origin}. Name is not that
-		 * important as it doesn't exist in the Jingle IQ.
-		 */
-		Origin origin = new Origin("ProfessorFarnsworth", ntpTime, ntpTime, InetAddress.getLocalHost().getHostName());
-
-		origin.setSessionID(Long.parseLong(sid));
-		SessionName sessionName = new SessionName();
-		TimeDescription timeDescription = new TimeDescription();
-
-		return new SessionDescription(version, origin, sessionName, timeDescription);
+	private static SessionDescription getNewSessionDescription(final String sid) throws SDPException {
+		return sessionDescriptionFactory.newSessionDescription(sid);
 	}
 
 	/**
 	 * Creates a new {@link IceUdpTransportPacketExtension} based on the passed in {@link Attribute}[].
 	 *
-	 * @param candidateAttrs {@link Attribute}[] - List of candidates.
+	 * @param candidateAttrs List<{@link Attribute}> - List of candidates.
 	 * @param userFragment {@link Attribute} SDP attribute holding the ICE user fragment.
 	 * @param password {@link Attribute} SDP attribute holding the ICE password.
 	 * @return A new {@link IceUdpTransportPacketExtension}.
 	 */
-	private static IceUdpTransportPacketExtension getIceUdpTransportPacketExtension(final Attribute[] candidateAttrs,
+	private static IceUdpTransportPacketExtension getIceUdpTransportPacketExtension(final List<Attribute> candidateAttrs,
 			final Attribute userFragment, final Attribute password) {
 
-		CandidatePacketExtension candidateExtension = null;
 		IceUdpTransportPacketExtension iceUdpExtension = new IceUdpTransportPacketExtension();
 		if (userFragment != null) {
 			iceUdpExtension.setUfrag(userFragment.getValue());
@@ -67,208 +144,245 @@ public class SdpToJingle {
 		}
 
 		for (Attribute attr : candidateAttrs) {
-			String[] params = attr.getValue().split("[ ]");
-			candidateExtension = new CandidatePacketExtension();
-			candidateExtension.setFoundation(params[0]);
-			candidateExtension.setComponent(Integer.parseInt(params[1]));
-			candidateExtension.setProtocol(params[2]);
-			candidateExtension.setPriority(Long.parseLong(params[3]));
-			candidateExtension.setIP(params[4]);
-			candidateExtension.setPort(Integer.parseInt(params[5]));
-
-			CandidateType type = CandidateType.valueOf(params[7]);
-			candidateExtension.setType(type);
-			if (type == CandidateType.host) {
-				candidateExtension.setGeneration(Integer.parseInt(params[9]));
-			} else {
-				candidateExtension.setRelAddr(params[9]);
-				candidateExtension.setRelPort(Integer.parseInt(params[11]));
-				candidateExtension.setGeneration(Integer.parseInt(params[13]));
-			}
-
-			iceUdpExtension.addCandidate(candidateExtension);
+			iceUdpExtension.addCandidate(IceCandidateParser.parse(attr.getValue()));
 		}
 
 		return iceUdpExtension;
 	}
 
 	/**
-	 * Creates a Jingle "transport-info" IQ based on the passed in {@link SessionDescription}.
+	 * Creates an SDP object from a Jingle Stanza.
 	 *
-	 * @param sessionDescription {@link SessionDescription} - The {@link SessionDescription} to convert.
-	 * @param mediaName String - The "name" to use in the "content" tag.
-	 * @return {@link JingleIQ} - A new {@link JingleIQ} containing all the transport candidates.
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @return SessionDescription - Converted SDP object.
 	 */
-	private static JingleIQ createJingleTransportInfo(final SessionDescription sessionDescription,
-			final String mediaName) {
-
-		JingleIQ result = new JingleIQ();
-		result.setType(IQ.Type.SET);
-		Origin origin = sessionDescription.getOrigin();
-		result.setSID(Long.toString(origin.getSessionID()));
-
-		ContentPacketExtension content = new ContentPacketExtension();
-		content.setName(mediaName);
+	public static SessionDescription sdpFromJingle(JingleIQ jingle) {
+		return sdpFromJingle(jingle, (ParallelConversion) null);
+	}
 
+	/**
+	 * Creates an SDP object from a Jingle Stanza, converting the contents in parallel when there are many of them.
+	 *
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @param parallel ParallelConversion - How to convert the contents in parallel, null to convert them on the
+	 *				calling thread.
+	 * @return SessionDescription - Converted SDP object.
+	 */
+	public static SessionDescription sdpFromJingle(final JingleIQ jingle, final ParallelConversion parallel) {
 		try {
-			result.setAction(JingleAction.parseString(JingleAction.TRANSPORT_INFO.toString()));
-			Attribute[] candidateAttributes = sessionDescription.getAttributes("candidate");
-			Attribute userFragment = sessionDescription.getAttribute("ice-ufrag");
-			Attribute password = sessionDescription.getAttribute("ice-pwd");
-			// TODO: What about TCP?
-			IceUdpTransportPacketExtension iceUdpExtension = getIceUdpTransportPacketExtension(candidateAttributes,
-					userFragment, password);
-
-			content.addChildExtension(iceUdpExtension);
-			result.addContent(content);
-		} catch (IllegalArgumentException e) {
+			return sessionDescriptionFromJingle(jingle, parallel);
+		} catch (SDPException e) {
 			e.printStackTrace();
-			result = null;
+			return null;
 		}
+	}
 
-		return result;
+	/**
+	 * @see #trySdpFromJingle(JingleIQ, ParallelConversion)
+	 */
+	public static ConversionResult<SessionDescription> trySdpFromJingle(final JingleIQ jingle) {
+		return trySdpFromJingle(jingle, null);
 	}
 
 	/**
-	 * Creates an SDP object from a Jingle Stanza.
+	 * Same as {@link #sdpFromJingle(JingleIQ, ParallelConversion)}, but failures are returned instead of being
+	 * printed or thrown.
 	 *
 	 * @param jingle JingleIQ - The Jingle stanza to convert.
-	 * @return SessionDescription - Converted SDP object.
+	 * @param parallel ParallelConversion - How to convert the contents in parallel, null to convert them on the
+	 *				calling thread.
+	 * @return ConversionResult<SessionDescription> - Converted SDP object, or why the conversion failed.
 	 */
-	// Things that remain to be done:
-	//  * Generate the "crypto" line from the <encription><crypto> element.
-	//  * Generate the "ssrc" lines from the <streams> element.
-	public static SessionDescription sdpFromJingle(JingleIQ jingle) {
+	public static ConversionResult<SessionDescription> trySdpFromJingle(final JingleIQ jingle,
+			final ParallelConversion parallel) {
 		try {
-			SessionDescription result = getNewSessionDescription(jingle.getSID());
-			List<ContentPacketExtension> contents = jingle.getContentList();
+			return ConversionResult.success(sessionDescriptionFromJingle(jingle, parallel));
+		} catch (SDPException e) {
+			return ConversionResult.failure(new ConversionException(ConversionException.Code.INVALID_SDP, null,
+					e.getMessage()));
+		} catch (RuntimeException e) {
+			return ConversionResult.failure(e);
+		}
+	}
+
+	/**
+	 * Creates an SDP object from a Jingle Stanza.
+	 *
+	 * @throws SDPException When a field of the SDP can't be created.
+	 */
+	private static SessionDescription sessionDescriptionFromJingle(final JingleIQ jingle,
+			final ParallelConversion parallel) throws SDPException {
+		SessionDescription result = getNewSessionDescription(jingle.getSID());
+		List<ContentPacketExtension> contents = jingle.getContentList();
+
+		// "a=group:BUNDLE audio video"
+		StringBuilder valueBuilder = new StringBuilder("BUNDLE");
+		for (ContentPacketExtension content : contents) {
+			valueBuilder.append(" ").append(content.getName());
+		}
+		Attribute attr = new Attribute("group", valueBuilder.toString());
+		result.addAttribute(attr);
 
-			// "a=group:BUNDLE audio video"
-			StringBuilder valueBuilder = new StringBuilder("BUNDLE");
-			for (ContentPacketExtension content : contents) {
-				valueBuilder.append(" ").append(content.getName());
+		for (MediaDescription mediaDescription : convertContents(contents, MEDIA_DESCRIPTION_FROM_CONTENT,
+				parallel)) {
+			result.addMediaDescription(mediaDescription);
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the media section of one content.
+	 *
+	 * @param content ContentPacketExtension - The content to convert.
+	 * @return MediaDescription - Converted media section.
+	 * @throws SDPException When a field of the media section can't be created.
+	 * @throws ConversionException When the content has no RTP description, payload types or raw UDP candidate,
+	 *				or a candidate has no type.
+	 */
+	private static MediaDescription mediaDescriptionFromContent(final ContentPacketExtension content)
+			throws SDPException {
+		// "m=audio 36798 RTP/AVPF 103 104 110 107 9 102 108 0 8 106 105 13 127 126\r\n"
+		String contentType = content.getName();
+		ContentChildren children = new ContentChildren(content);
+
+		Media media;
+		RtpDescriptionPacketExtension descriptionExt = children.description;
+		if (descriptionExt == null) {
+			throw new ConversionException(ConversionException.Code.MISSING_RTP_DESCRIPTION, null,
+					"No RTP description for content '" + contentType + "'");
+		}
+		List<PayloadTypePacketExtension> payloadExts = descriptionExt.getPayloadTypes();
+		if (payloadExts.size() > 0) {
+			media = new Media(contentType, 123456789, descriptionExt.getProfile(),
+							  Integer.toString(payloadExts.get(0).getID()));
+			for (int i = 1, n = payloadExts.size(); i < n; ++i) {
+				media.addMediaFormat(Integer.toString(payloadExts.get(i).getID()));
 			}
-			Attribute attr = new Attribute("group", valueBuilder.toString());
-			result.addAttribute(attr);
-
-			for (ContentPacketExtension content : contents) {
-
-				// "m=audio 36798 RTP/AVPF 103 104 110 107 9 102 108 0 8 106 105 13 127 126\r\n"
-				String contentType = content.getName();
-
-				Media media;
-				List<RtpDescriptionPacketExtension> descriptionExts = content.getChildExtensionsOfType(RtpDescriptionPacketExtension.class);
-				RtpDescriptionPacketExtension descriptionExt = descriptionExts.get(0);
-				List<PayloadTypePacketExtension> payloadExts = descriptionExt.getChildExtensionsOfType(PayloadTypePacketExtension.class);
-				if (payloadExts.size() > 0) {
-					media = new Media(contentType, 123456789, descriptionExt.getProfile(),
-									  Integer.toString(payloadExts.get(0).getID()));
-					for (int i = 1, n = payloadExts.size(); i < n; ++i) {
-						media.addMediaFormat(Integer.toString(payloadExts.get(i).getID()));
-					}
-				} else {
-					throw new RuntimeException("No media format");
-				}
-				MediaDescription mediaDescription = new MediaDescription(media);
-
-				List<RawUdpTransportPacketExtension> rawUdpExts = content.getChildExtensionsOfType(RawUdpTransportPacketExtension.class);
-				RawUdpTransportPacketExtension firstRawUdpExt = rawUdpExts.get(0);
-				CandidatePacketExtension candidateExt = firstRawUdpExt.getChildExtensionsOfType(CandidatePacketExtension.class).get(0);
-
-				// "c=IN IP4 172.22.76.221"
-				Connection connection = new Connection(candidateExt.getIP());
-				mediaDescription.setConnection(connection);
-
-				// "a=rtcp:36798 IN IP4 172.22.76.221\n"
-				Attribute rawUdpAttr = new Attribute("rtcp", candidateExt.getPort() + " IN IP4 " + candidateExt.getIP());
-				mediaDescription.addAttribute(rawUdpAttr);
-
-				List<IceUdpTransportPacketExtension> iceUdpExts = content.getChildExtensionsOfType(IceUdpTransportPacketExtension.class);
-				iceUdpExts = Utils.filterByClass(iceUdpExts, IceUdpTransportPacketExtension.class);
-				for (IceUdpTransportPacketExtension iceUdpExt : iceUdpExts) {
-					// ICE user fragment
-					Attribute userFragment = new Attribute("ice-ufrag", iceUdpExt.getUfrag());
-					mediaDescription.addAttribute(userFragment);
-
-					// ICE password
-					Attribute password = new Attribute("ice-pwd", iceUdpExt.getPassword());
-					mediaDescription.addAttribute(password);
-					// There can (or better should) be multiple candidate tags inside one transport tag.
-					for (CandidatePacketExtension candidateExtension : iceUdpExt.getChildExtensionsOfType(CandidatePacketExtension.class)) {
-						// "a=candidate:1 2 udp 1 172.22.76.221 47216 typ host generation 0"
-						String value = iceCandidateLineFromJingle(candidateExtension, true);
-						Attribute iceUdpAttr = new Attribute("candidate", value);
-						mediaDescription.addAttribute(iceUdpAttr);
-					}
-				}
+		} else {
+			throw new ConversionException(ConversionException.Code.MISSING_MEDIA_FORMAT, null,
+					"No media format for content '" + contentType + "'");
+		}
+		MediaDescription mediaDescription = new MediaDescription(media);
 
-				// "a=sendrecv"
-				Attribute sendrecvAttr = new Attribute("sendrecv");
-				mediaDescription.addAttribute(sendrecvAttr);
-
-				// "a=mid:audio"
-				Attribute midAttr = new Attribute("mid", contentType);
-				mediaDescription.addAttribute(midAttr);
-
-				// "a=rtpmap:106 CN/32000"
-				payloadExts = descriptionExt.getChildExtensionsOfType(PayloadTypePacketExtension.class);
-				for (PayloadTypePacketExtension payloadExt : payloadExts) {
-					String value = payloadExt.getID()
-							+ " " + payloadExt.getName()
-							+ "/" + payloadExt.getClockrate();
-					Attribute rtpmapAttr = new Attribute("rtpmap", value);
-					mediaDescription.addAttribute(rtpmapAttr);
-				}
+		CandidatePacketExtension candidateExt = children.getRawUdpCandidate();
+		if (candidateExt == null) {
+			throw new ConversionException(ConversionException.Code.MISSING_RAW_UDP_CANDIDATE, null,
+					"No raw UDP candidate for content '" + contentType + "'");
+		}
 
-				// "a=crypto:0 AES_CM_128_HMAC_SHA1_32 inline:keNcG3HezSNID7LmfDa9J4lfdUL8W1F7TNJKcbuy"
-				List<EncryptionPacketExtension> encryptionExts = descriptionExt.getChildExtensionsOfType(EncryptionPacketExtension.class);
-				if (encryptionExts.size() > 0) {
-					EncryptionPacketExtension encryptionExt = encryptionExts.get(0);
-					List<CryptoPacketExtension> cryptoExts = encryptionExt.getCryptoList();
-					for (CryptoPacketExtension cryptoExt : cryptoExts) {
-						String value = cryptoExt.getTag()
-								+ " " + cryptoExt.getCryptoSuite()
-								+ " " + cryptoExt.getKeyParams();
-						Attribute cryptoAttr = new Attribute("crypto", value);
-						mediaDescription.addAttribute(cryptoAttr);
-					}
-				}
+		// "c=IN IP4 172.22.76.221"
+		Connection connection = new Connection(candidateExt.getIP());
+		mediaDescription.setConnection(connection);
+
+		// "a=rtcp:36798 IN IP4 172.22.76.221\n"
+		Attribute rawUdpAttr = new Attribute("rtcp", candidateExt.getPort() + " IN IP4 " + candidateExt.getIP());
+		mediaDescription.addAttribute(rawUdpAttr);
+
+		for (IceUdpTransportPacketExtension iceUdpExt : children.iceUdps) {
+			// ICE user fragment
+			Attribute userFragment = new Attribute("ice-ufrag", iceUdpExt.getUfrag());
+			mediaDescription.addAttribute(userFragment);
+
+			// ICE password
+			Attribute password = new Attribute("ice-pwd", iceUdpExt.getPassword());
+			mediaDescription.addAttribute(password);
+			// There can (or better should) be multiple candidate tags inside one transport tag.
+			for (int i = 0, n = iceUdpExt.getCandidateCount(); i < n; ++i) {
+				// "a=candidate:1 2 udp 1 172.22.76.221 47216 typ host generation 0"
+				String value = iceCandidateLineFromJingle(iceUdpExt.getCandidate(i), true);
+				Attribute iceUdpAttr = new Attribute("candidate", value);
+				mediaDescription.addAttribute(iceUdpAttr);
+			}
+		}
 
-				// "a=rtcp-mux"
-				List<RtcpMuxExtension> rtcpMuxExts = descriptionExt.getChildExtensionsOfType(RtcpMuxExtension.class);
-				if (!rtcpMuxExts.isEmpty()) {
-					Attribute muxAttr = new Attribute("rtcp-mux");
-					mediaDescription.addAttribute(muxAttr);
-				}
+		// "a=sendrecv"
+		Attribute sendrecvAttr = new Attribute("sendrecv");
+		mediaDescription.addAttribute(sendrecvAttr);
+
+		// "a=mid:audio"
+		Attribute midAttr = new Attribute("mid", contentType);
+		mediaDescription.addAttribute(midAttr);
+
+		// "a=rtpmap:106 CN/32000"
+		for (PayloadTypePacketExtension payloadExt : payloadExts) {
+			String value = payloadExt.getID()
+					+ " " + payloadExt.getName()
+					+ "/" + payloadExt.getClockrate();
+			Attribute rtpmapAttr = new Attribute("rtpmap", value);
+			mediaDescription.addAttribute(rtpmapAttr);
+		}
 
-				// "a=ssrc:2570980487 cname:hsWuSQJxx7przmb8"
-				// "a=ssrc:2570980487 mslabel:stream_label"
-				// "a=ssrc:2570980487 label:audio_label"
-				List<StreamsPacketExtension> streamsExts = descriptionExt.getChildExtensionsOfType(StreamsPacketExtension.class);
-				if (!streamsExts.isEmpty()) {
-					List<StreamPacketExtension> streamExts = streamsExts.get(0).getChildExtensionsOfType(StreamPacketExtension.class);
-					if (!streamExts.isEmpty()) {
-						StreamPacketExtension streamExt = streamExts.get(0);
-						List<String> attrNames = streamExt.getAttributeNames();
-						SsrcPacketExtension ssrcExt = streamExt.getSsrc();
-						for (String attrName : attrNames) {
-							String value = ssrcExt.getText() + " " + attrName + ":" + streamExt.getAttributeAsString(attrName);
-							attr = new Attribute("ssrc", value);
-							mediaDescription.addAttribute(attr);
-						}
-					}
-				}
+		// "a=crypto:0 AES_CM_128_HMAC_SHA1_32 inline:keNcG3HezSNID7LmfDa9J4lfdUL8W1F7TNJKcbuy"
+		if (children.encryption != null) {
+			List<CryptoPacketExtension> cryptoExts = children.encryption.getCryptoList();
+			for (CryptoPacketExtension cryptoExt : cryptoExts) {
+				String value = cryptoExt.getTag()
+						+ " " + cryptoExt.getCryptoSuite()
+						+ " " + cryptoExt.getKeyParams();
+				Attribute cryptoAttr = new Attribute("crypto", value);
+				mediaDescription.addAttribute(cryptoAttr);
+			}
+		}
+
+		// "a=rtcp-mux"
+		if (children.rtcpMux) {
+			Attribute muxAttr = new Attribute("rtcp-mux");
+			mediaDescription.addAttribute(muxAttr);
+		}
 
-				result.addMediaDescription(mediaDescription);
+		// "a=ssrc:2570980487 cname:hsWuSQJxx7przmb8"
+		// "a=ssrc:2570980487 mslabel:stream_label"
+		// "a=ssrc:2570980487 label:audio_label"
+		if (children.streams != null) {
+			for (PacketExtension child : children.streams.getChildExtensions()) {
+				if (!(child instanceof StreamPacketExtension)) {
+					continue;
+				}
+				StreamPacketExtension streamExt = (StreamPacketExtension) child;
+				List<String> attrNames = streamExt.getAttributeNames();
+				SsrcPacketExtension ssrcExt = streamExt.getSsrc();
+				for (String attrName : attrNames) {
+					String value = ssrcExt.getText() + " " + attrName + ":" + streamExt.getAttributeAsString(attrName);
+					Attribute attr = new Attribute("ssrc", value);
+					mediaDescription.addAttribute(attr);
+				}
 			}
-			return result;
-		} catch (SDPException e) {
-			e.printStackTrace();
-			return null;
-		} catch (UnknownHostException e) {
-			e.printStackTrace();
-			return null;
 		}
+
+		return mediaDescription;
+	}
+
+	/**
+	 * Writes the SDP for a Jingle stanza straight into <tt>out</tt>, skipping the {@link SessionDescription}
+	 * object model. Use this instead of <tt>sdpFromJingle(jingle).toString()</tt> when only the text is needed.
+	 * Unlike {@link #sdpFromJingle(JingleIQ)}, the "m=" line carries the port of the raw UDP candidate.
+	 *
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @param out Appendable - Where to write the SDP, e.g. a {@link StringBuilder}.
+	 * @throws IOException When writing to <tt>out</tt> fails.
+	 * @throws ConversionException When a content has no RTP description, payload types or raw UDP candidate,
+	 *				or a candidate has no type.
+	 */
+	public static void sdpFromJingle(final JingleIQ jingle, final Appendable out) throws IOException {
+		new SdpWriter(sessionDescriptionFactory).write(jingle, out);
+	}
+
+	/**
+	 * Writes the SDP for a Jingle stanza straight into <tt>out</tt>, writing the media sections in parallel when
+	 * there are many of them.
+	 *
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @param out Appendable - Where to write the SDP, e.g. a {@link StringBuilder}.
+	 * @param parallel ParallelConversion - How to write the media sections in parallel, null to write them on the
+	 *				calling thread.
+	 * @throws IOException When writing to <tt>out</tt> fails.
+	 * @throws ConversionException When a content has no RTP description, payload types or raw UDP candidate,
+	 *				or a candidate has no type.
+	 * @see #sdpFromJingle(JingleIQ, Appendable)
+	 */
+	public static void sdpFromJingle(final JingleIQ jingle, final Appendable out, final ParallelConversion parallel)
+			throws IOException {
+		new SdpWriter(sessionDescriptionFactory).write(jingle, out, parallel);
 	}
 
 	/**
@@ -277,125 +391,285 @@ public class SdpToJingle {
 	 * @param sdp SessionDescription - The SDP object to convert to Jingle.
 	 * @return JingleIQ - Converted Jingle stanza.
 	 */
-	// Things that remain to be done:
-	//  * Generate the <encription><crypto> element from the "crypto" line of SDP.
-	//  * Generate the <streams><stream> elements from the "ssrc" lines of SDP.
 	public static JingleIQ jingleFromSdp(final SessionDescription sdp) {
+		return jingleFromSdp(sdp, null);
+	}
+
+	/**
+	 * Creates a Jingle stanza from SDP, converting the media sections in parallel when there are many of them.
+	 *
+	 * @param sdp SessionDescription - The SDP object to convert to Jingle.
+	 * @param parallel ParallelConversion - How to convert the media sections in parallel, null to convert them on
+	 *				the calling thread.
+	 * @return JingleIQ - Converted Jingle stanza.
+	 */
+	public static JingleIQ jingleFromSdp(final SessionDescription sdp, final ParallelConversion parallel) {
 		JingleIQ result = new JingleIQ();
 		result.setType(IQ.Type.SET);
-		
+
 		Origin origin = sdp.getOrigin();
 		result.setSID(Long.toString(origin.getSessionID()));
 
-		MediaDescription[] mediaDescriptions = sdp.getMediaDescriptions();
-		for (MediaDescription mediaDescription : mediaDescriptions) {
-			ContentPacketExtension content = new ContentPacketExtension();
+		List<MediaDescription> mediaDescriptions = Arrays.asList(sdp.getMediaDescriptions());
+		for (ContentPacketExtension content : convertContents(mediaDescriptions,
+				contentFromMediaDescription(sdp.getConnection()), parallel)) {
+			result.addContent(content);
+		}
+		return result;
+	}
 
-			Connection connection = mediaDescription.getConnection();
-			String netType = connection.getNetType();
-			if (netType.equals("IN")) {
-				content.setCreator(ContentPacketExtension.CreatorEnum.initiator);
-			} else {
-				throw new RuntimeException("Unsupported mediaDescription connection type '" + netType + "'");
-			}
+	/**
+	 * Creates the content of one media section.
+	 *
+	 * @param mediaDescription MediaDescription - The media section to convert.
+	 * @param sessionConnection Connection - The session level connection, used when the media section has no
+	 *				connection of its own. Null if there is none.
+	 * @return ContentPacketExtension - Converted content.
+	 */
+	private static ContentPacketExtension contentFromMediaDescription(final MediaDescription mediaDescription,
+			final Connection sessionConnection) {
+		ContentPacketExtension content = new ContentPacketExtension();
 
-			Media media = mediaDescription.getMedia();
-			content.setName(media.getMediaType());
+		Media media = mediaDescription.getMedia();
+		Connection connection = mediaDescription.getConnection();
+		if (connection == null) {
+			connection = sessionConnection;
+		}
+		if (connection == null) {
+			throw new ConversionException(ConversionException.Code.MISSING_CONNECTION, null,
+					"Media '" + media.getMediaType() + "' has no connection line");
+		}
+		String netType = connection.getNetType();
+		if (netType.equals("IN")) {
+			content.setCreator(ContentPacketExtension.CreatorEnum.initiator);
+		} else {
+			throw new ConversionException(ConversionException.Code.UNSUPPORTED_CONNECTION, connection.toString(),
+					"Unsupported mediaDescription connection type '" + netType + "'");
+		}
 
-			RtpDescriptionPacketExtension rtpExt = new RtpDescriptionPacketExtension();
-			rtpExt.setMedia(media.getMediaType());
-			rtpExt.setProfile(media.getProtocol());
+		content.setName(media.getMediaType());
 
-			content.addChildExtension(rtpExt);
+		RtpDescriptionPacketExtension rtpExt = new RtpDescriptionPacketExtension();
+		rtpExt.setMedia(media.getMediaType());
+		rtpExt.setProfile(media.getProtocol());
 
-			Attribute[] rtpmapAttrs = mediaDescription.getAttributes("rtpmap");
-			for (Attribute attr : rtpmapAttrs) {
-				PayloadTypePacketExtension payloadExt = new PayloadTypePacketExtension();
-				String[] params = attr.getValue().split("[ /]");
-				payloadExt.setId(Integer.parseInt(params[0]));
-				payloadExt.setName(params[1]);
-				StringBuilder clockRate = new StringBuilder(params[2]);
-				if (params.length > 3) {
-					clockRate.append("/").append(params[3]);
-				}
-				payloadExt.setClockrate(clockRate.toString());
-				rtpExt.addChildExtension(payloadExt);
-			}
+		content.addChildExtension(rtpExt);
 
-			// <encryption><crypto /><crypto /></encryption>
-			Attribute[] cryptoAttrs = mediaDescription.getAttributes("crypto");
-			EncryptionPacketExtension encryptionExt = null;
-			if (cryptoAttrs != null && cryptoAttrs.length > 0) {
-				encryptionExt = new EncryptionPacketExtension();
-				encryptionExt.setRequired(true);
-				rtpExt.addChildExtension(encryptionExt);
-			}
-			for (Attribute attr : cryptoAttrs) {
-				String[] params = attr.getValue().split(" ");
-				CryptoPacketExtension cryptoExt = new CryptoPacketExtension();
-				cryptoExt.setTag(params[0]);
-				cryptoExt.setCryptoSuite(params[1]);
-				cryptoExt.setKeyParams(params[2]);
-				encryptionExt.addChildExtension(cryptoExt);
-			}
+		MediaAttributes attributes = new MediaAttributes(mediaDescription);
+		for (Attribute attr : attributes.rtpMaps) {
+			rtpExt.addChildExtension(RtpMapCache.SHARED.get(attr.getValue()).newPayloadType());
+		}
 
-			// <rtcp-mux />
-			Attribute[] rtcpMuxAttrs = mediaDescription.getAttributes("rtcp-mux");
-			if (rtcpMuxAttrs.length > 0) {
-				RtcpMuxExtension rtpcMuxExt = new RtcpMuxExtension();
-				rtpExt.addChildExtension(rtpcMuxExt);
+		// <encryption><crypto /><crypto /></encryption>
+		List<Attribute> cryptoAttrs = attributes.cryptos;
+		EncryptionPacketExtension encryptionExt = null;
+		if (!cryptoAttrs.isEmpty()) {
+			encryptionExt = new EncryptionPacketExtension();
+			encryptionExt.setRequired(true);
+			rtpExt.addChildExtension(encryptionExt);
+		}
+		for (Attribute attr : cryptoAttrs) {
+			String[] params = attr.getValue().split(" ");
+			if (params.length < 3) {
+				throw malformedAttribute(attr);
 			}
+			CryptoPacketExtension cryptoExt = new CryptoPacketExtension();
+			cryptoExt.setTag(params[0]);
+			cryptoExt.setCryptoSuite(params[1]);
+			cryptoExt.setKeyParams(params[2]);
+			encryptionExt.addChildExtension(cryptoExt);
+		}
+
+		// <rtcp-mux />
+		if (attributes.rtcpMux) {
+			RtcpMuxExtension rtpcMuxExt = new RtcpMuxExtension();
+			rtpExt.addChildExtension(rtpcMuxExt);
+		}
 
-			// <streams><stream><ssrc>
-			Attribute[] ssrcAttrs = mediaDescription.getAttributes("ssrc");
-			StreamsPacketExtension streamsExt = null;
-			if (cryptoAttrs != null && cryptoAttrs.length > 0) {
-				streamsExt = new StreamsPacketExtension();
-				rtpExt.addChildExtension(streamsExt);
+		// <streams><stream><ssrc>, in the order the ssrcs and their attributes first appear
+		StreamsPacketExtension streamsExt = null;
+		if (!attributes.ssrcs.isEmpty()) {
+			streamsExt = new StreamsPacketExtension();
+			rtpExt.addChildExtension(streamsExt);
+		}
+		Map<String, Map<String, String>> streams = new LinkedHashMap<String, Map<String, String>>();
+		for (Attribute attr : attributes.ssrcs) {
+			String[] params = attr.getValue().split(" ");
+			if (params.length < 2 || params[1].indexOf(':') < 0) {
+				throw malformedAttribute(attr);
 			}
-			Map<String, Map<String, String>> streams = new HashMap<String, Map<String, String>>();
-			for (Attribute attr : ssrcAttrs) {
-				String[] params = attr.getValue().split(" ");
-				Map<String, String> map = streams.get(params[0]);
-				if (map == null) {
-					map = new HashMap<String, String>();
-					streams.put(params[0], map);
-				}
-				String[] kv = params[1].split(":");
-				map.put(kv[0], kv[1]);
+			Map<String, String> map = streams.get(params[0]);
+			if (map == null) {
+				map = new LinkedHashMap<String, String>();
+				streams.put(params[0], map);
 			}
-			for (Map.Entry<String, Map<String, String>> stream : streams.entrySet()) {
-				StreamPacketExtension streamExt = new StreamPacketExtension();
-				Map<String, String> streamAttrs = stream.getValue();
-				for (Map.Entry<String, String> streamAttr : streamAttrs.entrySet()) {
-					streamExt.setAttribute(streamAttr.getKey(), streamAttr.getValue());
-				}
-				SsrcPacketExtension ssrcExt = new SsrcPacketExtension();
-				ssrcExt.setText(stream.getKey());
-				streamExt.addChildExtension(ssrcExt);
-				streamsExt.addChildExtension(streamExt);
+			String[] kv = params[1].split(":");
+			map.put(kv[0], kv[1]);
+		}
+		for (Map.Entry<String, Map<String, String>> stream : streams.entrySet()) {
+			StreamPacketExtension streamExt = new StreamPacketExtension();
+			Map<String, String> streamAttrs = stream.getValue();
+			for (Map.Entry<String, String> streamAttr : streamAttrs.entrySet()) {
+				streamExt.setAttribute(streamAttr.getKey(), streamAttr.getValue());
 			}
+			SsrcPacketExtension ssrcExt = new SsrcPacketExtension();
+			ssrcExt.setText(stream.getKey());
+			streamExt.addChildExtension(ssrcExt);
+			streamsExt.addChildExtension(streamExt);
+		}
 
-			RawUdpTransportPacketExtension rawUdpExt = new RawUdpTransportPacketExtension();
-			CandidatePacketExtension candidateExt = new CandidatePacketExtension();
-			candidateExt.setIP(connection.getAddress());
-			candidateExt.setPort(media.getPort());
-			candidateExt.setGeneration(0);
-			rawUdpExt.addChildExtension(candidateExt);
-			content.addChildExtension(rawUdpExt);
-
-			// TODO: What about TCP?
-			Attribute[] candidateAttributes = mediaDescription.getAttributes("candidate");
-			Attribute userFragment = mediaDescription.getAttribute("ice-ufrag");
-			Attribute password = mediaDescription.getAttribute("ice-pwd");
-			// TODO: DTLS-SRTP (fingerprint).
-			IceUdpTransportPacketExtension iceUdpExt = getIceUdpTransportPacketExtension(candidateAttributes,
-					userFragment, password);
-			content.addChildExtension(iceUdpExt);
+		RawUdpTransportPacketExtension rawUdpExt = new RawUdpTransportPacketExtension();
+		CandidatePacketExtension candidateExt = new CandidatePacketExtension();
+		candidateExt.setIP(connection.getAddress());
+		candidateExt.setPort(media.getPort());
+		candidateExt.setGeneration(0);
+		rawUdpExt.addChildExtension(candidateExt);
+		content.addChildExtension(rawUdpExt);
 
-			result.addContent(content);
+		// TODO: What about TCP?
+		IceUdpTransportPacketExtension iceUdpExt = getIceUdpTransportPacketExtension(attributes.candidates,
+				attributes.userFragment, attributes.password);
+		content.addChildExtension(iceUdpExt);
+
+		return content;
+	}
+
+	private static ConversionException malformedAttribute(final Attribute attr) {
+		String line = attr.toString().trim();
+		return new ConversionException(ConversionException.Code.MALFORMED_ATTRIBUTE, line,
+				"Malformed " + attr.getName() + " '" + line + "'");
+	}
+
+	/**
+	 * Creates a Jingle stanza straight from the SDP text, skipping the {@link SessionDescription} object model.
+	 * The result is the same as parsing the text with jsdp and calling {@link #jingleFromSdp(SessionDescription)}.
+	 *
+	 * @param sdp CharSequence - The SDP text to convert to Jingle.
+	 * @return JingleIQ - Converted Jingle stanza.
+	 * @throws ConversionException When the SDP is malformed.
+	 */
+	public static JingleIQ jingleFromSdp(final CharSequence sdp) {
+		return new SdpTokenizer().tokenize(sdp);
+	}
+
+	/**
+	 * Creates a Jingle stanza straight from the SDP text of an offer of a session, converting only the media sections
+	 * that changed since the previous offer converted with the same <tt>cache</tt>. The contents of the other
+	 * sections are the ones of the previous stanza.
+	 *
+	 * @param sdp CharSequence - The SDP text to convert to Jingle.
+	 * @param cache MediaSectionCache - Media sections of the session, null to convert all sections.
+	 * @return JingleIQ - Converted Jingle stanza.
+	 * @throws ConversionException When the SDP is malformed.
+	 * @see MediaSectionCache
+	 */
+	public static JingleIQ jingleFromSdp(final CharSequence sdp, final MediaSectionCache cache) {
+		return new SdpTokenizer().tokenize(sdp, cache);
+	}
+
+	/**
+	 * Same as {@link #jingleFromSdp(CharSequence)}, but failures are returned instead of thrown.
+	 *
+	 * @param sdp CharSequence - The SDP text to convert to Jingle.
+	 * @return ConversionResult<JingleIQ> - Converted Jingle stanza, or why the conversion failed.
+	 */
+	public static ConversionResult<JingleIQ> tryJingleFromSdp(final CharSequence sdp) {
+		try {
+			return ConversionResult.success(jingleFromSdp(sdp));
+		} catch (RuntimeException e) {
+			return ConversionResult.failure(e);
 		}
-		return result;
+	}
+
+	/**
+	 * Same as {@link #jingleFromSdp(SessionDescription)}, but failures are returned instead of thrown.
+	 *
+	 * @param sdp SessionDescription - The SDP object to convert to Jingle.
+	 * @return ConversionResult<JingleIQ> - Converted Jingle stanza, or why the conversion failed.
+	 */
+	public static ConversionResult<JingleIQ> tryJingleFromSdp(final SessionDescription sdp) {
+		try {
+			return ConversionResult.success(jingleFromSdp(sdp));
+		} catch (RuntimeException e) {
+			return ConversionResult.failure(e);
+		}
+	}
+
+	/**
+	 * Creates a {@link SdpToJingleConverter} per leaf task of a batch.
+	 */
+	private static final BatchConversion.WorkerFactory<CharSequence, JingleIQ> JINGLE_FROM_SDP_WORKERS
+			= new BatchConversion.WorkerFactory<CharSequence, JingleIQ>() {
+		@Override
+		public BatchConversion.Worker<CharSequence, JingleIQ> newWorker() {
+			final SdpToJingleConverter converter = new SdpToJingleConverter();
+			return new BatchConversion.Worker<CharSequence, JingleIQ>() {
+				@Override
+				public JingleIQ convert(final CharSequence sdp) {
+					return converter.jingleFromSdp(sdp);
+				}
+			};
+		}
+	};
+
+	/**
+	 * Converts many SDP texts on {@link ForkJoinPool#commonPool()}, whose daemon workers don't keep the JVM alive.
+	 * Callers that don't want to share the common pool with the rest of the application can supply their own to
+	 * {@link #jingleFromSdpBatch(List, ForkJoinPool)}.
+	 *
+	 * @see #jingleFromSdpBatch(List, ForkJoinPool)
+	 */
+	public static List<ConversionResult<JingleIQ>> jingleFromSdpBatch(final List<? extends CharSequence> sdps) {
+		return jingleFromSdpBatch(sdps, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Converts many SDP texts, spreading them over the workers of <tt>pool</tt>. Each conversion is the same as
+	 * {@link #jingleFromSdp(CharSequence)}; a failing one doesn't stop the others.
+	 *
+	 * @param sdps List<CharSequence> - The SDP texts to convert to Jingle.
+	 * @param pool ForkJoinPool - Pool running the conversions.
+	 * @return List<ConversionResult<JingleIQ>> - One result per SDP, in the same order.
+	 */
+	public static List<ConversionResult<JingleIQ>> jingleFromSdpBatch(final List<? extends CharSequence> sdps,
+			final ForkJoinPool pool) {
+		return BatchConversion.convert(pool, sdps, JINGLE_FROM_SDP_WORKERS);
+	}
+
+	/**
+	 * Converts many Jingle stanzas on {@link ForkJoinPool#commonPool()}, whose daemon workers don't keep the JVM
+	 * alive. Callers that don't want to share the common pool with the rest of the application can supply their own
+	 * to {@link #sdpFromJingleBatch(List, ForkJoinPool)}.
+	 *
+	 * @see #sdpFromJingleBatch(List, ForkJoinPool)
+	 */
+	public static List<ConversionResult<String>> sdpFromJingleBatch(final List<JingleIQ> jingles) {
+		return sdpFromJingleBatch(jingles, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Converts many Jingle stanzas to SDP text, spreading them over the workers of <tt>pool</tt>. Each conversion
+	 * writes the same text as {@link #sdpFromJingle(JingleIQ, Appendable)}; a failing one doesn't stop the others.
+	 *
+	 * @param jingles List<JingleIQ> - The Jingle stanzas to convert.
+	 * @param pool ForkJoinPool - Pool running the conversions.
+	 * @return List<ConversionResult<String>> - One result per stanza, in the same order.
+	 */
+	public static List<ConversionResult<String>> sdpFromJingleBatch(final List<JingleIQ> jingles,
+			final ForkJoinPool pool) {
+		final SessionDescriptionFactory factory = sessionDescriptionFactory;
+		return BatchConversion.convert(pool, jingles, new BatchConversion.WorkerFactory<JingleIQ, String>() {
+			@Override
+			public BatchConversion.Worker<JingleIQ, String> newWorker() {
+				final SdpToJingleConverter converter = new SdpToJingleConverter(factory, null);
+				return new BatchConversion.Worker<JingleIQ, String>() {
+					@Override
+					public String convert(final JingleIQ jingle) {
+						return converter.sdpTextFromJingle(jingle);
+					}
+				};
+			}
+		});
 	}
 
 	/**
@@ -409,31 +683,63 @@ public class SdpToJingle {
 	 */
 	public static JingleIQ transportInfoFromSdpStub(final List<String> candidateList, final String sid,
 			final String mediaName) {
+		try {
+			return transportInfoFromCandidates(candidateList, sid, mediaName);
+		} catch (ConversionException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
 
-		SessionDescription sessionDescription = null;
-		JingleIQ result = null;
-		String candidatePrefix = "candidate:";
-
-		// First, create a session description object.
+	/**
+	 * Same as {@link #transportInfoFromSdpStub(List, String, String)}, but failures are returned instead of being
+	 * printed.
+	 *
+	 * @param candidateList List<String> - List of SDP ICE candidates.
+	 * @param sid String - The Jingle session ID.
+	 * @param mediaName String - The "name" to use in the "content" tag.
+	 * @return ConversionResult<JingleIQ> - A new {@link JingleIQ} containing all the transport candidates, or why
+	 *			the conversion failed.
+	 */
+	public static ConversionResult<JingleIQ> tryTransportInfoFromSdpStub(final List<String> candidateList,
+			final String sid, final String mediaName) {
 		try {
-			sessionDescription = getNewSessionDescription(sid);
+			return ConversionResult.success(transportInfoFromCandidates(candidateList, sid, mediaName));
+		} catch (RuntimeException e) {
+			return ConversionResult.failure(e);
+		}
+	}
 
-			// Add candidates.
-			for (String candidate : candidateList) {
-				String[] keyValue = candidate.split(candidatePrefix);
-				Attribute field = new Attribute("candidate", keyValue[1].trim());
-				sessionDescription.addAttribute(field);
+	/**
+	 * Creates a Jingle "transport-info" IQ from SDP ICE candidates.
+	 *
+	 * @throws ConversionException When a candidate is malformed.
+	 */
+	private static JingleIQ transportInfoFromCandidates(final List<String> candidateList, final String sid,
+			final String mediaName) {
+		JingleIQ result = new JingleIQ();
+		result.setType(IQ.Type.SET);
+		result.setSID(sid);
+		result.setAction(JingleAction.TRANSPORT_INFO);
+
+		ContentPacketExtension content = new ContentPacketExtension();
+		content.setName(mediaName);
+
+		// TODO: What about TCP?
+		IceUdpTransportPacketExtension iceUdpExtension = new IceUdpTransportPacketExtension();
+		for (String candidate : candidateList) {
+			// "a=candidate:1 2 udp 1 172.22.76.221 47216 typ host generation 0", the prefix is optional.
+			int prefixIndex = candidate.indexOf(CANDIDATE_PREFIX);
+			int valueStart = prefixIndex < 0 ? 0 : prefixIndex + CANDIDATE_PREFIX.length();
+			int valueEnd = candidate.length();
+			while (valueEnd > valueStart && candidate.charAt(valueEnd - 1) <= ' ') {
+				valueEnd--;
 			}
-		} catch (SDPException e) {
-			e.printStackTrace();
-		} catch (UnknownHostException e) {
-			e.printStackTrace();
+			iceUdpExtension.addCandidate(IceCandidateParser.parse(candidate, valueStart, valueEnd));
 		}
 
-		// Convert SDP to Jingle.
-		if (sessionDescription != null) {
-			result = createJingleTransportInfo(sessionDescription, mediaName);
-		}
+		content.addChildExtension(iceUdpExtension);
+		result.addContent(content);
 
 		return result;
 	}
@@ -455,27 +761,99 @@ public class SdpToJingle {
 	 * @see http://tools.ietf.org/html/rfc5245#page-73
 	 */
 	public static String iceCandidateLineFromJingle(final CandidatePacketExtension iceCandidate, final boolean valueOnly) {
+		StringBuilder builder = new StringBuilder(96);
+		iceCandidateLineFromJingle(iceCandidate, valueOnly, builder);
+		return builder.toString();
+	}
+
+	/**
+	 * Writes an SDP ICE candidate line based on a Jingle {@link CandidatePacketExtension} object.
+	 *
+	 * @param iceCandidate {@link CandidatePacketExtension} - The Jingle ICE candidate object to use.
+	 * @param valueOnly boolean - Whether or not to omit the prefix "a=candidate:" and the suffix "\r\n".
+	 * @param out StringBuilder - Where to write the line.
+	 */
+	public static void iceCandidateLineFromJingle(final CandidatePacketExtension iceCandidate, final boolean valueOnly,
+			final StringBuilder out) {
+		try {
+			iceCandidateLineFromJingle(iceCandidate, valueOnly, (Appendable) out);
+		} catch (IOException e) {
+			// StringBuilder doesn't throw IOException.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes an SDP ICE candidate line based on a Jingle {@link CandidatePacketExtension} object.
+	 *
+	 * @param iceCandidate {@link CandidatePacketExtension} - The Jingle ICE candidate object to use.
+	 * @param valueOnly boolean - Whether or not to omit the prefix "a=candidate:" and the suffix "\r\n".
+	 * @param out Appendable - Where to write the line.
+	 * @throws IOException When writing to <tt>out</tt> fails.
+	 * @throws ConversionException When the candidate has no type.
+	 */
+	public static void iceCandidateLineFromJingle(final CandidatePacketExtension iceCandidate, final boolean valueOnly,
+			final Appendable out) throws IOException {
+		CandidateType type = iceCandidate.getType();
+		if (type == null) {
+			throw new ConversionException(ConversionException.Code.MALFORMED_CANDIDATE, null,
+					"No type for candidate '" + iceCandidate.getFoundation() + "'");
+		}
 		// "(a=candidate:)1 2 udp 2 172.22.76.221 36798 typ srflx raddr 10.0.34.44 rport 48296 generation 0(\r\n)"
-		StringBuilder builder = new StringBuilder();
 		if (!valueOnly) {
-			builder.append("a=candidate:");
-		}
-		builder.append(iceCandidate.getFoundation() + " ");
-		builder.append(iceCandidate.getComponent() + " ");
-		builder.append(iceCandidate.getProtocol() + " ");
-		builder.append(iceCandidate.getPriority() + " ");
-		builder.append(iceCandidate.getIP() + " ");
-		builder.append(iceCandidate.getPort() + " typ ");
-		builder.append(iceCandidate.getType() + " ");
-		if (iceCandidate.getType() != CandidateType.host) {
-			builder.append("raddr " + iceCandidate.getRelAddr() + " ");
-			builder.append("rport " + iceCandidate.getRelPort() + " ");
-		}
-		builder.append("generation " + iceCandidate.getGeneration());
+			out.append("a=candidate:");
+		}
+		out.append(iceCandidate.getFoundation()).append(' ');
+		SdpWriter.appendNumber(out, iceCandidate.getComponent());
+		out.append(' ').append(iceCandidate.getProtocol()).append(' ');
+		SdpWriter.appendNumber(out, iceCandidate.getPriority());
+		out.append(' ').append(iceCandidate.getIP()).append(' ');
+		SdpWriter.appendNumber(out, iceCandidate.getPort());
+		out.append(" typ ").append(type.toString());
+		if (type != CandidateType.host) {
+			out.append(" raddr ").append(iceCandidate.getRelAddr()).append(" rport ");
+			SdpWriter.appendNumber(out, iceCandidate.getRelPort());
+		}
+		String tcpType = iceCandidate.getTcpType();
+		if (tcpType != null) {
+			out.append(" tcptype ").append(tcpType);
+		}
+		int generation = iceCandidate.getGeneration();
+		if (generation >= 0) {
+			out.append(" generation ");
+			SdpWriter.appendNumber(out, generation);
+		}
+		int network = iceCandidate.getNetwork();
+		if (network >= 0) {
+			out.append(" network-id ");
+			SdpWriter.appendNumber(out, network);
+		}
 		if (!valueOnly) {
-			builder.append("\r\n");
+			out.append("\r\n");
 		}
+	}
 
-		return builder.toString();
+	/**
+	 * Same as {@link #iceCandidateLineFromJingle(CandidatePacketExtension, boolean)}, but the value part is kept in
+	 * the candidate and reused until one of its attributes changes (see
+	 * {@link CandidatePacketExtension#getLine(CandidatePacketExtension.LineRenderer)}). Use it when the same
+	 * candidates are rendered repeatedly, e.g. when the SDP is rebuilt on every renegotiation. The other conversions
+	 * only memoize candidate lines when asked to, see {@link SdpToJingleConverter#setMemoizeCandidateLines(boolean)}.
+	 *
+	 * @param iceCandidate {@link CandidatePacketExtension} - The Jingle ICE candidate object to use.
+	 * @param valueOnly boolean - Whether or not to omit the prefix "a=candidate:" and the suffix "\r\n".
+	 * @return String - ICE candidate SDP line.
+	 */
+	public static String memoizedIceCandidateLineFromJingle(final CandidatePacketExtension iceCandidate,
+			final boolean valueOnly) {
+		String value = memoizedIceCandidateValue(iceCandidate);
+		return valueOnly ? value : "a=candidate:" + value + "\r\n";
+	}
+
+	/**
+	 * Returns the value part of the SDP line of a candidate, rendering and caching it in the candidate if needed.
+	 */
+	static String memoizedIceCandidateValue(final CandidatePacketExtension iceCandidate) {
+		return iceCandidate.getLine(CANDIDATE_VALUE_RENDERER);
 	}
 }
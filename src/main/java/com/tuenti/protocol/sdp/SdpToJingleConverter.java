@@ -0,0 +1,208 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.CandidatePacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.JingleIQ;
+
+import java.io.IOException;
+
+/**
+ * Instance based counterpart of the text conversions of {@link SdpToJingle}. A converter keeps its scratch state
+ * (the SDP tokenizer with its ssrc grouping map, the slots the children of a content are sorted into and an output
+ * buffer) from one conversion to the next, so once warmed up a conversion mostly allocates the objects it returns.
+ *
+ * A converter must not be shared between threads: use one per thread, e.g. through {@link #forCurrentThread()}.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+public class SdpToJingleConverter {
+
+	/**
+	 * Initial capacity of the output buffer, enough for an audio and video session with a few candidates.
+	 */
+	private static final int INITIAL_BUFFER_CAPACITY = 4096;
+
+	/**
+	 * Capacity above which the output buffer is dropped after use instead of being kept, so that one huge session
+	 * doesn't pin its buffer for the lifetime of the thread.
+	 */
+	private static final int MAX_RETAINED_BUFFER_CAPACITY = 65536;
+
+	private static final ThreadLocal<SdpToJingleConverter> PER_THREAD = new ThreadLocal<SdpToJingleConverter>() {
+		@Override
+		protected SdpToJingleConverter initialValue() {
+			return new SdpToJingleConverter();
+		}
+	};
+
+	/**
+	 * Factory of the session skeleton, null to use {@link SdpToJingle#getSessionDescriptionFactory()}.
+	 */
+	private final SessionDescriptionFactory sessionFactory;
+	private final ParallelConversion parallel;
+
+	private final SdpTokenizer tokenizer = new SdpTokenizer();
+	private SdpWriter writer;
+	private boolean memoizeCandidateLines;
+	private StringBuilder buffer = new StringBuilder(INITIAL_BUFFER_CAPACITY);
+
+	/**
+	 * Creates a converter that uses the factory configured in {@link SdpToJingle} and converts the contents of
+	 * every session on the calling thread.
+	 */
+	public SdpToJingleConverter() {
+		this(null, null);
+	}
+
+	/**
+	 * @param sessionFactory SessionDescriptionFactory - Factory of the session skeleton, or null to use the one
+	 *				configured in {@link SdpToJingle} at the time of each conversion.
+	 * @param parallel ParallelConversion - How to write the media sections of large sessions in parallel, or null
+	 *				to always write them on the calling thread.
+	 */
+	public SdpToJingleConverter(final SessionDescriptionFactory sessionFactory, final ParallelConversion parallel) {
+		this.sessionFactory = sessionFactory;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Returns the converter of the current thread, created on first use with {@link #SdpToJingleConverter()}.
+	 *
+	 * @return SdpToJingleConverter - The converter of the current thread.
+	 */
+	public static SdpToJingleConverter forCurrentThread() {
+		return PER_THREAD.get();
+	}
+
+	/**
+	 * Creates a Jingle stanza straight from the SDP text.
+	 *
+	 * @param sdp CharSequence - The SDP text to convert to Jingle.
+	 * @return JingleIQ - Converted Jingle stanza.
+	 * @throws ConversionException When the SDP is malformed.
+	 * @see SdpToJingle#jingleFromSdp(CharSequence)
+	 */
+	public JingleIQ jingleFromSdp(final CharSequence sdp) {
+		return tokenizer.tokenize(sdp);
+	}
+
+	/**
+	 * Same as {@link #jingleFromSdp(CharSequence)}, but the stanza is returned confined to the current thread (see
+	 * {@link JingleIQ#setThreadConfined(boolean)}): its extensions are read and modified without locking, e.g. to
+	 * adapt and serialize it on the thread that converted it. It must be published with {@link JingleIQ#publish()}
+	 * before any other thread uses it.
+	 *
+	 * @param sdp CharSequence - The SDP text to convert to Jingle.
+	 * @return JingleIQ - Converted Jingle stanza, confined to the current thread.
+	 * @throws ConversionException When the SDP is malformed.
+	 */
+	public JingleIQ confinedJingleFromSdp(final CharSequence sdp) {
+		return tokenizer.tokenize(sdp, null, true);
+	}
+
+	/**
+	 * Creates a Jingle stanza straight from the SDP text, converting only the media sections that changed since the
+	 * previous conversion with the same <tt>cache</tt>.
+	 *
+	 * @param sdp CharSequence - The SDP text to convert to Jingle.
+	 * @param cache MediaSectionCache - Media sections of the session, null to convert all sections.
+	 * @return JingleIQ - Converted Jingle stanza.
+	 * @throws ConversionException When the SDP is malformed.
+	 * @see SdpToJingle#jingleFromSdp(CharSequence, MediaSectionCache)
+	 */
+	public JingleIQ jingleFromSdp(final CharSequence sdp, final MediaSectionCache cache) {
+		return tokenizer.tokenize(sdp, cache);
+	}
+
+	/**
+	 * Writes the SDP for a Jingle stanza straight into <tt>out</tt>.
+	 *
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @param out Appendable - Where to write the SDP.
+	 * @throws IOException When writing to <tt>out</tt> fails.
+	 * @throws ConversionException When a content has no RTP description, payload types or raw UDP candidate,
+	 *				or a candidate has no type.
+	 * @see SdpToJingle#sdpFromJingle(JingleIQ, Appendable)
+	 */
+	public void sdpFromJingle(final JingleIQ jingle, final Appendable out) throws IOException {
+		getWriter().write(jingle, out, parallel);
+	}
+
+	/**
+	 * Creates the SDP text for a Jingle stanza, writing it into the buffer of this converter first.
+	 *
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @return String - The SDP text.
+	 * @throws ConversionException When a content has no RTP description, payload types or raw UDP candidate,
+	 *				or a candidate has no type.
+	 * @see SdpToJingle#sdpFromJingle(JingleIQ, Appendable)
+	 */
+	public String sdpTextFromJingle(final JingleIQ jingle) {
+		StringBuilder out = buffer;
+		out.setLength(0);
+		try {
+			getWriter().write(jingle, out, parallel);
+			return out.toString();
+		} catch (IOException e) {
+			// StringBuilder doesn't throw IOException.
+			throw new IllegalStateException(e);
+		} finally {
+			if (out.capacity() > MAX_RETAINED_BUFFER_CAPACITY) {
+				buffer = new StringBuilder(INITIAL_BUFFER_CAPACITY);
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #jingleFromSdp(CharSequence)}, but failures are returned instead of thrown.
+	 *
+	 * @param sdp CharSequence - The SDP text to convert to Jingle.
+	 * @return ConversionResult<JingleIQ> - Converted Jingle stanza, or why the conversion failed.
+	 */
+	public ConversionResult<JingleIQ> tryJingleFromSdp(final CharSequence sdp) {
+		try {
+			return ConversionResult.success(tokenizer.tokenize(sdp));
+		} catch (RuntimeException e) {
+			return ConversionResult.failure(e);
+		}
+	}
+
+	/**
+	 * Same as {@link #sdpTextFromJingle(JingleIQ)}, but failures are returned instead of thrown.
+	 *
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @return ConversionResult<String> - The SDP text, or why the conversion failed.
+	 */
+	public ConversionResult<String> trySdpTextFromJingle(final JingleIQ jingle) {
+		try {
+			return ConversionResult.success(sdpTextFromJingle(jingle));
+		} catch (RuntimeException e) {
+			return ConversionResult.failure(e);
+		}
+	}
+
+	/**
+	 * Sets whether the SDP written by this converter reuses the lines of the candidates it already wrote, as long as
+	 * they haven't changed. The lines are then kept in the candidates (see
+	 * {@link SdpToJingle#memoizedIceCandidateLineFromJingle(CandidatePacketExtension, boolean)}), which pays off when
+	 * the same stanzas are converted repeatedly, e.g. on every renegotiation. Off by default.
+	 *
+	 * @param memoizeCandidateLines boolean - Whether to keep and reuse the candidate lines.
+	 */
+	public void setMemoizeCandidateLines(final boolean memoizeCandidateLines) {
+		this.memoizeCandidateLines = memoizeCandidateLines;
+	}
+
+	/**
+	 * Returns the writer for the current session factory, creating a new one if the factory or the memoization of
+	 * candidate lines changed.
+	 */
+	private SdpWriter getWriter() {
+		SessionDescriptionFactory factory = sessionFactory != null
+				? sessionFactory : SdpToJingle.getSessionDescriptionFactory();
+		if (writer == null || writer.getSessionFactory() != factory
+				|| writer.isMemoizingCandidateLines() != memoizeCandidateLines) {
+			writer = new SdpWriter(factory, memoizeCandidateLines);
+		}
+		return writer;
+	}
+}
@@ -0,0 +1,477 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.AbstractPacketExtension;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import org.jivesoftware.smack.packet.IQ;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Single pass SDP scanner that builds a {@link JingleIQ} straight from the SDP text, without building a
+ * jsdp {@link net.sourceforge.jsdp.SessionDescription} first.
+ *
+ * Lines are located by index and values are only copied out of the input when they end up in the Jingle stanza.
+ * The state of the media section being scanned lives in the instance, so a tokenizer must not be shared between
+ * threads. It can be reused for consecutive conversions.
+ *
+ * The stanza is built confined to the converting thread (see {@link JingleIQ#setThreadConfined(boolean)}), so that
+ * none of its extensions is locked while it is built, and published before it is returned unless the caller asks
+ * for it to stay confined.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+class SdpTokenizer {
+
+	/**
+	 * The text being scanned.
+	 */
+	private CharSequence sdp;
+
+	/**
+	 * Length of {@link #sdp}.
+	 */
+	private int length;
+
+	/**
+	 * Start of the next line to scan.
+	 */
+	private int position;
+
+	/**
+	 * Bounds of the current line, excluding the line terminator and trailing white space.
+	 */
+	private int lineStart;
+	private int lineEnd;
+
+	/**
+	 * Connection address from the session level "c=" line, used by media sections without one of their own.
+	 */
+	private String sessionAddress;
+
+	// State of the media section being scanned, null/false/-1 while in the session section.
+	private ContentPacketExtension content;
+	private RtpDescriptionPacketExtension rtpExt;
+	private IceUdpTransportPacketExtension iceUdpExt;
+	private EncryptionPacketExtension encryptionExt;
+	private boolean rtcpMux;
+	private String mediaAddress;
+	private int mediaPort;
+	private final Map<String, StreamPacketExtension> streams = new LinkedHashMap<String, StreamPacketExtension>();
+
+	/**
+	 * Contents of the previous offer of the session, null when not caching.
+	 */
+	private MediaSectionCache cache;
+
+	/**
+	 * Bounds of the media section being scanned, kept to store it in {@link #cache}.
+	 */
+	private int sectionStart;
+	private int sectionEnd;
+
+	/**
+	 * Converts an SDP text into a Jingle stanza.
+	 *
+	 * @param sdp CharSequence - The SDP to convert.
+	 * @return JingleIQ - Converted Jingle stanza.
+	 * @throws ConversionException When the SDP is malformed or uses an unsupported connection type.
+	 */
+	JingleIQ tokenize(final CharSequence sdp) {
+		return tokenize(sdp, null);
+	}
+
+	/**
+	 * Converts an SDP text into a Jingle stanza, reusing the contents of the media sections that are the same as in
+	 * the previous conversion that used <tt>cache</tt>.
+	 *
+	 * @param sdp CharSequence - The SDP to convert.
+	 * @param cache MediaSectionCache - Contents of the previous offer of the session, null to convert all sections.
+	 * @return JingleIQ - Converted Jingle stanza.
+	 * @throws ConversionException When the SDP is malformed or uses an unsupported connection type.
+	 */
+	JingleIQ tokenize(final CharSequence sdp, final MediaSectionCache cache) {
+		return tokenize(sdp, cache, false);
+	}
+
+	/**
+	 * Converts an SDP text into a Jingle stanza, optionally leaving it confined to the current thread.
+	 *
+	 * @param sdp CharSequence - The SDP to convert.
+	 * @param cache MediaSectionCache - Contents of the previous offer of the session, null to convert all sections.
+	 * @param confinedResult boolean - Whether the stanza is returned confined to the current thread instead of
+	 *				published.
+	 * @return JingleIQ - Converted Jingle stanza.
+	 * @throws ConversionException When the SDP is malformed or uses an unsupported connection type.
+	 */
+	JingleIQ tokenize(final CharSequence sdp, final MediaSectionCache cache, final boolean confinedResult) {
+		this.sdp = sdp;
+		this.cache = cache;
+		this.length = sdp.length();
+		this.position = 0;
+		this.sessionAddress = null;
+		resetMediaSection();
+
+		JingleIQ result = new JingleIQ();
+		result.setThreadConfined(true);
+		result.setType(IQ.Type.SET);
+
+		try {
+			while (nextLine()) {
+				switch (sdp.charAt(lineStart)) {
+					case 'o':
+						parseOrigin(result);
+						break;
+					case 'c':
+						parseConnection();
+						break;
+					case 'm':
+						finishMediaSection(result);
+						if (cache == null || !reuseMediaSection(result)) {
+							parseMedia();
+						}
+						break;
+					case 'a':
+						if (content != null) {
+							parseMediaAttribute();
+						}
+						break;
+					default:
+						// Other fields don't exist in the Jingle stanza.
+						break;
+				}
+			}
+			finishMediaSection(result);
+			if (result.getSID() == null) {
+				throw new ConversionException(ConversionException.Code.MISSING_ORIGIN, null, "SDP has no origin line");
+			}
+			if (cache != null) {
+				cache.conversionSucceeded();
+			}
+			if (!confinedResult) {
+				result.publish();
+			}
+			return result;
+		} catch (RuntimeException e) {
+			if (cache != null) {
+				cache.conversionFailed();
+			}
+			throw e;
+		} finally {
+			this.sdp = null;
+			this.cache = null;
+			resetMediaSection();
+		}
+	}
+
+	/**
+	 * Adds the content of the media section starting at the current "m=" line from {@link #cache} if it is the same
+	 * as in the previous offer, and skips the section.
+	 *
+	 * @return boolean - false when the section has to be converted.
+	 */
+	private boolean reuseMediaSection(final JingleIQ result) {
+		int end = mediaSectionEnd();
+		ContentPacketExtension cached = cache.lookup(sdp, lineStart, end, sessionAddress);
+		if (cached == null) {
+			sectionStart = lineStart;
+			sectionEnd = end;
+			return false;
+		}
+		result.addContent(cached);
+		position = end;
+		return true;
+	}
+
+	/**
+	 * @return int - Start of the next "m=" line, or the end of the input.
+	 */
+	private int mediaSectionEnd() {
+		int i = position;
+		while (i < length) {
+			if (sdp.charAt(i) == 'm' && i + 1 < length && sdp.charAt(i + 1) == '=') {
+				return i;
+			}
+			int end = SdpText.indexOf(sdp, '\n', i, length);
+			if (end < 0) {
+				break;
+			}
+			i = end + 1;
+		}
+		return length;
+	}
+
+	/**
+	 * Moves to the next non empty line.
+	 *
+	 * @return boolean - false when the end of the input has been reached.
+	 */
+	private boolean nextLine() {
+		while (position < length) {
+			int start = position;
+			int end = SdpText.indexOf(sdp, '\n', start, length);
+			position = end < 0 ? length : end + 1;
+			if (end < 0) {
+				end = length;
+			}
+			while (end > start && sdp.charAt(end - 1) <= ' ') {
+				end--;
+			}
+			if (end == start) {
+				continue;
+			}
+			if (end - start < 2 || sdp.charAt(start + 1) != '=') {
+				String line = SdpText.substring(sdp, start, end);
+				throw new ConversionException(ConversionException.Code.MALFORMED_LINE, line,
+						"Malformed SDP line '" + line + "'");
+			}
+			lineStart = start;
+			lineEnd = end;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * "o=- 123 1 IN IP4 127.0.0.1"
+	 */
+	private void parseOrigin(final JingleIQ result) {
+		int userEnd = SdpText.tokenEnd(sdp, lineStart + 2, lineEnd);
+		int sidStart = SdpText.skipSpaces(sdp, userEnd, lineEnd);
+		int sidEnd = SdpText.tokenEnd(sdp, sidStart, lineEnd);
+		result.setSID(Long.toString(parseLong(sidStart, sidEnd)));
+	}
+
+	/**
+	 * "c=IN IP4 172.22.76.221"
+	 */
+	private void parseConnection() {
+		int netTypeStart = lineStart + 2;
+		int netTypeEnd = SdpText.tokenEnd(sdp, netTypeStart, lineEnd);
+		if (!SdpText.regionEquals(sdp, netTypeStart, netTypeEnd, "IN")) {
+			throw failure(ConversionException.Code.UNSUPPORTED_CONNECTION,
+					"Unsupported mediaDescription connection type '" + sdp.subSequence(netTypeStart, netTypeEnd)
+					+ "' in line");
+		}
+		int addressTypeStart = SdpText.skipSpaces(sdp, netTypeEnd, lineEnd);
+		int addressStart = SdpText.skipSpaces(sdp, SdpText.tokenEnd(sdp, addressTypeStart, lineEnd), lineEnd);
+		String address = SdpText.substring(sdp, addressStart, SdpText.tokenEnd(sdp, addressStart, lineEnd));
+		if (content != null) {
+			mediaAddress = address;
+		} else {
+			sessionAddress = address;
+		}
+	}
+
+	/**
+	 * "m=audio 36798 RTP/AVPF 103 104 110"
+	 */
+	private void parseMedia() {
+		int mediaStart = lineStart + 2;
+		int mediaEnd = SdpText.tokenEnd(sdp, mediaStart, lineEnd);
+		int portStart = SdpText.skipSpaces(sdp, mediaEnd, lineEnd);
+		int portEnd = SdpText.tokenEnd(sdp, portStart, lineEnd);
+		// "<port>/<number of ports>"
+		int slash = SdpText.indexOf(sdp, '/', portStart, portEnd);
+		int protocolStart = SdpText.skipSpaces(sdp, portEnd, lineEnd);
+		if (mediaEnd == mediaStart || portEnd == portStart || protocolStart == lineEnd) {
+			throw failure(ConversionException.Code.MALFORMED_MEDIA, "Malformed media line");
+		}
+		String mediaType = SdpText.substring(sdp, mediaStart, mediaEnd);
+
+		content = confined(new ContentPacketExtension());
+		// Only "IN" connections are accepted, see parseConnection().
+		content.setCreator(ContentPacketExtension.CreatorEnum.initiator);
+		content.setName(mediaType);
+
+		rtpExt = confined(new RtpDescriptionPacketExtension());
+		rtpExt.setMedia(mediaType);
+		int protocolEnd = SdpText.tokenEnd(sdp, protocolStart, lineEnd);
+		rtpExt.setProfile(SdpText.substring(sdp, protocolStart, protocolEnd));
+		content.addChildExtension(rtpExt);
+
+		iceUdpExt = confined(new IceUdpTransportPacketExtension());
+		mediaPort = parseInt(portStart, slash < 0 ? portEnd : slash);
+	}
+
+	/**
+	 * Dispatches a media level "a=" line on its attribute name.
+	 */
+	private void parseMediaAttribute() {
+		int nameStart = lineStart + 2;
+		int colon = SdpText.indexOf(sdp, ':', nameStart, lineEnd);
+		int nameEnd = colon < 0 ? lineEnd : colon;
+		int valueStart = colon < 0 ? lineEnd : colon + 1;
+
+		if (SdpText.regionEquals(sdp, nameStart, nameEnd, "candidate")) {
+			// TODO: What about TCP?
+			iceUdpExt.addCandidate(IceCandidateParser.parse(sdp, valueStart, lineEnd,
+					confined(new CandidatePacketExtension())));
+		} else if (SdpText.regionEquals(sdp, nameStart, nameEnd, "rtpmap")) {
+			parseRtpMap(valueStart);
+		} else if (SdpText.regionEquals(sdp, nameStart, nameEnd, "ssrc")) {
+			parseSsrc(valueStart);
+		} else if (SdpText.regionEquals(sdp, nameStart, nameEnd, "crypto")) {
+			parseCrypto(valueStart);
+		} else if (SdpText.regionEquals(sdp, nameStart, nameEnd, "ice-ufrag")) {
+			iceUdpExt.setUfrag(SdpText.substring(sdp, valueStart, lineEnd));
+		} else if (SdpText.regionEquals(sdp, nameStart, nameEnd, "ice-pwd")) {
+			iceUdpExt.setPassword(SdpText.substring(sdp, valueStart, lineEnd));
+		} else if (SdpText.regionEquals(sdp, nameStart, nameEnd, "rtcp-mux")) {
+			rtcpMux = true;
+		}
+		// TODO: DTLS-SRTP (fingerprint).
+	}
+
+	/**
+	 * "a=rtpmap:111 opus/48000/2"
+	 */
+	private void parseRtpMap(final int valueStart) {
+		RtpMap rtpMap = RtpMapCache.SHARED.get(SdpText.substring(sdp, valueStart, lineEnd));
+		rtpExt.addChildExtension(rtpMap.newPayloadType(true));
+	}
+
+	/**
+	 * "a=crypto:0 AES_CM_128_HMAC_SHA1_32 inline:keNcG3HezSNID7LmfDa9J4lfdUL8W1F7TNJKcbuy"
+	 */
+	private void parseCrypto(final int valueStart) {
+		int tagEnd = SdpText.tokenEnd(sdp, valueStart, lineEnd);
+		int suiteStart = SdpText.skipSpaces(sdp, tagEnd, lineEnd);
+		int suiteEnd = SdpText.tokenEnd(sdp, suiteStart, lineEnd);
+		int keyParamsStart = SdpText.skipSpaces(sdp, suiteEnd, lineEnd);
+		int keyParamsEnd = SdpText.tokenEnd(sdp, keyParamsStart, lineEnd);
+		CryptoPacketExtension cryptoExt = confined(new CryptoPacketExtension());
+		cryptoExt.setTag(SdpText.substring(sdp, valueStart, tagEnd));
+		cryptoExt.setCryptoSuite(SdpText.substring(sdp, suiteStart, suiteEnd));
+		cryptoExt.setKeyParams(SdpText.substring(sdp, keyParamsStart, keyParamsEnd));
+		if (encryptionExt == null) {
+			encryptionExt = confined(new EncryptionPacketExtension());
+			encryptionExt.setRequired(true);
+		}
+		encryptionExt.addChildExtension(cryptoExt);
+	}
+
+	/**
+	 * "a=ssrc:2570980487 cname:hsWuSQJxx7przmb8"
+	 */
+	private void parseSsrc(final int valueStart) {
+		int ssrcEnd = SdpText.tokenEnd(sdp, valueStart, lineEnd);
+		int attrStart = SdpText.skipSpaces(sdp, ssrcEnd, lineEnd);
+		int attrEnd = SdpText.tokenEnd(sdp, attrStart, lineEnd);
+		int colon = SdpText.indexOf(sdp, ':', attrStart, attrEnd);
+		if (colon < 0) {
+			throw failure(ConversionException.Code.MALFORMED_ATTRIBUTE, "Malformed ssrc");
+		}
+		String ssrc = SdpText.substring(sdp, valueStart, ssrcEnd);
+		StreamPacketExtension streamExt = streams.get(ssrc);
+		if (streamExt == null) {
+			streamExt = confined(new StreamPacketExtension());
+			SsrcPacketExtension ssrcExt = confined(new SsrcPacketExtension());
+			ssrcExt.setText(ssrc);
+			streamExt.addChildExtension(ssrcExt);
+			streams.put(ssrc, streamExt);
+		}
+		int valueEnd = SdpText.indexOf(sdp, ':', colon + 1, attrEnd);
+		streamExt.setAttribute(SdpText.substring(sdp, attrStart, colon),
+				SdpText.substring(sdp, colon + 1, valueEnd < 0 ? attrEnd : valueEnd));
+	}
+
+	/**
+	 * Adds the media section scanned so far, if any, to the result, in the same layout
+	 * {@link SdpToJingle#jingleFromSdp(net.sourceforge.jsdp.SessionDescription)} produces.
+	 */
+	private void finishMediaSection(final JingleIQ result) {
+		if (content == null) {
+			return;
+		}
+		String address = mediaAddress != null ? mediaAddress : sessionAddress;
+		if (address == null) {
+			throw new ConversionException(ConversionException.Code.MISSING_CONNECTION, null,
+					"Media '" + content.getName() + "' has no connection line");
+		}
+
+		// <encryption><crypto /><crypto /></encryption>
+		if (encryptionExt != null) {
+			rtpExt.addChildExtension(encryptionExt);
+		}
+		// <rtcp-mux />
+		if (rtcpMux) {
+			rtpExt.addChildExtension(confined(new RtcpMuxExtension()));
+		}
+		// <streams><stream><ssrc>
+		if (!streams.isEmpty()) {
+			StreamsPacketExtension streamsExt = confined(new StreamsPacketExtension());
+			for (StreamPacketExtension streamExt : streams.values()) {
+				streamsExt.addChildExtension(streamExt);
+			}
+			rtpExt.addChildExtension(streamsExt);
+		}
+
+		RawUdpTransportPacketExtension rawUdpExt = confined(new RawUdpTransportPacketExtension());
+		CandidatePacketExtension candidateExt = confined(new CandidatePacketExtension());
+		candidateExt.setIP(address);
+		candidateExt.setPort(mediaPort);
+		candidateExt.setGeneration(0);
+		rawUdpExt.addChildExtension(candidateExt);
+		content.addChildExtension(rawUdpExt);
+
+		content.addChildExtension(iceUdpExt);
+		result.addContent(content);
+		if (cache != null) {
+			cache.store(sdp, sectionStart, sectionEnd, sessionAddress, content);
+		}
+
+		resetMediaSection();
+	}
+
+	/**
+	 * Confines an extension to the converting thread while the stanza is built, see {@link #tokenize}.
+	 *
+	 * @param extension T - A new extension.
+	 * @return T - The same extension.
+	 */
+	private static <T extends AbstractPacketExtension> T confined(final T extension) {
+		extension.setThreadConfined(true);
+		return extension;
+	}
+
+	private void resetMediaSection() {
+		content = null;
+		rtpExt = null;
+		iceUdpExt = null;
+		encryptionExt = null;
+		rtcpMux = false;
+		mediaAddress = null;
+		mediaPort = -1;
+		streams.clear();
+	}
+
+	private int parseInt(final int from, final int to) {
+		long value = parseLong(from, to);
+		if (value > Integer.MAX_VALUE) {
+			throw malformedNumber(from, to);
+		}
+		return (int) value;
+	}
+
+	private long parseLong(final int from, final int to) {
+		long value = SdpText.parseLong(sdp, from, to);
+		if (value < 0) {
+			throw malformedNumber(from, to);
+		}
+		return value;
+	}
+
+	/**
+	 * Creates the exception reporting a problem with the current line.
+	 */
+	private ConversionException failure(final ConversionException.Code code, final String message) {
+		String line = SdpText.substring(sdp, lineStart, lineEnd);
+		return new ConversionException(code, line, message + " '" + line + "'");
+	}
+
+	private ConversionException malformedNumber(final int from, final int to) {
+		return failure(ConversionException.Code.MALFORMED_NUMBER,
+				"Malformed number '" + sdp.subSequence(from, to) + "' in line");
+	}
+}
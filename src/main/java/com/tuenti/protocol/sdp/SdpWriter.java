@@ -0,0 +1,261 @@
+package com.tuenti.protocol.sdp;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import org.jivesoftware.smack.packet.PacketExtension;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the SDP text for a Jingle stanza straight into an {@link Appendable}, without building a jsdp
+ * {@link net.sourceforge.jsdp.SessionDescription} first. The lines match the ones produced by
+ * {@link SdpToJingle#sdpFromJingle(JingleIQ)}, including an "a=ssrc" line for every attribute of every stream, except
+ * that:
+ * <ul>
+ * <li>the "m=" line carries the port of the raw UDP candidate instead of the 123456789 placeholder;</li>
+ * <li>the "a=ice-ufrag" and "a=ice-pwd" lines are left out when the transport has no user fragment or password,
+ * instead of being written without a value.</li>
+ * </ul>
+ *
+ * The slots the children of each content are sorted into are reused from one content to the next, so a writer must
+ * not be shared between threads. It can be reused for consecutive conversions.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+class SdpWriter {
+	private static final String EOL = "\r\n";
+
+	/**
+	 * Provides the origin host name and session version.
+	 */
+	private final SessionDescriptionFactory sessionFactory;
+
+	/**
+	 * Whether the candidate lines are kept in the candidates and reused, see
+	 * {@link SdpToJingle#memoizedIceCandidateLineFromJingle(CandidatePacketExtension, boolean)}.
+	 */
+	private final boolean memoizeCandidateLines;
+
+	/**
+	 * Children of the content being written on the calling thread.
+	 */
+	private final ContentChildren children = new ContentChildren();
+
+	/**
+	 * Writes a content into a buffer of its own, for parallel writing.
+	 */
+	private final ParallelConversion.ItemConverter<ContentPacketExtension, StringBuilder, IOException> contentWriter
+			= new ParallelConversion.ItemConverter<ContentPacketExtension, StringBuilder, IOException>() {
+		@Override
+		public StringBuilder convert(final ContentPacketExtension content) throws IOException {
+			StringBuilder section = new StringBuilder(2048);
+			writeContent(content, new ContentChildren(), section);
+			return section;
+		}
+	};
+
+	/**
+	 * @param sessionFactory SessionDescriptionFactory - Provides the origin host name and session version.
+	 */
+	SdpWriter(final SessionDescriptionFactory sessionFactory) {
+		this(sessionFactory, false);
+	}
+
+	/**
+	 * @param sessionFactory SessionDescriptionFactory - Provides the origin host name and session version.
+	 * @param memoizeCandidateLines boolean - Whether to keep the candidate lines in the candidates and reuse them.
+	 */
+	SdpWriter(final SessionDescriptionFactory sessionFactory, final boolean memoizeCandidateLines) {
+		this.sessionFactory = sessionFactory;
+		this.memoizeCandidateLines = memoizeCandidateLines;
+	}
+
+	/**
+	 * Writes the SDP for a Jingle stanza.
+	 *
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @param out Appendable - Where to write the SDP text.
+	 * @throws IOException When <tt>out</tt> fails.
+	 * @throws ConversionException When a content has no RTP description, payload types or raw UDP candidate,
+	 *				or a candidate has no type.
+	 */
+	void write(final JingleIQ jingle, final Appendable out) throws IOException {
+		write(jingle, out, null);
+	}
+
+	/**
+	 * Writes the SDP for a Jingle stanza, writing the media sections in parallel when there are many of them. Each
+	 * media section is then written into its own buffer, and the buffers are copied to <tt>out</tt> in order.
+	 *
+	 * @param jingle JingleIQ - The Jingle stanza to convert.
+	 * @param out Appendable - Where to write the SDP text.
+	 * @param parallel ParallelConversion - How to write the media sections in parallel, null to write them on the
+	 *				calling thread.
+	 * @throws IOException When <tt>out</tt> fails.
+	 * @throws ConversionException When a content has no RTP description, payload types or raw UDP candidate,
+	 *				or a candidate has no type.
+	 */
+	void write(final JingleIQ jingle, final Appendable out, final ParallelConversion parallel) throws IOException {
+		List<ContentPacketExtension> contents = jingle.getContentList();
+
+		// "v=0", "o=...", "s=-", "t=0 0"
+		long ntpTime = sessionFactory.getNtpTime();
+		out.append("v=0").append(EOL);
+		out.append("o=").append(SdpToJingle.ORIGIN_USER_NAME).append(' ');
+		appendNumber(out, Long.parseLong(jingle.getSID()));
+		out.append(' ');
+		appendNumber(out, ntpTime);
+		out.append(" IN IP4 ").append(sessionFactory.getHostName()).append(EOL);
+		out.append("s=-").append(EOL);
+		out.append("t=0 0").append(EOL);
+
+		// "a=group:BUNDLE audio video"
+		out.append("a=group:BUNDLE");
+		for (ContentPacketExtension content : contents) {
+			out.append(' ').append(content.getName());
+		}
+		out.append(EOL);
+
+		if (parallel == null || contents.size() < parallel.getThreshold()) {
+			for (ContentPacketExtension content : contents) {
+				writeContent(content, children, out);
+			}
+			return;
+		}
+		for (StringBuilder section : parallel.convert(contents, contentWriter)) {
+			out.append(section);
+		}
+	}
+
+	/**
+	 * @return SessionDescriptionFactory - Provides the origin host name and session version.
+	 */
+	SessionDescriptionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	/**
+	 * @return boolean - Whether the candidate lines are kept in the candidates and reused.
+	 */
+	boolean isMemoizingCandidateLines() {
+		return memoizeCandidateLines;
+	}
+
+	/**
+	 * Writes the media section of one content, sorting its children into <tt>children</tt>.
+	 */
+	private void writeContent(final ContentPacketExtension content, final ContentChildren children,
+			final Appendable out) throws IOException {
+		String contentType = content.getName();
+		children.read(content);
+		RtpDescriptionPacketExtension descriptionExt = children.description;
+		if (descriptionExt == null) {
+			throw new ConversionException(ConversionException.Code.MISSING_RTP_DESCRIPTION, null,
+					"No RTP description for content '" + contentType + "'");
+		}
+		List<PayloadTypePacketExtension> payloadExts = descriptionExt.getPayloadTypes();
+		if (payloadExts.isEmpty()) {
+			throw new ConversionException(ConversionException.Code.MISSING_MEDIA_FORMAT, null,
+					"No media format for content '" + contentType + "'");
+		}
+		CandidatePacketExtension candidateExt = children.getRawUdpCandidate();
+		if (candidateExt == null) {
+			throw new ConversionException(ConversionException.Code.MISSING_RAW_UDP_CANDIDATE, null,
+					"No raw UDP candidate for content '" + contentType + "'");
+		}
+		String ip = candidateExt.getIP();
+		int port = candidateExt.getPort();
+
+		// "m=audio 36798 RTP/AVPF 103 104 110 107 9 102 108 0 8 106 105 13 127 126"
+		out.append("m=").append(contentType).append(' ');
+		appendNumber(out, port);
+		out.append(' ').append(descriptionExt.getProfile());
+		for (PayloadTypePacketExtension payloadExt : payloadExts) {
+			out.append(' ');
+			appendNumber(out, payloadExt.getID());
+		}
+		out.append(EOL);
+
+		// "c=IN IP4 172.22.76.221"
+		out.append("c=IN IP4 ").append(ip).append(EOL);
+
+		// "a=rtcp:36798 IN IP4 172.22.76.221"
+		out.append("a=rtcp:");
+		appendNumber(out, port);
+		out.append(" IN IP4 ").append(ip).append(EOL);
+
+		for (IceUdpTransportPacketExtension iceUdpExt : children.iceUdps) {
+			// "a=ice-ufrag:YuWMyUbmK/CX6awo", "a=ice-pwd:DpueNNn6/r6TTRFMqNWw0v/c"
+			String userFragment = iceUdpExt.getUfrag();
+			if (userFragment != null) {
+				out.append("a=ice-ufrag:").append(userFragment).append(EOL);
+			}
+			String password = iceUdpExt.getPassword();
+			if (password != null) {
+				out.append("a=ice-pwd:").append(password).append(EOL);
+			}
+			// "a=candidate:1 2 udp 1 172.22.76.221 47216 typ host generation 0"
+			for (int i = 0, n = iceUdpExt.getCandidateCount(); i < n; i++) {
+				CandidatePacketExtension candidate = iceUdpExt.getCandidate(i);
+				out.append("a=candidate:");
+				if (memoizeCandidateLines) {
+					out.append(SdpToJingle.memoizedIceCandidateValue(candidate));
+				} else {
+					SdpToJingle.iceCandidateLineFromJingle(candidate, true, out);
+				}
+				out.append(EOL);
+			}
+		}
+
+		// "a=sendrecv", "a=mid:audio"
+		out.append("a=sendrecv").append(EOL);
+		out.append("a=mid:").append(contentType).append(EOL);
+
+		// "a=rtpmap:106 CN/32000"
+		for (PayloadTypePacketExtension payloadExt : payloadExts) {
+			out.append("a=rtpmap:");
+			appendNumber(out, payloadExt.getID());
+			out.append(' ').append(payloadExt.getName()).append('/').append(payloadExt.getClockrate()).append(EOL);
+		}
+
+		// "a=crypto:0 AES_CM_128_HMAC_SHA1_32 inline:keNcG3HezSNID7LmfDa9J4lfdUL8W1F7TNJKcbuy"
+		if (children.encryption != null) {
+			for (CryptoPacketExtension cryptoExt : children.encryption.getCryptoList()) {
+				out.append("a=crypto:").append(cryptoExt.getTag())
+						.append(' ').append(cryptoExt.getCryptoSuite())
+						.append(' ').append(cryptoExt.getKeyParams()).append(EOL);
+			}
+		}
+
+		// "a=rtcp-mux"
+		if (children.rtcpMux) {
+			out.append("a=rtcp-mux").append(EOL);
+		}
+
+		// "a=ssrc:2570980487 cname:hsWuSQJxx7przmb8"
+		if (children.streams != null) {
+			for (PacketExtension child : children.streams.getChildExtensions()) {
+				if (!(child instanceof StreamPacketExtension)) {
+					continue;
+				}
+				StreamPacketExtension streamExt = (StreamPacketExtension) child;
+				String ssrc = streamExt.getSsrc().getText();
+				for (String attrName : streamExt.getAttributeNames()) {
+					out.append("a=ssrc:").append(ssrc).append(' ').append(attrName).append(':')
+							.append(streamExt.getAttributeAsString(attrName)).append(EOL);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Appends a number without going through an intermediate String when writing to a {@link StringBuilder}.
+	 */
+	static void appendNumber(final Appendable out, final long value) throws IOException {
+		if (out instanceof StringBuilder) {
+			((StringBuilder) out).append(value);
+		} else {
+			out.append(Long.toString(value));
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.tuenti.protocol.sdp;
+
+import net.sourceforge.jsdp.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Creates the skeleton (version, origin, session name and time) of the SDP built by {@link SdpToJingle}.
+ *
+ * The host name written in the origin is either given at construction or looked up once, the first time it is
+ * needed, and times are read from an {@link NtpClock}. Version, session name and time description are built once
+ * and cloned, so a new skeleton costs a few small allocations and never blocks on DNS.
+ *
+ * Copyright (c) Tuenti Technologies. All rights reserved.
+ */
+public class SessionDescriptionFactory {
+
+	/**
+	 * Source of the NTP timestamps used as origin session version.
+	 */
+	public interface NtpClock {
+		/**
+		 * @return long - Current time, in seconds since the NTP epoch (1900-01-01).
+		 */
+		long getNtpTime();
+	}
+
+	/**
+	 * Seconds between the NTP epoch (1900-01-01) and the Java epoch (1970-01-01).
+	 */
+	private static final long NTP_EPOCH_OFFSET = 2208988800L;
+
+	/**
+	 * Address used when the local host name can't be resolved.
+	 */
+	private static final String FALLBACK_HOST_NAME = "127.0.0.1";
+
+	/**
+	 * {@link NtpClock} with a resolution of one second, based on {@link System#currentTimeMillis()}.
+	 */
+	public static final NtpClock SYSTEM_CLOCK = new NtpClock() {
+		@Override
+		public long getNtpTime() {
+			return System.currentTimeMillis() / 1000 + NTP_EPOCH_OFFSET;
+		}
+	};
+
+	private final NtpClock clock;
+	private final Version version;
+	private final SessionName sessionName;
+	private final TimeDescription timeDescription;
+
+	/**
+	 * Host name written in the origin, null until resolved when it wasn't configured.
+	 */
+	private volatile String hostName;
+
+	/**
+	 * Creates a factory that looks the local host name up the first time it is needed and reads the
+	 * {@link #SYSTEM_CLOCK}.
+	 */
+	public SessionDescriptionFactory() {
+		this(null, SYSTEM_CLOCK);
+	}
+
+	/**
+	 * Creates a factory with a configured host name and clock.
+	 *
+	 * @param hostName String - Host name to write in the origin, or null to look the local host name up once.
+	 * @param clock {@link NtpClock} - Source of the origin session version.
+	 */
+	public SessionDescriptionFactory(final String hostName, final NtpClock clock) {
+		if (clock == null) {
+			throw new IllegalArgumentException("clock can't be null");
+		}
+		this.hostName = hostName;
+		this.clock = clock;
+		try {
+			this.version = Version.parse("v=0");
+		} catch (SDPException e) {
+			// "v=0" is always a valid version line.
+			throw new IllegalStateException(e);
+		}
+		this.sessionName = new SessionName();
+		this.timeDescription = new TimeDescription();
+	}
+
+	/**
+	 * Creates a brand new {@link SessionDescription} object.
+	 *
+	 * @param sid String - The session ID to use, must be numeric.
+	 * @return A new {@link SessionDescription} object.
+	 * @throws SDPException When a new {@link Origin} can't be created.
+	 */
+	public SessionDescription newSessionDescription(final String sid) throws SDPException {
+		long ntpTime = getNtpTime();
+		/**
+		 * Passing in a fake name, all other params are the same as the {@link Origin#Origin}.
+		 */
+		Origin origin = new Origin(SdpToJingle.ORIGIN_USER_NAME, ntpTime, ntpTime, getHostName());
+		origin.setSessionID(Long.parseLong(sid));
+
+		return new SessionDescription((Version) version.clone(), origin, (SessionName) sessionName.clone(),
+				(TimeDescription) timeDescription.clone());
+	}
+
+	/**
+	 * @return long - Current NTP time according to this factory's clock.
+	 */
+	public long getNtpTime() {
+		return clock.getNtpTime();
+	}
+
+	/**
+	 * Returns the host name written in the origin, looking the local host name up if this is the first call and
+	 * none was configured.
+	 *
+	 * @return String - The origin host name.
+	 */
+	public String getHostName() {
+		String result = hostName;
+		if (result == null) {
+			synchronized (this) {
+				result = hostName;
+				if (result == null) {
+					try {
+						result = InetAddress.getLocalHost().getHostName();
+					} catch (UnknownHostException e) {
+						result = FALLBACK_HOST_NAME;
+					}
+					hostName = result;
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions;
+
+import java.util.*;
+
+import org.jivesoftware.smack.packet.*;
+
+/**
+ * An <tt>AbstractPacketExtension</tt> for elements that normally have no
+ * child elements, such as candidates, parameters or crypto lines.
+ * <p>
+ * A leaf without children returns the shared empty list from
+ * {@link #getChildExtensions()}, and its child lookups return at once,
+ * without locking a list or going through the index by class of the
+ * children. A child element found in a leaf while parsing is still added,
+ * so that no data is lost, to a plain overflow list sized for the one or two
+ * children a malformed stanza may have rather than an indexed child list.
+ */
+public abstract class AbstractLeafPacketExtension
+    extends AbstractPacketExtension
+{
+    /**
+     * Creates an {@link AbstractLeafPacketExtension} instance for the
+     * specified <tt>namespace</tt> and <tt>elementName</tt>.
+     *
+     * @param namespace the XML namespace for this element.
+     * @param elementName the name of the element
+     */
+    protected AbstractLeafPacketExtension(String namespace, String elementName)
+    {
+        super(namespace, elementName);
+    }
+
+    /**
+     * Creates the overflow list that the children found while parsing are
+     * kept in: a list without an index, since a leaf has too few children to
+     * index them.
+     *
+     * @param capacity the number of children to be copied to the list, or
+     * <tt>0</tt> if it is created for one added child.
+     *
+     * @return a new empty list for the children of this leaf.
+     */
+    @Override
+    List<PacketExtension> newChildExtensionList(int capacity)
+    {
+        return new ChildList<PacketExtension>(this, Math.max(capacity, 1));
+    }
+
+    /**
+     * Returns the first child of this leaf that matches <tt>type</tt>,
+     * scanning the children found while parsing, if any.
+     *
+     * @param <T> the specific type of <tt>PacketExtension</tt> to be returned
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     *
+     * @return the first child that matches <tt>type</tt> or <tt>null</tt>.
+     */
+    @Override
+    public <T extends PacketExtension> T getFirstChildOfType(Class<T> type)
+    {
+        List<? extends PacketExtension> childExtensions = getChildExtensions();
+
+        if (childExtensions.isEmpty())
+            return null;
+        if (isLockFree())
+            return firstOfType(childExtensions, type);
+        synchronized (childExtensions)
+        {
+            return firstOfType(childExtensions, type);
+        }
+    }
+
+    /**
+     * Returns the children of this leaf that match <tt>type</tt>, scanning
+     * the children found while parsing, if any.
+     *
+     * @param <T> the specific <tt>PacketExtension</tt> type of child extensions
+     * to be returned
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     *
+     * @return an unmodifiable, usually empty, list of the children that match
+     * <tt>type</tt>.
+     */
+    @Override
+    public <T extends PacketExtension> List<T> getChildExtensionsOfType(
+            Class<T> type)
+    {
+        List<? extends PacketExtension> childExtensions = getChildExtensions();
+
+        if (childExtensions.isEmpty())
+            return Collections.emptyList();
+        if (isLockFree())
+            return allOfType(childExtensions, type);
+        synchronized (childExtensions)
+        {
+            return allOfType(childExtensions, type);
+        }
+    }
+
+    /**
+     * Returns the first of <tt>childExtensions</tt> that matches
+     * <tt>type</tt>.
+     *
+     * @param <T> the specific type of <tt>PacketExtension</tt> to be returned
+     * @param childExtensions the children of this leaf.
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     *
+     * @return the first child that matches <tt>type</tt> or <tt>null</tt>.
+     */
+    private static <T extends PacketExtension> T firstOfType(
+            List<? extends PacketExtension> childExtensions,
+            Class<T> type)
+    {
+        for (PacketExtension extension : childExtensions)
+        {
+            if (type.isInstance(extension))
+                return type.cast(extension);
+        }
+        return null;
+    }
+
+    /**
+     * Returns those of <tt>childExtensions</tt> that match <tt>type</tt>.
+     *
+     * @param <T> the specific type of <tt>PacketExtension</tt> to be returned
+     * @param childExtensions the children of this leaf.
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     *
+     * @return an unmodifiable, possibly empty, list of the children that
+     * match <tt>type</tt>.
+     */
+    private static <T extends PacketExtension> List<T> allOfType(
+            List<? extends PacketExtension> childExtensions,
+            Class<T> type)
+    {
+        List<T> result = null;
+
+        for (PacketExtension extension : childExtensions)
+        {
+            if (type.isInstance(extension))
+            {
+                if (result == null)
+                    result = new ArrayList<T>(childExtensions.size());
+                result.add(type.cast(extension));
+            }
+        }
+        return (result == null)
+            ? Collections.<T>emptyList()
+            : Collections.unmodifiableList(result);
+    }
+}
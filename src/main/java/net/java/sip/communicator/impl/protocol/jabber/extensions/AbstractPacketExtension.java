@@ -8,6 +8,7 @@ package net.java.sip.communicator.impl.protocol.jabber.extensions;
 
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import org.jivesoftware.smack.packet.*;
 
@@ -38,10 +39,38 @@ public abstract class AbstractPacketExtension
     private final String elementName;
 
     /**
-     * A map of all attributes that this extension is currently using.
+     * The attribute arrays of extensions that have no attributes yet.
      */
-    protected final Map<String, String> attributes
-                                    = new LinkedHashMap<String, String>();
+    private static final String[] NO_ATTRIBUTES = new String[0];
+
+    /**
+     * The number of attribute slots allocated for the first attribute of an
+     * extension.
+     */
+    private static final int INITIAL_ATTRIBUTE_CAPACITY = 4;
+
+    /**
+     * The names of the attributes that this extension is currently using, in
+     * the order they were first set. Only the first
+     * <tt>attributeCount</tt> slots are in use.
+     * <p>
+     * Extensions have a handful of attributes, so two parallel arrays searched
+     * linearly take a fraction of the memory of a map and its entries, and
+     * are as fast to search. Access to the attributes is synchronized on the
+     * extension, unless it is frozen or thread confined.
+     */
+    private String[] attributeNames = NO_ATTRIBUTES;
+
+    /**
+     * The values of the attributes that this extension is currently using,
+     * at the same indexes as their names in <tt>attributeNames</tt>.
+     */
+    private String[] attributeValues = NO_ATTRIBUTES;
+
+    /**
+     * The number of attributes that this extension is currently using.
+     */
+    private int attributeCount;
 
     /**
      * The text content of this packet extension, if any.
@@ -49,10 +78,74 @@ public abstract class AbstractPacketExtension
     private String textContent;
 
     /**
-     * A list of extensions registered with this element.
+     * A list of extensions registered with this element, or <tt>null</tt>
+     * until the first one is added. Most elements of a Jingle stanza are
+     * leaves, so the list is only allocated for the ones that have children.
+     * It is a {@link ChildExtensionList}, indexed by class, unless
+     * {@link #newChildExtensionList(int)} creates another kind of list.
+     */
+    private List<PacketExtension> childExtensions;
+
+    /**
+     * Whether this extension and all its descendants are immutable. See
+     * {@link #freeze()}.
+     */
+    private volatile boolean frozen;
+
+    /**
+     * Whether this extension is confined to the thread that builds it and
+     * accessed without locking. See {@link #setThreadConfined(boolean)}.
+     */
+    private volatile boolean confined;
+
+    /**
+     * The parent of the extensions that have been added to several
+     * extensions, whose modifications can't be told to all of them.
+     */
+    private static final AbstractPacketExtension SHARED
+        = new AbstractPacketExtension(null, "shared")
+        {
+        };
+
+    /**
+     * Updates {@link #parent}.
+     */
+    private static final AtomicReferenceFieldUpdater
+            <AbstractPacketExtension, AbstractPacketExtension> PARENT
+        = AtomicReferenceFieldUpdater.newUpdater(
+                AbstractPacketExtension.class,
+                AbstractPacketExtension.class,
+                "parent");
+
+    /**
+     * Updates {@link #structureVersion}.
+     */
+    private static final AtomicIntegerFieldUpdater<AbstractPacketExtension>
+        STRUCTURE_VERSION
+            = AtomicIntegerFieldUpdater.newUpdater(
+                    AbstractPacketExtension.class,
+                    "structureVersion");
+
+    /**
+     * The extension this extension was added to as a child, which is told
+     * about its modifications, {@link #SHARED} if it was added to several
+     * ones, or <tt>null</tt> if it hasn't been added to any.
+     */
+    private volatile AbstractPacketExtension parent;
+
+    /**
+     * The number of modifications of this extension and its descendants, as
+     * far as they have been told to it.
      */
-    private List<PacketExtension> childExtensions
-                                = new ArrayList<PacketExtension>();
+    private volatile int structureVersion;
+
+    /**
+     * The structural hash code of this extension in the low 32 bits, and the
+     * {@link #structureVersion} it was computed for, plus one, in the high 32
+     * bits, or <tt>0</tt> if none is cached. See
+     * {@link #structuralHashCode()}.
+     */
+    private volatile long structuralHash;
 
     /**
      * Creates an {@link AbstractPacketExtension} instance for the specified
@@ -84,7 +177,9 @@ public abstract class AbstractPacketExtension
      */
     public void setNamespace(String namespace)
     {
+        checkNotFrozen();
         this.namespace = namespace;
+        structureChanged();
     }
 
     /**
@@ -114,20 +209,13 @@ public abstract class AbstractPacketExtension
             bldr.append("xmlns='").append(getNamespace()).append("'");
 
         //add the rest of the attributes if any
-        for(Map.Entry<String, String> entry : attributes.entrySet())
-        {
-            bldr.append(" ")
-                    .append(entry.getKey())
-                        .append("='")
-                            .append(entry.getValue())
-                                .append("'");
-        }
+        appendAttributes(bldr);
 
         //add child elements if any
         List<? extends PacketExtension> childElements = getChildExtensions();
         String text = getText();
 
-        if (childElements == null)
+        if ((childElements == null) || childElements.isEmpty())
         {
             if ((text == null) || (text.length() == 0))
             {
@@ -137,6 +225,11 @@ public abstract class AbstractPacketExtension
             else
                 bldr.append('>');
         }
+        else if (isLockFree())
+        {
+            bldr.append(">");
+            appendChildren(bldr, childElements);
+        }
         else
         {
             synchronized(childElements)
@@ -150,8 +243,7 @@ public abstract class AbstractPacketExtension
                 else
                 {
                     bldr.append(">");
-                    for(PacketExtension packExt : childElements)
-                        bldr.append(packExt.toXML());
+                    appendChildren(bldr, childElements);
                 }
             }
         }
@@ -166,279 +258,1476 @@ public abstract class AbstractPacketExtension
     }
 
     /**
-     * Returns all sub-elements for this <tt>AbstractPacketExtension</tt> or
-     * <tt>null</tt> if there aren't any.
-     * <p>
-     * Overriding extensions may need to override this method if they would like
-     * to have anything more elaborate than just a list of extensions.
+     * Appends the XML representation of child elements.
      *
-     * @return the {@link List} of elements that this packet extension contains.
+     * @param bldr the builder of the XML representation of this extension.
+     * @param childElements the children of this extension.
      */
-    public List<? extends PacketExtension> getChildExtensions()
+    private static void appendChildren(
+            StringBuilder bldr,
+            List<? extends PacketExtension> childElements)
     {
-        return childExtensions;
+        if (childElements instanceof RandomAccess)
+        {
+            //no iterator to allocate for every element written.
+            for(int i = 0, n = childElements.size(); i < n; i++)
+                bldr.append(childElements.get(i).toXML());
+        }
+        else
+        {
+            for(PacketExtension packExt : childElements)
+                bldr.append(packExt.toXML());
+        }
     }
 
     /**
-     * Adds the specified <tt>childExtension</tt> to the list of extensions
-     * registered with this packet.
-     * <p/>
-     * Overriding extensions may need to override this method if they would like
-     * to have anything more elaborate than just a list of extensions (e.g.
-     * casting separate instances to more specific.
+     * Appends the attributes of this extension to its XML representation,
+     * each one preceded by a space.
+     * <p>
+     * Extensions that keep some of their attributes in fields of their own
+     * override this method to append them as well.
      *
-     * @param childExtension the extension we'd like to add here.
+     * @param bldr the builder of the XML representation of this extension.
      */
-    public void addChildExtension(PacketExtension childExtension)
+    protected void appendAttributes(StringBuilder bldr)
     {
-        childExtensions.add(childExtension);
+        if (isLockFree())
+        {
+            appendAttributeArrays(bldr);
+            return;
+        }
+        synchronized(this)
+        {
+            appendAttributeArrays(bldr);
+        }
     }
 
     /**
-     * Sets the value of the attribute named <tt>name</tt> to <tt>value</tt>.
+     * Appends the attributes kept in <tt>attributeNames</tt> and
+     * <tt>attributeValues</tt>. Must be called while holding the lock of this
+     * extension unless it is lock free.
      *
-     * @param name the name of the attribute that we are setting.
-     * @param value an {@link Object} whose <tt>toString()</tt> method returns
-     * the XML value of the attribute we are setting or <tt>null</tt> if we'd
-     * like to remove the attribute with the specified <tt>name</tt>.
+     * @param bldr the builder of the XML representation of this extension.
      */
-    public void setAttribute(String name, Object value)
+    private void appendAttributeArrays(StringBuilder bldr)
     {
-        synchronized(attributes)
+        for(int i = 0; i < attributeCount; i++)
         {
-            if(value != null)
-                this.attributes.put(name, value.toString());
-            else
-                this.attributes.remove(name);
+            bldr.append(" ")
+                    .append(attributeNames[i])
+                        .append("='")
+                            .append(attributeValues[i])
+                                .append("'");
         }
     }
 
     /**
-     * Removes the attribute with the specified <tt>name</tt> from the list of
-     * attributes registered with this packet extension.
-     *
-     * @param name the name of the attribute that we are removing.
+     * Makes this extension and all its descendants immutable. A frozen tree
+     * can be shared between many stanzas and read by any number of threads
+     * without locking: its readers don't take the locks that guard the
+     * attributes and children of mutable extensions.
+     * <p>
+     * Freezing can't be undone. Methods that would modify a frozen extension
+     * throw an <tt>IllegalStateException</tt>, and the lists they return are
+     * read-only. To modify a shared extension, replace it in its parent with
+     * a {@link #mutableCopy()}, which keeps sharing the frozen children, and
+     * do the same with the parent if it is frozen too.
+     * <p>
+     * Extensions that keep children outside of the list of
+     * <tt>AbstractPacketExtension</tt> override this method to freeze them
+     * too, before calling it.
      */
-    public void removeAttribute(String name)
+    public void freeze()
     {
-        synchronized(attributes)
+        if (frozen)
+            return;
+
+        List<? extends PacketExtension> childElements = getChildExtensions();
+
+        if (childElements != null)
+        {
+            for (PacketExtension childElement : childElements)
+            {
+                if (childElement instanceof AbstractPacketExtension)
+                    ((AbstractPacketExtension) childElement).freeze();
+            }
+        }
+        synchronized(this)
         {
-            attributes.remove(name);
+            if (attributeCount == 0)
+            {
+                attributeNames = NO_ATTRIBUTES;
+                attributeValues = NO_ATTRIBUTES;
+            }
+            else if (attributeCount < attributeNames.length)
+            {
+                attributeNames = Arrays.copyOf(attributeNames, attributeCount);
+                attributeValues
+                    = Arrays.copyOf(attributeValues, attributeCount);
+            }
+            if (childExtensions instanceof ChildExtensionList)
+            {
+                synchronized(childExtensions)
+                {
+                    ((ChildExtensionList) childExtensions).freeze();
+                }
+            }
+            else if (childExtensions != null)
+            {
+                childExtensions
+                    = Collections.unmodifiableList(childExtensions);
+            }
+            frozen = true;
+            confined = false;
         }
     }
 
     /**
-     * Returns the attribute with the specified <tt>name</tt> from the list of
-     * attributes registered with this packet extension.
+     * Determines whether this extension has been frozen with
+     * {@link #freeze()}.
      *
-     * @param attribute the name of the attribute that we'd like to retrieve.
+     * @return <tt>true</tt> if this extension is immutable.
+     */
+    public boolean isFrozen()
+    {
+        return frozen;
+    }
+
+    /**
+     * Fails if this extension is frozen. Called by the methods that modify
+     * an extension before they do.
      *
-     * @return the value of the specified <tt>attribute</tt> or <tt>null</tt>
-     * if no such attribute is currently registered with this extension.
+     * @throws IllegalStateException if this extension is frozen.
      */
-    public Object getAttribute(String attribute)
+    protected void checkNotFrozen()
     {
-        synchronized(attributes)
+        if (frozen)
         {
-            return attributes.get(attribute);
+            throw new IllegalStateException(
+                    "<" + getElementName() + "/> is frozen");
         }
     }
 
     /**
-     * Returns the string value of the attribute with the specified
-     * <tt>name</tt>.
-     *
-     * @param attribute the name of the attribute that we'd like to retrieve.
+     * Confines this extension and all its descendants to the current thread,
+     * or publishes them to all threads.
+     * <p>
+     * Extensions lock their attributes and children on every access so that
+     * several threads can use them at once. A stanza that is built and
+     * consumed by one thread doesn't need that: an extension confined to the
+     * thread that builds it reads and modifies its attributes and children
+     * without locking. It must not be accessed by any other thread until it
+     * is published, with {@link #publish()} or {@link #freeze()}, by the
+     * thread it is confined to.
+     * <p>
+     * Frozen extensions are read without locking already, and stay as they
+     * are. Extensions that keep children that {@link #getChildExtensions()}
+     * doesn't return override this method to confine or publish them too.
      *
-     * @return the String value of the specified <tt>attribute</tt> or
-     * <tt>null</tt> if no such attribute is currently registered with this
-     * extension.
+     * @param threadConfined <tt>true</tt> to confine this extension to the
+     * current thread, <tt>false</tt> to publish it.
      */
-    public String getAttributeAsString(String attribute)
+    public void setThreadConfined(boolean threadConfined)
     {
-        synchronized(attributes)
-        {
-            Object attributeVal = attributes.get(attribute);
+        if (frozen)
+            return;
+
+        List<? extends PacketExtension> childElements = getChildExtensions();
 
-            return attributeVal == null ? null : attributeVal.toString();
+        if (childElements != null)
+        {
+            for (PacketExtension childElement : childElements)
+            {
+                if (childElement instanceof AbstractPacketExtension)
+                {
+                    ((AbstractPacketExtension) childElement)
+                        .setThreadConfined(threadConfined);
+                }
+            }
         }
+        // Written last: reading it makes the whole subtree visible.
+        confined = threadConfined;
     }
 
     /**
-     * Returns the <tt>int</tt> value of the attribute with the specified
-     * <tt>name</tt>.
+     * Publishes this extension and all its descendants after building them
+     * confined to the current thread, so that any thread can use them. Same
+     * as <tt>setThreadConfined(false)</tt>.
+     */
+    public void publish()
+    {
+        setThreadConfined(false);
+    }
+
+    /**
+     * Determines whether this extension is confined to the thread that
+     * builds it. See {@link #setThreadConfined(boolean)}.
      *
-     * @param attribute the name of the attribute that we'd like to retrieve.
+     * @return <tt>true</tt> if this extension is thread confined.
+     */
+    public boolean isThreadConfined()
+    {
+        return confined;
+    }
+
+    /**
+     * Determines whether this extension is accessed without locking, because
+     * it is frozen or thread confined.
      *
-     * @return the <tt>int</tt> value of the specified <tt>attribute</tt> or
-     * <tt>-1</tt> if no such attribute is currently registered with this
-     * extension.
+     * @return <tt>true</tt> if this extension doesn't need to be locked.
      */
-    public int getAttributeAsInt(String attribute)
+    protected boolean isLockFree()
     {
-        return getAttributeAsInt(attribute, -1);
+        return frozen || confined;
     }
 
     /**
-     * Returns the <tt>int</tt> value of the attribute with the specified
-     * <tt>name</tt>.
+     * Creates a mutable copy of this extension, with the same namespace,
+     * attributes and text, and the same children. The children are not
+     * copied: the copy shares them with this extension, frozen or not.
      *
-     * @param attribute the name of the attribute that we'd like to retrieve
-     * @param defaultValue the <tt>int</tt> to be returned as the value of the
-     * specified attribute if no such attribute is currently registered with
-     * this extension
-     * @return the <tt>int</tt> value of the specified <tt>attribute</tt> or
-     * <tt>defaultValue</tt> if no such attribute is currently registered with
-     * this extension
+     * @return a mutable copy of this extension.
+     *
+     * @throws UnsupportedOperationException if the class of this extension
+     * doesn't override {@link #newInstance()}.
      */
-    public int getAttributeAsInt(String attribute, int defaultValue)
+    public AbstractPacketExtension mutableCopy()
     {
-        synchronized(attributes)
-        {
-            String value = getAttributeAsString(attribute);
+        AbstractPacketExtension copy = newCopy();
 
-            return (value == null) ? defaultValue : Integer.parseInt(value);
-        }
+        copyAttributesTo(copy);
+        copyChildrenTo(copy, false);
+        return copy;
     }
 
     /**
-     * Tries to parse the value of the specified <tt>attribute</tt> as an
-     * <tt>URI</tt> and returns it.
+     * Creates a deep copy of this extension: a mutable copy of this extension
+     * and of all its descendants, frozen or not. Children that are not
+     * <tt>AbstractPacketExtension</tt>s can't be copied and are shared with
+     * this extension.
+     * <p>
+     * The copy is made field by field, without parsing or reflection, and
+     * its attribute arrays and child lists are allocated with the size they
+     * need.
      *
-     * @param attribute the name of the attribute that we'd like to retrieve.
+     * @return a deep copy of this extension.
      *
-     * @return the <tt>URI</tt> value of the specified <tt>attribute</tt> or
-     * <tt>null</tt> if no such attribute is currently registered with this
-     * extension.
-     * @throws IllegalArgumentException if <tt>attribute</tt> is not a valid {@link
-     * URI}
+     * @throws UnsupportedOperationException if the class of this extension
+     * or of one of its descendants doesn't override {@link #newInstance()}.
      */
-    public URI getAttributeAsURI(String attribute)
-        throws IllegalArgumentException
+    public AbstractPacketExtension deepCopy()
     {
-        synchronized(attributes)
-        {
-            String attributeVal = getAttributeAsString(attribute);
+        AbstractPacketExtension copy = newCopy();
 
-            if (attributeVal == null)
-                return null;
+        copyAttributesTo(copy);
+        copyChildrenTo(copy, true);
+        return copy;
+    }
 
-            try
-            {
-                URI uri = new URI(attributeVal);
+    /**
+     * Returns a deep copy of <tt>extension</tt> if <tt>deep</tt> is
+     * <tt>true</tt> and it can be copied, <tt>extension</tt> otherwise.
+     *
+     * @param <T> the type of <tt>extension</tt>.
+     * @param extension the extension to copy, or <tt>null</tt>.
+     * @param deep whether <tt>extension</tt> has to be copied.
+     *
+     * @return a copy of <tt>extension</tt> or <tt>extension</tt> itself.
+     */
+    protected static <T extends PacketExtension> T copyOf(
+            T extension,
+            boolean deep)
+    {
+        if (!deep || !(extension instanceof AbstractPacketExtension))
+            return extension;
 
-                return uri;
-            }
-            catch (URISyntaxException e)
-            {
-                throw new IllegalArgumentException(e);
-            }
-        }
+        // newInstance() creates an extension of the same class.
+        @SuppressWarnings("unchecked")
+        T copy = (T) ((AbstractPacketExtension) extension).deepCopy();
+
+        return copy;
     }
 
     /**
-     * Gets the names of the attributes which currently have associated values
-     * in this extension.
+     * Creates an empty extension of the same class as this one, for
+     * {@link #mutableCopy()} and {@link #deepCopy()}. Every extension that
+     * can be copied overrides it to call its own constructor, so that copies
+     * don't go through reflection.
      *
-     * @return the names of the attributes which currently have associated
-     * values in this extension
+     * @return a new extension of the same class as this one.
+     *
+     * @throws UnsupportedOperationException always, for the extensions that
+     * don't override it. The copies also fail for the extensions that inherit
+     * it from a parent class, since it creates an instance of that class.
      */
-    public List<String> getAttributeNames()
+    protected AbstractPacketExtension newInstance()
+    {
+        throw new UnsupportedOperationException(
+                getClass().getName() + " doesn't override newInstance()"
+                    + " and cannot be copied");
+    }
+
+    /**
+     * Calls {@link #newInstance()} and checks that it created an extension of
+     * the class of this one. A subclass of an extension that overrides
+     * <tt>newInstance()</tt> inherits it, and would otherwise be copied as an
+     * instance of its parent class.
+     *
+     * @return a new extension of the same class as this one.
+     *
+     * @throws UnsupportedOperationException if the class of this extension
+     * doesn't override {@link #newInstance()}.
+     */
+    private AbstractPacketExtension newCopy()
     {
-        synchronized (attributes)
+        AbstractPacketExtension copy = newInstance();
+
+        if (copy.getClass() != getClass())
         {
-            return new ArrayList<String>(attributes.keySet());
+            throw new UnsupportedOperationException(
+                    getClass().getName() + " doesn't override newInstance()"
+                        + " and cannot be copied");
         }
+        return copy;
     }
 
     /**
-     * Specifies the text content of this extension.
+     * Copies the namespace, the text and the attributes of this extension to
+     * a new copy of it. Extensions that keep some of their attributes in
+     * fields of their own override this method to copy them as well.
      *
-     * @param text the text content of this extension.
+     * @param copy the copy of this extension, which nothing else refers to
+     * yet.
      */
-    public void setText(String text)
+    protected void copyAttributesTo(AbstractPacketExtension copy)
     {
-        this.textContent = text;
+        copy.namespace = namespace;
+        copy.textContent = textContent;
+        if (isLockFree())
+        {
+            copyAttributeArraysTo(copy);
+            return;
+        }
+        synchronized(this)
+        {
+            copyAttributeArraysTo(copy);
+        }
     }
 
     /**
-     * Returns the text content of this extension or <tt>null</tt> if no text
-     * content has been specified so far.
+     * Copies <tt>attributeNames</tt> and <tt>attributeValues</tt> to a new
+     * copy of this extension, replacing any attributes its constructor set.
+     * Must be called while holding the lock of this extension unless it is
+     * lock free.
      *
-     * @return the text content of this extension or <tt>null</tt> if no text
-     * content has been specified so far.
+     * @param copy the copy of this extension.
      */
-    public String getText()
+    private void copyAttributeArraysTo(AbstractPacketExtension copy)
     {
-        return textContent;
+        if (attributeCount == 0)
+        {
+            copy.attributeNames = NO_ATTRIBUTES;
+            copy.attributeValues = NO_ATTRIBUTES;
+        }
+        else
+        {
+            copy.attributeNames = Arrays.copyOf(attributeNames, attributeCount);
+            copy.attributeValues
+                = Arrays.copyOf(attributeValues, attributeCount);
+        }
+        copy.attributeCount = attributeCount;
     }
 
     /**
-     * Returns this packet's first direct child extension that matches the
-     * specified <tt>type</tt>.
-     *
-     * @param <T> the specific type of <tt>PacketExtension</tt> to be returned
+     * Adds the children of this extension, or copies of them, to a new copy
+     * of it. Extensions that keep children that {@link #getChildExtensions()}
+     * doesn't return, or that keep them in lists of their own, override this
+     * method to add them too.
      *
-     * @param type the <tt>Class</tt> of the extension we are looking for.
-     *
-     * @return this packet's first direct child extension that matches specified
-     * <tt>type</tt> or <tt>null</tt> if no such child extension was found.
+     * @param copy the copy of this extension, which nothing else refers to
+     * yet.
+     * @param deep whether the children have to be copied with
+     * {@link #deepCopy()} rather than shared.
      */
-    public <T extends PacketExtension> T getFirstChildOfType(Class<T> type)
+    protected void copyChildrenTo(AbstractPacketExtension copy, boolean deep)
     {
-        List<? extends PacketExtension> childExtensions = getChildExtensions();
+        List<? extends PacketExtension> childElements = getChildExtensions();
 
-        synchronized (childExtensions)
+        if ((childElements == null) || childElements.isEmpty())
+            return;
+        if (isLockFree())
         {
-            for(PacketExtension extension : childExtensions)
-            {
-                if(type.isInstance(extension))
-                {
-                    @SuppressWarnings("unchecked")
-                    T extensionAsType = (T) extension;
-
-                    return extensionAsType;
-                }
-            }
+            copyChildren(childElements, copy, deep);
+            return;
+        }
+        synchronized(childElements)
+        {
+            copyChildren(childElements, copy, deep);
         }
-        return null;
     }
 
     /**
-     * Returns this packet's direct child extensions that match the
-     * specified <tt>type</tt>.
-     *
-     * @param <T> the specific <tt>PacketExtension</tt> type of child extensions
-     * to be returned
-     *
-     * @param type the <tt>Class</tt> of the extension we are looking for.
+     * Adds <tt>childElements</tt>, or copies of them, to a new copy of this
+     * extension. Must be called while holding the lock of
+     * <tt>childElements</tt> unless this extension is lock free.
      *
-     * @return a (possibly empty) list containing all of this packet's direct
-     * child extensions that match the specified <tt>type</tt>
+     * @param childElements the children of this extension.
+     * @param copy the copy of this extension.
+     * @param deep whether the children have to be copied.
      */
-    public <T extends PacketExtension> List<T> getChildExtensionsOfType(
-            Class<T> type)
+    private static void copyChildren(
+            List<? extends PacketExtension> childElements,
+            AbstractPacketExtension copy,
+            boolean deep)
     {
-        List<? extends PacketExtension> childExtensions = getChildExtensions();
-        List<T> result = new ArrayList<T>();
+        if (copy.childExtensions == null)
+            copy.childExtensions
+                = copy.newChildExtensionList(childElements.size());
+        for (PacketExtension childElement : childElements)
+            copy.addChildExtension(copyOf(childElement, deep));
+    }
+
+    /**
+     * Returns all sub-elements for this <tt>AbstractPacketExtension</tt> or
+     * <tt>null</tt> if there aren't any.
+     * <p>
+     * Overriding extensions may need to override this method if they would like
+     * to have anything more elaborate than just a list of extensions.
+     *
+     * @return the {@link List} of elements that this packet extension contains.
+     */
+    public List<? extends PacketExtension> getChildExtensions()
+    {
+        List<PacketExtension> childExtensions = this.childExtensions;
 
         if (childExtensions == null)
-            return result;
+            return Collections.emptyList();
+        if (frozen && (childExtensions instanceof ChildExtensionList))
+            return ((ChildExtensionList) childExtensions).readOnlyView();
+        return childExtensions;
+    }
+
+    /**
+     * Creates the list that the children of this extension are kept in, when
+     * the first one is added or copied. It is a {@link ChildExtensionList},
+     * which indexes them by class. {@link AbstractLeafPacketExtension}
+     * overrides it to keep the children it seldom has in a plain list.
+     *
+     * @param capacity the number of children to be copied to the list, or
+     * <tt>0</tt> if it is created for one added child.
+     *
+     * @return a new empty list for the children of this extension.
+     */
+    List<PacketExtension> newChildExtensionList(int capacity)
+    {
+        return (capacity == 0)
+            ? new ChildExtensionList(this)
+            : new ChildExtensionList(this, capacity);
+    }
+
+    /**
+     * Creates a list for children that an extension keeps apart from those
+     * of {@link #getChildExtensions()}, such as payload types or candidates.
+     * The list tells this extension when it is modified, like the list of
+     * {@link #getChildExtensions()} does, so that its structural hash code
+     * is recomputed.
+     *
+     * @param <E> the type of the children.
+     * @param capacity the number of children the list is created for, or
+     * <tt>0</tt> for the default capacity of an <tt>ArrayList</tt>.
+     *
+     * @return a new empty list for children of this extension.
+     */
+    protected final <E extends PacketExtension> ArrayList<E> newChildList(
+            int capacity)
+    {
+        return (capacity == 0)
+            ? new ChildList<E>(this)
+            : new ChildList<E>(this, capacity);
+    }
+
+    /**
+     * Tells this extension that a child has been set or added: in one of its
+     * lists, or in a field of an extension that keeps a child in a field of
+     * its own, which calls this method after setting it. The child becomes a
+     * child of this extension, and the structural hash code of this
+     * extension and its ancestors is recomputed.
+     *
+     * @param child the child that was set, or <tt>null</tt> if one was
+     * removed.
+     */
+    protected void childChanged(PacketExtension child)
+    {
+        linkChild(child);
+        structureChanged();
+    }
+
+    /**
+     * Makes this extension the parent of <tt>child</tt>, or marks
+     * <tt>child</tt> as shared if it has another parent already. Frozen
+     * children never change and don't need one.
+     *
+     * @param child a child of this extension or <tt>null</tt>.
+     */
+    void linkChild(PacketExtension child)
+    {
+        if (!(child instanceof AbstractPacketExtension))
+            return;
+
+        AbstractPacketExtension extension = (AbstractPacketExtension) child;
+
+        if (extension.frozen)
+            return;
+        while (true)
+        {
+            AbstractPacketExtension parent = extension.parent;
+
+            if ((parent == this) || (parent == SHARED))
+                return;
+            if (PARENT.compareAndSet(
+                    extension,
+                    parent,
+                    (parent == null) ? this : SHARED))
+            {
+                // The former parent won't be told about the modifications
+                // of its child any more, so it stops caching its hash code.
+                if (parent != null)
+                    parent.structureChanged();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tells this extension and its ancestors that the structure of this
+     * extension has changed, so that their cached structural hash codes are
+     * recomputed. Called after the modification.
+     */
+    void structureChanged()
+    {
+        for (AbstractPacketExtension extension = this;
+                (extension != null) && (extension != SHARED);
+                extension = extension.parent)
+        {
+            if (extension.confined)
+                extension.structureVersion++;
+            else
+                STRUCTURE_VERSION.incrementAndGet(extension);
+        }
+    }
 
+    /**
+     * Adds the specified <tt>childExtension</tt> to the list of extensions
+     * registered with this packet.
+     * <p/>
+     * Overriding extensions may need to override this method if they would like
+     * to have anything more elaborate than just a list of extensions (e.g.
+     * casting separate instances to more specific.
+     *
+     * @param childExtension the extension we'd like to add here.
+     */
+    public void addChildExtension(PacketExtension childExtension)
+    {
+        checkNotFrozen();
+        if (childExtensions == null)
+            childExtensions = newChildExtensionList(0);
+        if (confined)
+        {
+            childExtensions.add(childExtension);
+            return;
+        }
         synchronized (childExtensions)
         {
-            for(PacketExtension extension : childExtensions)
+            childExtensions.add(childExtension);
+        }
+    }
+
+    /**
+     * Sets the value of the attribute named <tt>name</tt> to <tt>value</tt>.
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value an {@link Object} whose <tt>toString()</tt> method returns
+     * the XML value of the attribute we are setting or <tt>null</tt> if we'd
+     * like to remove the attribute with the specified <tt>name</tt>.
+     */
+    public void setAttribute(String name, Object value)
+    {
+        checkNotFrozen();
+        if (confined)
+        {
+            updateAttribute(name, value);
+        }
+        else
+        {
+            synchronized(this)
             {
-                if(type.isInstance(extension))
-                {
-                    @SuppressWarnings("unchecked")
-                    T extensionAsType = (T) extension;
+                updateAttribute(name, value);
+            }
+        }
+        attributesChanged();
+    }
 
-                    result.add(extensionAsType);
-                }
+    /**
+     * Removes the attribute with the specified <tt>name</tt> from the list of
+     * attributes registered with this packet extension.
+     *
+     * @param name the name of the attribute that we are removing.
+     */
+    public void removeAttribute(String name)
+    {
+        checkNotFrozen();
+        if (confined)
+        {
+            deleteAttribute(name);
+        }
+        else
+        {
+            synchronized(this)
+            {
+                deleteAttribute(name);
+            }
+        }
+        attributesChanged();
+    }
+
+    /**
+     * Sets or removes an attribute. Must be called while holding the lock of
+     * this extension unless it is thread confined.
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value the value of the attribute, or <tt>null</tt> to remove it.
+     */
+    private void updateAttribute(String name, Object value)
+    {
+        if(value != null)
+            putAttribute(name, value.toString());
+        else
+            deleteAttribute(name);
+    }
+
+    /**
+     * Returns the index of the attribute with the specified <tt>name</tt> in
+     * <tt>attributeNames</tt>. Names are almost always the same constant
+     * strings, so they are compared by reference before <tt>equals</tt>. Must
+     * be called while holding the lock of this extension unless it is lock
+     * free.
+     *
+     * @param name the name of the attribute that we are looking for.
+     *
+     * @return the index of the attribute or <tt>-1</tt> if no such attribute
+     * is currently registered with this extension.
+     */
+    private int indexOfAttribute(String name)
+    {
+        String[] names = attributeNames;
+
+        for(int i = 0; i < attributeCount; i++)
+        {
+            if(names[i] == name)
+                return i;
+        }
+        if(name != null)
+        {
+            for(int i = 0; i < attributeCount; i++)
+            {
+                if(name.equals(names[i]))
+                    return i;
             }
         }
+        return -1;
+    }
+
+    /**
+     * Sets the value of an attribute, keeping its position if it was already
+     * set and appending it otherwise. Must be called while holding the lock
+     * of this extension unless it is thread confined.
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value the value of the attribute.
+     */
+    private void putAttribute(String name, String value)
+    {
+        int index = indexOfAttribute(name);
+
+        if(index >= 0)
+        {
+            attributeValues[index] = value;
+            return;
+        }
+        if(attributeCount == attributeNames.length)
+        {
+            int capacity = (attributeCount == 0)
+                ? INITIAL_ATTRIBUTE_CAPACITY
+                : attributeCount * 2;
+
+            attributeNames = Arrays.copyOf(attributeNames, capacity);
+            attributeValues = Arrays.copyOf(attributeValues, capacity);
+        }
+        attributeNames[attributeCount] = name;
+        attributeValues[attributeCount] = value;
+        attributeCount++;
+    }
+
+    /**
+     * Removes an attribute, keeping the order of the others. Must be called
+     * while holding the lock of this extension unless it is thread confined.
+     *
+     * @param name the name of the attribute that we are removing.
+     */
+    private void deleteAttribute(String name)
+    {
+        int index = indexOfAttribute(name);
+
+        if(index < 0)
+            return;
+
+        int moved = attributeCount - index - 1;
+
+        System.arraycopy(
+                attributeNames, index + 1, attributeNames, index, moved);
+        System.arraycopy(
+                attributeValues, index + 1, attributeValues, index, moved);
+        attributeCount--;
+        attributeNames[attributeCount] = null;
+        attributeValues[attributeCount] = null;
+    }
+
+    /**
+     * Called after an attribute of this extension has been set or removed
+     * through {@link #setAttribute(String, Object)} or
+     * {@link #removeAttribute(String)}, and by the extensions that keep some
+     * of their attributes in fields of their own after they set one. Makes
+     * the structural hash code of this extension and its ancestors be
+     * recomputed. Extensions that cache values derived from their attributes
+     * override it to drop them, and call this method too.
+     */
+    protected void attributesChanged()
+    {
+        structureChanged();
+    }
+
+    /**
+     * Returns the attribute with the specified <tt>name</tt> from the list of
+     * attributes registered with this packet extension.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve.
+     *
+     * @return the value of the specified <tt>attribute</tt> or <tt>null</tt>
+     * if no such attribute is currently registered with this extension.
+     */
+    public Object getAttribute(String attribute)
+    {
+        return getAttributeAsString(attribute);
+    }
+
+    /**
+     * Returns the string value of the attribute with the specified
+     * <tt>name</tt>.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve.
+     *
+     * @return the String value of the specified <tt>attribute</tt> or
+     * <tt>null</tt> if no such attribute is currently registered with this
+     * extension.
+     */
+    public String getAttributeAsString(String attribute)
+    {
+        if (isLockFree())
+            return attributeValue(attribute);
+        synchronized(this)
+        {
+            return attributeValue(attribute);
+        }
+    }
+
+    /**
+     * Returns the value of an attribute kept in <tt>attributeValues</tt>.
+     * Must be called while holding the lock of this extension unless it is
+     * lock free.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve.
+     *
+     * @return the value of the attribute or <tt>null</tt> if no such
+     * attribute is currently registered with this extension.
+     */
+    private String attributeValue(String attribute)
+    {
+        int index = indexOfAttribute(attribute);
+
+        return (index < 0) ? null : attributeValues[index];
+    }
+
+    /**
+     * Returns the <tt>int</tt> value of the attribute with the specified
+     * <tt>name</tt>.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve.
+     *
+     * @return the <tt>int</tt> value of the specified <tt>attribute</tt> or
+     * <tt>-1</tt> if no such attribute is currently registered with this
+     * extension.
+     */
+    public int getAttributeAsInt(String attribute)
+    {
+        return getAttributeAsInt(attribute, -1);
+    }
+
+    /**
+     * Returns the <tt>int</tt> value of the attribute with the specified
+     * <tt>name</tt>.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve
+     * @param defaultValue the <tt>int</tt> to be returned as the value of the
+     * specified attribute if no such attribute is currently registered with
+     * this extension
+     * @return the <tt>int</tt> value of the specified <tt>attribute</tt> or
+     * <tt>defaultValue</tt> if no such attribute is currently registered with
+     * this extension
+     */
+    public int getAttributeAsInt(String attribute, int defaultValue)
+    {
+        String value = getAttributeAsString(attribute);
+
+        return (value == null) ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Tries to parse the value of the specified <tt>attribute</tt> as an
+     * <tt>URI</tt> and returns it.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve.
+     *
+     * @return the <tt>URI</tt> value of the specified <tt>attribute</tt> or
+     * <tt>null</tt> if no such attribute is currently registered with this
+     * extension.
+     * @throws IllegalArgumentException if <tt>attribute</tt> is not a valid {@link
+     * URI}
+     */
+    public URI getAttributeAsURI(String attribute)
+        throws IllegalArgumentException
+    {
+        String attributeVal = getAttributeAsString(attribute);
+
+        if (attributeVal == null)
+            return null;
+
+        try
+        {
+            URI uri = new URI(attributeVal);
+
+            return uri;
+        }
+        catch (URISyntaxException e)
+        {
+            throw new IllegalArgumentException(e);
+        }
+    }
 
-        return result;
+    /**
+     * Gets the names of the attributes which currently have associated values
+     * in this extension.
+     *
+     * @return the names of the attributes which currently have associated
+     * values in this extension
+     */
+    public List<String> getAttributeNames()
+    {
+        if (isLockFree())
+            return attributeNameList();
+        synchronized (this)
+        {
+            return attributeNameList();
+        }
+    }
+
+    /**
+     * Copies the names kept in <tt>attributeNames</tt>. Must be called while
+     * holding the lock of this extension unless it is lock free.
+     *
+     * @return a new list of the names of the attributes.
+     */
+    private List<String> attributeNameList()
+    {
+        return new ArrayList<String>(
+                Arrays.asList(attributeNames).subList(0, attributeCount));
+    }
+
+    /**
+     * Returns a read-only view of the attributes of this extension by name,
+     * in the order they were first set. Subclasses that used to read the
+     * <tt>attributes</tt> map directly can use it instead. The view reads
+     * through {@link #getAttributeNames()} and
+     * {@link #getAttributeAsString(String)}, so it reflects later changes and
+     * the attributes that subclasses keep in fields of their own. Each of
+     * these calls holds the lock of this extension; hold it yourself
+     * (<tt>synchronized(this)</tt>) across several reads of the view to see
+     * a consistent set of attributes, unless the extension is frozen or
+     * thread confined.
+     *
+     * @return an unmodifiable view of the attributes of this extension.
+     */
+    protected Map<String, String> getAttributeMap()
+    {
+        return new AbstractMap<String, String>()
+        {
+            @Override
+            public String get(Object key)
+            {
+                return (key instanceof String)
+                    ? getAttributeAsString((String) key)
+                    : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key)
+            {
+                return get(key) != null;
+            }
+
+            @Override
+            public Set<Map.Entry<String, String>> entrySet()
+            {
+                return new AbstractSet<Map.Entry<String, String>>()
+                {
+                    @Override
+                    public Iterator<Map.Entry<String, String>> iterator()
+                    {
+                        final Iterator<String> names
+                            = getAttributeNames().iterator();
+
+                        return new Iterator<Map.Entry<String, String>>()
+                        {
+                            public boolean hasNext()
+                            {
+                                return names.hasNext();
+                            }
+
+                            public Map.Entry<String, String> next()
+                            {
+                                String name = names.next();
+
+                                return new AbstractMap.SimpleImmutableEntry
+                                        <String, String>(
+                                    name,
+                                    getAttributeAsString(name));
+                            }
+
+                            public void remove()
+                            {
+                                throw new UnsupportedOperationException();
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size()
+                    {
+                        return getAttributeNames().size();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Specifies the text content of this extension.
+     *
+     * @param text the text content of this extension.
+     */
+    public void setText(String text)
+    {
+        checkNotFrozen();
+        this.textContent = text;
+        structureChanged();
+    }
+
+    /**
+     * Returns the text content of this extension or <tt>null</tt> if no text
+     * content has been specified so far.
+     *
+     * @return the text content of this extension or <tt>null</tt> if no text
+     * content has been specified so far.
+     */
+    public String getText()
+    {
+        return textContent;
+    }
+
+    /**
+     * Returns this packet's first direct child extension that matches the
+     * specified <tt>type</tt>.
+     *
+     * @param <T> the specific type of <tt>PacketExtension</tt> to be returned
+     *
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     *
+     * @return this packet's first direct child extension that matches specified
+     * <tt>type</tt> or <tt>null</tt> if no such child extension was found.
+     */
+    public <T extends PacketExtension> T getFirstChildOfType(Class<T> type)
+    {
+        List<? extends PacketExtension> childExtensions = getChildExtensions();
+
+        if ((childExtensions == null) || childExtensions.isEmpty())
+            return null;
+        if (isLockFree())
+            return firstChildOfType(childExtensions, type);
+
+        synchronized (childExtensions)
+        {
+            return firstChildOfType(childExtensions, type);
+        }
+    }
+
+    /**
+     * Returns the first of <tt>childExtensions</tt> that matches the
+     * specified <tt>type</tt>. Must be called while holding the lock of the
+     * list unless this extension is lock free.
+     *
+     * @param <T> the specific type of <tt>PacketExtension</tt> to be returned
+     * @param childExtensions the children of this extension.
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     *
+     * @return the first child that matches <tt>type</tt> or <tt>null</tt>.
+     */
+    private <T extends PacketExtension> T firstChildOfType(
+            List<? extends PacketExtension> childExtensions,
+            Class<T> type)
+    {
+        ChildExtensionList index = indexedChildren(childExtensions);
+
+        if (index != null)
+        {
+            List<PacketExtension> ofClass = index.childrenOfClass(type);
+
+            if (ofClass != null)
+            {
+                @SuppressWarnings("unchecked")
+                T extensionAsType
+                    = ofClass.isEmpty() ? null : (T) ofClass.get(0);
+
+                return extensionAsType;
+            }
+        }
+        for(PacketExtension extension : childExtensions)
+        {
+            if(type.isInstance(extension))
+            {
+                @SuppressWarnings("unchecked")
+                T extensionAsType = (T) extension;
+
+                return extensionAsType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the list of children of this extension if
+     * <tt>childExtensions</tt>, as returned by {@link #getChildExtensions()},
+     * is that list or its read-only view, so that it can be searched through
+     * its index.
+     *
+     * @param childExtensions the children of this extension.
+     *
+     * @return the list of children of this extension, or <tt>null</tt> if
+     * <tt>childExtensions</tt> is another list.
+     */
+    private ChildExtensionList indexedChildren(
+            List<? extends PacketExtension> childExtensions)
+    {
+        if (!(this.childExtensions instanceof ChildExtensionList))
+            return null;
+
+        ChildExtensionList ownChildren
+            = (ChildExtensionList) this.childExtensions;
+
+        if ((childExtensions == ownChildren)
+                || (childExtensions == ownChildren.readOnlyView()))
+            return ownChildren;
+        return null;
+    }
+
+    /**
+     * Returns this packet's direct child extensions that match the
+     * specified <tt>type</tt>.
+     * <p>
+     * When this extension keeps its children in its own list and none of
+     * them is an instance of a subclass of <tt>type</tt>, the children are
+     * found in an index by class instead of by scanning the children. The
+     * returned list is then a snapshot of the index, which isn't copied: it
+     * keeps the children it was returned with while other threads add or
+     * remove children, and doesn't need to be read while holding any lock.
+     *
+     * @param <T> the specific <tt>PacketExtension</tt> type of child extensions
+     * to be returned
+     *
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     *
+     * @return an unmodifiable, possibly empty, list containing all of this
+     * packet's direct child extensions that match the specified <tt>type</tt>
+     */
+    public <T extends PacketExtension> List<T> getChildExtensionsOfType(
+            Class<T> type)
+    {
+        List<? extends PacketExtension> childExtensions = getChildExtensions();
+
+        if ((childExtensions == null) || childExtensions.isEmpty())
+            return Collections.emptyList();
+        if (isLockFree())
+            return childExtensionsOfType(childExtensions, type);
+
+        synchronized (childExtensions)
+        {
+            return childExtensionsOfType(childExtensions, type);
+        }
+    }
+
+    /**
+     * Returns those of <tt>childExtensions</tt> that match the specified
+     * <tt>type</tt>. Must be called while holding the lock of the list unless
+     * this extension is lock free.
+     *
+     * @param <T> the specific <tt>PacketExtension</tt> type of child extensions
+     * to be returned
+     * @param childExtensions the children of this extension.
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     *
+     * @return an unmodifiable, possibly empty, list of the children that
+     * match <tt>type</tt>.
+     */
+    private <T extends PacketExtension> List<T> childExtensionsOfType(
+            List<? extends PacketExtension> childExtensions,
+            Class<T> type)
+    {
+        ChildExtensionList index = indexedChildren(childExtensions);
+
+        if (index != null)
+        {
+            List<PacketExtension> ofClass = index.childrenOfClass(type);
+
+            if (ofClass != null)
+            {
+                @SuppressWarnings("unchecked")
+                List<T> ofType = (List<T>) (List<?>) ofClass;
+
+                return ofType;
+            }
+        }
+
+        List<T> result = new ArrayList<T>();
+
+        for(PacketExtension extension : childExtensions)
+        {
+            if(type.isInstance(extension))
+            {
+                @SuppressWarnings("unchecked")
+                T extensionAsType = (T) extension;
+
+                result.add(extensionAsType);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns a hash code of the structure of this extension: its element
+     * name, namespace, text, attributes and children, in the sense of
+     * {@link #structurallyEquals(AbstractPacketExtension)}. Unlike
+     * {@link #hashCode()}, which is that of the identity of the extension,
+     * it changes when the extension is modified, so extensions that are
+     * still modified must not be kept in hash collections by it.
+     * <p>
+     * The hash code is cached. Every modification of an extension, of its
+     * attributes, its text or its children, clears the cached hash codes of
+     * the extension and of its ancestors, so only the modified extensions
+     * and their ancestors are hashed again, from the cached hash codes of
+     * their other children. The hash code isn't cached by the extensions
+     * whose descendants can't tell them about their modifications: children
+     * that aren't <tt>AbstractPacketExtension</tt>s, and mutable ones that
+     * are children of several extensions, e.g. after a
+     * {@link #mutableCopy()}.
+     *
+     * @return the structural hash code of this extension.
+     */
+    public int structuralHashCode()
+    {
+        // Read first: a modification made while hashing leaves it stale.
+        int version = structureVersion;
+        long cached = structuralHash;
+
+        if ((cached != 0) && ((int) (cached >>> 32) == version + 1))
+            return (int) cached;
+
+        int hash = getElementName().hashCode();
+
+        hash = 31 * hash + hashCodeOf(getNamespace());
+        hash = 31 * hash + hashCodeOf(structuralText());
+
+        // Attributes are unordered, like the entries of a map.
+        int attributesHash = 0;
+
+        for (String name : getAttributeNames())
+        {
+            attributesHash
+                += name.hashCode() ^ hashCodeOf(getAttributeAsString(name));
+        }
+        hash = 31 * hash + attributesHash;
+
+        boolean cacheable = true;
+
+        for (PacketExtension child : childArray())
+        {
+            hash = 31 * hash + childHashCode(child);
+            cacheable = cacheable && isCachedChild(child);
+        }
+        if (cacheable)
+        {
+            structuralHash
+                = ((long) (version + 1) << 32) | (hash & 0xFFFFFFFFL);
+        }
+        return hash;
+    }
+
+    /**
+     * Determines whether the structural hash code of this extension is
+     * cached and up to date.
+     *
+     * @return <tt>true</tt> if {@link #structuralHashCode()} returns the
+     * cached hash code.
+     */
+    private boolean isStructuralHashCached()
+    {
+        long cached = structuralHash;
+
+        return (cached != 0)
+            && ((int) (cached >>> 32) == structureVersion + 1);
+    }
+
+    /**
+     * Determines whether the hash code of a child, once computed, lets this
+     * extension cache its own: the child never changes, or it tells this
+     * extension about its modifications and has cached its hash code too.
+     *
+     * @param child a child or <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if the hash code of <tt>child</tt> can be part of
+     * the cached hash code of this extension.
+     */
+    private boolean isCachedChild(PacketExtension child)
+    {
+        if (child == null)
+            return true;
+        if (!(child instanceof AbstractPacketExtension))
+            return false;
+
+        AbstractPacketExtension extension = (AbstractPacketExtension) child;
+
+        return extension.frozen
+            || ((extension.parent == this)
+                && extension.isStructuralHashCached());
+    }
+
+    /**
+     * Determines whether <tt>other</tt> is an extension of the same class as
+     * this one with the same structure: the same element name, namespace and
+     * text, the same attributes with the same values in any order, and
+     * structurally equal children in the same order. Text made of white space
+     * only, which {@link #toXML()} doesn't write, is the same as no text, and
+     * children that aren't <tt>AbstractPacketExtension</tt>s are compared by
+     * their XML.
+     * <p>
+     * {@link #equals(Object)} is left to compare identities, so that lists
+     * and hash collections of extensions that are still modified keep
+     * working.
+     *
+     * @param other the extension to compare this extension with, or
+     * <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if <tt>other</tt> has the same structure as this
+     * extension.
+     */
+    public boolean structurallyEquals(AbstractPacketExtension other)
+    {
+        if (other == this)
+            return true;
+        if ((other == null) || (other.getClass() != getClass()))
+            return false;
+        // Different cached hash codes tell the extensions apart at once.
+        if (isStructuralHashCached()
+                && other.isStructuralHashCached()
+                && (structuralHashCode() != other.structuralHashCode()))
+            return false;
+        if (!getElementName().equals(other.getElementName())
+                || !equal(getNamespace(), other.getNamespace())
+                || !equal(structuralText(), other.structuralText()))
+            return false;
+
+        List<String> names = getAttributeNames();
+
+        if (names.size() != other.getAttributeNames().size())
+            return false;
+        for (String name : names)
+        {
+            String value = getAttributeAsString(name);
+
+            if ((value == null)
+                    || !value.equals(other.getAttributeAsString(name)))
+                return false;
+        }
+
+        PacketExtension[] children = childArray();
+        PacketExtension[] otherChildren = other.childArray();
+
+        if (children.length != otherChildren.length)
+            return false;
+        for (int i = 0; i < children.length; i++)
+        {
+            if (!childEquals(children[i], otherChildren[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the children that are part of the structure of this extension,
+     * which {@link #structuralHashCode()} and
+     * {@link #structurallyEquals(AbstractPacketExtension)} compare. They are
+     * those of {@link #getChildExtensions()} by default. Extensions that keep
+     * children in lists of their own that it doesn't return override this
+     * method to add them.
+     *
+     * @return the children that are part of the structure of this extension,
+     * or <tt>null</tt> if there aren't any.
+     */
+    protected List<? extends PacketExtension> getStructureChildren()
+    {
+        return getChildExtensions();
+    }
+
+    /**
+     * Determines whether <tt>list</tt> holds <tt>element</tt> itself, rather
+     * than an element equal to it. Used by the extensions that merge their own
+     * child lists into {@link #getStructureChildren()} or into copies, where
+     * an equal but distinct child must not be dropped.
+     *
+     * @param list the list to search.
+     * @param element the element to search for.
+     *
+     * @return <tt>true</tt> if <tt>element</tt> is in <tt>list</tt>.
+     */
+    protected static boolean containsInstance(List<?> list, Object element)
+    {
+        for(Object item : list)
+        {
+            if(item == element)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the structural hash code of a child. Children that aren't
+     * <tt>AbstractPacketExtension</tt>s are hashed by their XML.
+     *
+     * @param child a child or <tt>null</tt>.
+     *
+     * @return the structural hash code of <tt>child</tt>.
+     */
+    private static int childHashCode(PacketExtension child)
+    {
+        if (child == null)
+            return 0;
+        if (child instanceof AbstractPacketExtension)
+            return ((AbstractPacketExtension) child).structuralHashCode();
+        return child.toXML().hashCode();
+    }
+
+    /**
+     * Determines whether two children have the same structure. Children that
+     * aren't <tt>AbstractPacketExtension</tt>s are compared by their XML.
+     *
+     * @param a a child or <tt>null</tt>.
+     * @param b a child or <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if <tt>a</tt> and <tt>b</tt> are structurally
+     * equal.
+     */
+    private static boolean childEquals(PacketExtension a, PacketExtension b)
+    {
+        if (a == b)
+            return true;
+        if ((a == null) || (b == null))
+            return false;
+        if (a instanceof AbstractPacketExtension)
+        {
+            return (b instanceof AbstractPacketExtension)
+                && ((AbstractPacketExtension) a).structurallyEquals(
+                        (AbstractPacketExtension) b);
+        }
+        if (b instanceof AbstractPacketExtension)
+            return false;
+        return a.toXML().equals(b.toXML());
+    }
+
+    /**
+     * Returns the text of this extension as far as its structure is
+     * concerned.
+     *
+     * @return the text of this extension, or <tt>null</tt> if it has none or
+     * it is made of white space only.
+     */
+    private String structuralText()
+    {
+        String text = getText();
+
+        return ((text == null) || (text.trim().length() == 0)) ? null : text;
+    }
+
+    /**
+     * Returns the children of this extension in an array, so that two
+     * extensions can be compared without holding the locks of both.
+     *
+     * @return the children of this extension.
+     */
+    private PacketExtension[] childArray()
+    {
+        List<? extends PacketExtension> childElements = getStructureChildren();
+
+        if (childElements == null)
+            return new PacketExtension[0];
+        if (isLockFree())
+            return childElements.toArray(new PacketExtension[0]);
+        synchronized(childElements)
+        {
+            return childElements.toArray(
+                    new PacketExtension[childElements.size()]);
+        }
+    }
+
+    /**
+     * Returns the hash code of <tt>obj</tt>, or <tt>0</tt> for
+     * <tt>null</tt>.
+     *
+     * @param obj an object or <tt>null</tt>.
+     *
+     * @return the hash code of <tt>obj</tt>.
+     */
+    private static int hashCodeOf(Object obj)
+    {
+        return (obj == null) ? 0 : obj.hashCode();
+    }
+
+    /**
+     * Determines whether two strings are equal or both <tt>null</tt>.
+     *
+     * @param a a string or <tt>null</tt>.
+     * @param b a string or <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if <tt>a</tt> and <tt>b</tt> are equal.
+     */
+    private static boolean equal(String a, String b)
+    {
+        return (a == null) ? (b == null) : a.equals(b);
     }
 }
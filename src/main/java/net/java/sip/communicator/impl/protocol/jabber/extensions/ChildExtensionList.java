@@ -0,0 +1,330 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions;
+
+import java.util.*;
+
+import org.jivesoftware.smack.packet.*;
+
+/**
+ * The list of child extensions of an {@link AbstractPacketExtension}, with an
+ * index of the children by class that answers
+ * {@link AbstractPacketExtension#getChildExtensionsOfType(Class)} and
+ * {@link AbstractPacketExtension#getFirstChildOfType(Class)} without scanning
+ * the children or copying them.
+ * <p>
+ * The index is built on the first lookup and kept up to date by
+ * {@link #add(PacketExtension)}. Any other modification of the list, such as
+ * <tt>clear()</tt> or a removal through an iterator, changes the
+ * <tt>modCount</tt> of the list and the index is rebuilt on the next lookup.
+ * The index keeps the children by their exact class, so a lookup for a class
+ * that some children are a subclass of falls back to scanning.
+ * <p>
+ * The children of a class are kept in an append-only bucket: appending never
+ * modifies the slots already in use, and a bucket that has to grow moves to a
+ * new array, leaving the old one as it was. A lookup returns a snapshot of a
+ * bucket, its array and the number of slots in use, which stays valid and
+ * unchanged while children are added, without copying them. Rebuilding the
+ * index creates new buckets instead of modifying the old ones, so snapshots
+ * taken before a removal keep the children they had.
+ * <p>
+ * Like the rest of the list, the index has to be accessed while holding the
+ * lock of the list, unless its extension is thread confined, or until the
+ * list is frozen with its extension. The index of a frozen list is complete
+ * and never changes, so it is read without locking.
+ */
+class ChildExtensionList
+    extends ChildList<PacketExtension>
+{
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The distinct classes of the children, in the order they first appear.
+     */
+    private Class<?>[] classes;
+
+    /**
+     * The children of each class of <tt>classes</tt>, in order.
+     */
+    private Bucket[] buckets;
+
+    /**
+     * The number of distinct classes of the children.
+     */
+    private int classCount;
+
+    /**
+     * The <tt>modCount</tt> of the list when the index was last updated, or
+     * <tt>-1</tt> if there is no index.
+     */
+    private int indexedModCount = -1;
+
+    /**
+     * The read-only view of this list returned by the extension once it is
+     * frozen, <tt>null</tt> until then.
+     */
+    private List<PacketExtension> readOnlyView;
+
+    /**
+     * Creates an empty list of children of <tt>owner</tt>.
+     *
+     * @param owner the extension whose children the list keeps.
+     */
+    ChildExtensionList(AbstractPacketExtension owner)
+    {
+        super(owner);
+    }
+
+    /**
+     * Creates an empty list of children of <tt>owner</tt> with room for
+     * <tt>capacity</tt> children.
+     *
+     * @param owner the extension whose children the list keeps.
+     * @param capacity the number of children the list is created for.
+     */
+    ChildExtensionList(AbstractPacketExtension owner, int capacity)
+    {
+        super(owner, capacity);
+    }
+
+    /**
+     * Appends a child, adding it to the index too if there is one.
+     *
+     * @param child the child to append.
+     *
+     * @return <tt>true</tt>.
+     */
+    @Override
+    public boolean add(PacketExtension child)
+    {
+        boolean indexed = (indexedModCount == modCount);
+
+        super.add(child);
+        if (indexed)
+        {
+            index(child);
+            indexedModCount = modCount;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces a child. Unlike in <tt>ArrayList</tt>, this counts as a
+     * structural modification so that the index is rebuilt.
+     *
+     * @param index the position of the child to replace.
+     * @param child the new child.
+     *
+     * @return the replaced child.
+     */
+    @Override
+    public PacketExtension set(int index, PacketExtension child)
+    {
+        modCount++;
+        return super.set(index, child);
+    }
+
+    /**
+     * Returns an unmodifiable view of the children of exactly the class
+     * <tt>type</tt>, which are all the children matching <tt>type</tt> unless
+     * some children are instances of a subclass of it.
+     *
+     * @param type the class of the children we are looking for.
+     *
+     * @return a snapshot of the children of class <tt>type</tt>, which
+     * doesn't change when children are added to or removed from this list, or
+     * <tt>null</tt> if children of a subclass of <tt>type</tt> match it too
+     * and the list has to be scanned.
+     */
+    List<PacketExtension> childrenOfClass(Class<?> type)
+    {
+        if (indexedModCount != modCount)
+            rebuildIndex();
+
+        int found = -1;
+
+        for (int i = 0; i < classCount; i++)
+        {
+            Class<?> childClass = classes[i];
+
+            if (childClass == type)
+                found = i;
+            else if (type.isAssignableFrom(childClass))
+                return null;
+        }
+        if (found < 0)
+            return Collections.emptyList();
+        return buckets[found].snapshot();
+    }
+
+    /**
+     * Trims the list and completes its index before its extension is frozen.
+     */
+    void freeze()
+    {
+        trimToSize();
+        if (indexedModCount != modCount)
+            rebuildIndex();
+        readOnlyView = Collections.unmodifiableList(this);
+    }
+
+    /**
+     * Returns the read-only view of this list created by {@link #freeze()}.
+     *
+     * @return the read-only view of this list, or <tt>null</tt> if it isn't
+     * frozen.
+     */
+    List<PacketExtension> readOnlyView()
+    {
+        return readOnlyView;
+    }
+
+    /**
+     * Builds the index of the current children.
+     */
+    private void rebuildIndex()
+    {
+        classes = new Class<?>[4];
+        buckets = new Bucket[4];
+        classCount = 0;
+        for (int i = 0, size = size(); i < size; i++)
+            index(get(i));
+        indexedModCount = modCount;
+    }
+
+    /**
+     * Adds a child to the index.
+     *
+     * @param child the child to add.
+     */
+    private void index(PacketExtension child)
+    {
+        if (child == null)
+            return;
+
+        Class<?> childClass = child.getClass();
+
+        for (int i = 0; i < classCount; i++)
+        {
+            if (classes[i] == childClass)
+            {
+                buckets[i].add(child);
+                return;
+            }
+        }
+        if (classCount == classes.length)
+        {
+            classes = Arrays.copyOf(classes, classCount * 2);
+            buckets = Arrays.copyOf(buckets, classCount * 2);
+        }
+        classes[classCount] = childClass;
+        buckets[classCount] = new Bucket();
+        buckets[classCount++].add(child);
+    }
+
+    /**
+     * The children of one class, appended to an array whose slots are never
+     * modified once in use.
+     */
+    private static final class Bucket
+    {
+        /**
+         * The children, in their first <tt>size</tt> slots.
+         */
+        private PacketExtension[] elements = new PacketExtension[4];
+
+        /**
+         * The number of slots of <tt>elements</tt> in use.
+         */
+        private int size;
+
+        /**
+         * The last snapshot returned, reused while no child is added.
+         */
+        private Snapshot snapshot;
+
+        /**
+         * Appends a child, moving the children to a larger array if there is
+         * no room left for it.
+         *
+         * @param child the child to append.
+         */
+        void add(PacketExtension child)
+        {
+            if (size == elements.length)
+                elements = Arrays.copyOf(elements, size * 2);
+            elements[size++] = child;
+        }
+
+        /**
+         * Returns a snapshot of the children added so far.
+         *
+         * @return an unmodifiable list of the children added so far.
+         */
+        List<PacketExtension> snapshot()
+        {
+            Snapshot snapshot = this.snapshot;
+
+            if ((snapshot == null) || (snapshot.size != size))
+                this.snapshot = snapshot = new Snapshot(elements, size);
+            return snapshot;
+        }
+    }
+
+    /**
+     * An unmodifiable list of the first slots of the array of a
+     * {@link Bucket}, which are never modified.
+     */
+    private static final class Snapshot
+        extends AbstractList<PacketExtension>
+        implements RandomAccess
+    {
+        /**
+         * The array of the bucket when the snapshot was taken.
+         */
+        private final PacketExtension[] elements;
+
+        /**
+         * The number of slots of <tt>elements</tt> in use when the snapshot
+         * was taken.
+         */
+        private final int size;
+
+        /**
+         * Creates a snapshot of the first <tt>size</tt> children of
+         * <tt>elements</tt>.
+         *
+         * @param elements the array of a bucket.
+         * @param size the number of slots in use.
+         */
+        Snapshot(PacketExtension[] elements, int size)
+        {
+            this.elements = elements;
+            this.size = size;
+        }
+
+        @Override
+        public PacketExtension get(int index)
+        {
+            if ((index < 0) || (index >= size))
+            {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size);
+            }
+            return elements[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+}
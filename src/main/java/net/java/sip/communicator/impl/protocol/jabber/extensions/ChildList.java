@@ -0,0 +1,333 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions;
+
+import java.util.*;
+import java.util.function.*;
+
+import org.jivesoftware.smack.packet.*;
+
+/**
+ * A list of children of an {@link AbstractPacketExtension} that tells the
+ * extension when it is modified, so that the structural hash code the
+ * extension and its ancestors cache is recomputed. The children added become
+ * children of the extension, so that their own modifications are told to it
+ * too.
+ * <p>
+ * Every method that modifies the list does, including those of its
+ * iterators and sub-lists. Children that are removed keep the extension as
+ * their parent: they may still be kept in another list of the same
+ * extension, and a modification of a former child only costs the extension
+ * a needless recomputation.
+ *
+ * @param <E> the type of the children.
+ */
+class ChildList<E extends PacketExtension>
+    extends ArrayList<E>
+{
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The extension whose children this list keeps.
+     */
+    private final transient AbstractPacketExtension owner;
+
+    /**
+     * Creates an empty list of children of <tt>owner</tt>.
+     *
+     * @param owner the extension whose children the list keeps.
+     */
+    ChildList(AbstractPacketExtension owner)
+    {
+        super();
+        this.owner = owner;
+    }
+
+    /**
+     * Creates an empty list of children of <tt>owner</tt> with room for
+     * <tt>capacity</tt> children.
+     *
+     * @param owner the extension whose children the list keeps.
+     * @param capacity the number of children the list is created for.
+     */
+    ChildList(AbstractPacketExtension owner, int capacity)
+    {
+        super(capacity);
+        this.owner = owner;
+    }
+
+    @Override
+    public boolean add(E child)
+    {
+        super.add(child);
+        owner.childChanged(child);
+        return true;
+    }
+
+    @Override
+    public void add(int index, E child)
+    {
+        super.add(index, child);
+        owner.childChanged(child);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> children)
+    {
+        return childrenAdded(super.addAll(children), children);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> children)
+    {
+        return childrenAdded(super.addAll(index, children), children);
+    }
+
+    @Override
+    public E set(int index, E child)
+    {
+        E replaced = super.set(index, child);
+
+        owner.childChanged(child);
+        return replaced;
+    }
+
+    @Override
+    public E remove(int index)
+    {
+        E removed = super.remove(index);
+
+        owner.structureChanged();
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object child)
+    {
+        return changed(super.remove(child));
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> children)
+    {
+        return changed(super.removeAll(children));
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> children)
+    {
+        return changed(super.retainAll(children));
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter)
+    {
+        return changed(super.removeIf(filter));
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operator)
+    {
+        super.replaceAll(operator);
+        for (int i = 0, size = size(); i < size; i++)
+            owner.linkChild(get(i));
+        owner.structureChanged();
+    }
+
+    @Override
+    public void sort(Comparator<? super E> comparator)
+    {
+        super.sort(comparator);
+        owner.structureChanged();
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        owner.structureChanged();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex)
+    {
+        super.removeRange(fromIndex, toIndex);
+        owner.structureChanged();
+    }
+
+    /**
+     * Returns a view of a range of this list, whose modifications are made
+     * through the methods of this list so that they are told to the
+     * extension too.
+     *
+     * @param fromIndex the first position of the range.
+     * @param toIndex the position after the last one of the range.
+     *
+     * @return a view of the range.
+     */
+    @Override
+    public List<E> subList(int fromIndex, int toIndex)
+    {
+        if ((fromIndex < 0) || (toIndex > size()) || (fromIndex > toIndex))
+        {
+            throw new IndexOutOfBoundsException(
+                    "fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+        }
+        return new SubList(fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Makes the children of a bulk addition children of the extension.
+     *
+     * @param changed whether the list was modified.
+     * @param children the children that were added.
+     *
+     * @return <tt>changed</tt>.
+     */
+    private boolean childrenAdded(
+            boolean changed,
+            Collection<? extends E> children)
+    {
+        if (changed)
+        {
+            for (E child : children)
+                owner.linkChild(child);
+            owner.structureChanged();
+        }
+        return changed;
+    }
+
+    /**
+     * Tells the extension that the list was modified, if it was.
+     *
+     * @param changed whether the list was modified.
+     *
+     * @return <tt>changed</tt>.
+     */
+    private boolean changed(boolean changed)
+    {
+        if (changed)
+            owner.structureChanged();
+        return changed;
+    }
+
+    /**
+     * A range of the list. <tt>ArrayList</tt> modifies its array directly
+     * through its own sub-lists, so the range is kept here and modified
+     * through the methods of the list instead.
+     */
+    private class SubList
+        extends AbstractList<E>
+        implements RandomAccess
+    {
+        /**
+         * The position of the range in the list.
+         */
+        private final int offset;
+
+        /**
+         * The number of elements of the range.
+         */
+        private int size;
+
+        /**
+         * The <tt>modCount</tt> of the list after the last modification made
+         * through this range.
+         */
+        private int expectedModCount;
+
+        /**
+         * Creates a view of a range of the list.
+         *
+         * @param offset the position of the range in the list.
+         * @param size the number of elements of the range.
+         */
+        SubList(int offset, int size)
+        {
+            this.offset = offset;
+            this.size = size;
+            this.expectedModCount = ChildList.this.modCount;
+        }
+
+        @Override
+        public E get(int index)
+        {
+            checkIndex(index, size);
+            return ChildList.this.get(offset + index);
+        }
+
+        @Override
+        public int size()
+        {
+            checkModCount();
+            return size;
+        }
+
+        @Override
+        public E set(int index, E child)
+        {
+            checkIndex(index, size);
+
+            E replaced = ChildList.this.set(offset + index, child);
+
+            expectedModCount = ChildList.this.modCount;
+            return replaced;
+        }
+
+        @Override
+        public void add(int index, E child)
+        {
+            checkIndex(index, size + 1);
+            ChildList.this.add(offset + index, child);
+            expectedModCount = ChildList.this.modCount;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public E remove(int index)
+        {
+            checkIndex(index, size);
+
+            E removed = ChildList.this.remove(offset + index);
+
+            expectedModCount = ChildList.this.modCount;
+            size--;
+            modCount++;
+            return removed;
+        }
+
+        /**
+         * Checks that the list hasn't been modified but through this range,
+         * and that <tt>index</tt> is a position of the range.
+         *
+         * @param index the position to check.
+         * @param bound the first position after the allowed ones.
+         */
+        private void checkIndex(int index, int bound)
+        {
+            checkModCount();
+            if ((index < 0) || (index >= bound))
+            {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size);
+            }
+        }
+
+        /**
+         * Checks that the list hasn't been modified but through this range.
+         */
+        private void checkModCount()
+        {
+            if (ChildList.this.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+}
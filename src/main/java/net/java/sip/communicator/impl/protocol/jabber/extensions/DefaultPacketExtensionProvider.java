@@ -60,14 +60,17 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
     {
         C packetExtension = packetClass.newInstance();
 
-        //first, set all attributes
+        //first, set all attributes. the names, and the values that are
+        //enumerated protocol tokens, are stored as their canonical instance
+        //so that the extension finds them by identity and doesn't keep
+        //copies of them.
         int attrCount = parser.getAttributeCount();
 
         for (int i = 0; i < attrCount; i++)
         {
             packetExtension.setAttribute(
-                            parser.getAttributeName(i),
-                            parser.getAttributeValue(i));
+                    Vocabulary.intern(parser.getAttributeName(i)),
+                    Vocabulary.internValue(parser.getAttributeValue(i)));
         }
 
         //now parse the sub elements
@@ -79,8 +82,8 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
         while (!done)
         {
             eventType = parser.next();
-            elementName = parser.getName();
-            namespace = parser.getNamespace();
+            elementName = Vocabulary.intern(parser.getName());
+            namespace = Vocabulary.intern(parser.getNamespace());
 
             if (logger.isLoggable(Level.FINEST))
                 logger.finest("Will parse " + elementName
@@ -117,7 +120,7 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
             }
             if (eventType == XmlPullParser.END_TAG)
             {
-                if (parser.getName().equals(packetExtension.getElementName()))
+                if (elementName.equals(packetExtension.getElementName()))
                 {
                     done = true;
                 }
@@ -0,0 +1,203 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * The canonical instances of the element names, attribute names and
+ * namespaces of packet extensions, and of the enumerated tokens their
+ * attribute values take.
+ * <p>
+ * XML parsers create a new <tt>String</tt> for every element and attribute
+ * name they read. {@link #intern(String)} returns the one canonical instance
+ * of a known name instead, usually the constant of the extension that
+ * defines it, so that extensions looking their attributes up by their name
+ * constants find them on the first comparison and parsed extensions don't
+ * keep copies of the same names. {@link #internValue(String)} does the same
+ * for attribute values, but only knows the enumerated ones, e.g. candidate
+ * types or protocols: free-form values such as addresses, ICE credentials or
+ * keys are never part of the vocabulary, and values longer than its longest
+ * token are returned without being looked up. Interning is only an
+ * optimization: tokens must still be compared with <tt>equals()</tt>, since
+ * a token that isn't part of the vocabulary is returned as is.
+ * <p>
+ * The packages of extensions add their tokens when their own vocabulary
+ * class is loaded, with {@link #addNames(Collection)} and
+ * {@link #addValues(Collection)}. The tables are replaced rather than
+ * modified by every addition, so they are read without locking.
+ */
+public final class Vocabulary
+{
+    /**
+     * The canonical instance of every name, by name. Never modified once
+     * published.
+     */
+    private static volatile Map<String, String> names
+        = Collections.emptyMap();
+
+    /**
+     * The canonical instance of every enumerated value, by value. Never
+     * modified once published.
+     */
+    private static volatile Map<String, String> values
+        = Collections.emptyMap();
+
+    /**
+     * The length of the longest token in {@link #values}, beyond which values
+     * aren't looked up.
+     */
+    private static volatile int maxValueLength;
+
+    /**
+     * This class only has static members.
+     */
+    private Vocabulary()
+    {
+    }
+
+    /**
+     * Returns the canonical instance of <tt>name</tt> if it is part of the
+     * vocabulary, or <tt>name</tt> itself if it isn't.
+     *
+     * @param name an element name, attribute name or namespace, or
+     * <tt>null</tt>.
+     *
+     * @return the canonical instance of <tt>name</tt>, or <tt>name</tt> if
+     * it isn't part of the vocabulary.
+     */
+    public static String intern(String name)
+    {
+        if (name == null)
+            return null;
+
+        String canonical = names.get(name);
+
+        return (canonical == null) ? name : canonical;
+    }
+
+    /**
+     * Returns the canonical instance of the attribute value <tt>value</tt>
+     * if it is one of the enumerated values of the vocabulary, or
+     * <tt>value</tt> itself if it isn't. Values longer than the longest
+     * enumerated one are returned without a lookup.
+     *
+     * @param value an attribute value, or <tt>null</tt>.
+     *
+     * @return the canonical instance of <tt>value</tt>, or <tt>value</tt> if
+     * it isn't part of the vocabulary.
+     */
+    public static String internValue(String value)
+    {
+        if ((value == null) || (value.length() > maxValueLength))
+            return value;
+
+        String canonical = values.get(value);
+
+        return (canonical == null) ? value : canonical;
+    }
+
+    /**
+     * Adds element names, attribute names and namespaces to the vocabulary.
+     * A name equal to one that is already part of it, or to one earlier in
+     * <tt>newNames</tt>, keeps the instance it was first added with.
+     *
+     * @param newNames the names to add.
+     */
+    public static synchronized void addNames(Collection<String> newNames)
+    {
+        names = union(names, newNames);
+    }
+
+    /**
+     * Adds enumerated attribute values to the vocabulary, e.g. the tokens of
+     * an enumeration. Free-form values don't belong here: a value that is
+     * different in every stanza would only grow the table. A value equal to
+     * one that is already part of it, or to one earlier in
+     * <tt>newValues</tt>, keeps the instance it was first added with.
+     *
+     * @param newValues the values to add.
+     */
+    public static synchronized void addValues(Collection<String> newValues)
+    {
+        Map<String, String> table = union(values, newValues);
+        int maxLength = maxValueLength;
+
+        for (String value : table.keySet())
+            maxLength = Math.max(maxLength, value.length());
+        // Raised first, so that a reader never skips a published value.
+        maxValueLength = maxLength;
+        values = table;
+    }
+
+    /**
+     * Returns a new table with the tokens of <tt>table</tt> and
+     * <tt>newTokens</tt>.
+     *
+     * @param table the current tokens.
+     * @param newTokens the tokens to add.
+     *
+     * @return the canonical instance of every token, by token.
+     */
+    private static Map<String, String> union(
+            Map<String, String> table,
+            Collection<String> newTokens)
+    {
+        Map<String, String> union
+            = new HashMap<String, String>(
+                    (table.size() + newTokens.size()) * 2);
+
+        union.putAll(table);
+        for (String token : newTokens)
+        {
+            if ((token != null) && !union.containsKey(token))
+                union.put(token, token);
+        }
+        return union;
+    }
+
+    /**
+     * Returns the element name, attribute name and namespace constants of an
+     * extension: its public static <tt>String</tt> fields named
+     * <tt>NAMESPACE</tt> or ending in <tt>_NAME</tt> or <tt>_VALUE</tt>, a
+     * suffix some extensions give their attribute names.
+     *
+     * @param extension the class of the extension.
+     *
+     * @return the values of the constants of <tt>extension</tt>.
+     */
+    public static List<String> constantsOf(Class<?> extension)
+    {
+        List<String> constants = new ArrayList<String>();
+
+        for (Field field : extension.getFields())
+        {
+            String name = field.getName();
+
+            if (field.getType() != String.class
+                    || !Modifier.isStatic(field.getModifiers())
+                    || !(name.equals("NAMESPACE")
+                            || name.endsWith("_NAME")
+                            || name.endsWith("_VALUE")))
+                continue;
+
+            try
+            {
+                String token = (String) field.get(null);
+
+                if (token != null)
+                    constants.add(token);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+        return constants;
+    }
+}
@@ -78,4 +78,15 @@ public class BandwidthPacketExtension
     {
         return super.getText();
     }
+
+    /**
+     * Creates an empty bandwidth element, for copies.
+     *
+     * @return a new <tt>BandwidthPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new BandwidthPacketExtension();
+    }
 }
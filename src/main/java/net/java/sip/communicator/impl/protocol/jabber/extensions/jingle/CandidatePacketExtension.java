@@ -6,12 +6,24 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber.extensions.jingle;
 
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
 import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
 
 /**
+ * An ICE candidate.
+ * <p>
+ * The numeric attributes and the type are read on every conversion and
+ * comparison of a candidate, so they are kept in typed fields rather than as
+ * strings, and only rendered as strings for the generic attribute methods and
+ * the XML representation. Values set through the generic methods that don't
+ * parse are kept as strings, and the typed getters fail on them as they
+ * always have.
+ *
  * @author Emil Ivov
  */
-public class CandidatePacketExtension extends AbstractPacketExtension
+public class CandidatePacketExtension extends AbstractLeafPacketExtension
     implements Comparable<CandidatePacketExtension>
 {
     /**
@@ -89,6 +101,139 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public static final String TYPE_ATTR_NAME = "type";
 
+    /**
+     * The name of the "tcptype" element.
+     */
+    public static final String TCPTYPE_ATTR_NAME = "tcptype";
+
+    /**
+     * The flags of the attributes kept in typed fields. The flag of the
+     * attribute at index <tt>i</tt> of <tt>TYPED_ATTR_NAMES</tt> is
+     * <tt>1 &lt;&lt; i</tt>.
+     */
+    private static final int COMPONENT = 1;
+    private static final int PRIORITY = 1 << 1;
+    private static final int PORT = 1 << 2;
+    private static final int TYPE = 1 << 3;
+    private static final int REL_PORT = 1 << 4;
+    private static final int GENERATION = 1 << 5;
+    private static final int NETWORK = 1 << 6;
+
+    /**
+     * The names of the attributes kept in typed fields, in the order they are
+     * rendered.
+     */
+    private static final String[] TYPED_ATTR_NAMES = {
+        COMPONENT_ATTR_NAME,
+        PRIORITY_ATTR_NAME,
+        PORT_ATTR_NAME,
+        TYPE_ATTR_NAME,
+        REL_PORT_ATTR_NAME,
+        GENERATION_ATTR_NAME,
+        NETWORK_ATTR_NAME
+    };
+
+    /**
+     * The preference of each candidate type, indexed by ordinal, used by
+     * {@link #compareTo(CandidatePacketExtension)}: host &lt; local &lt;
+     * prflx &lt; srflx &lt; stun &lt; relay.
+     */
+    private static final int[] TYPE_PREFERENCES
+        = new int[CandidateType.values().length];
+
+    static
+    {
+        CandidateType[] types = {
+            CandidateType.host,
+            CandidateType.local,
+            CandidateType.prflx,
+            CandidateType.srflx,
+            CandidateType.stun,
+            CandidateType.relay
+        };
+        for(int i = 0; i < types.length; ++i)
+            TYPE_PREFERENCES[types[i].ordinal()] = i;
+    }
+
+    /**
+     * Renders a candidate into a line of text, such as its SDP line, for
+     * {@link CandidatePacketExtension#getLine(LineRenderer)}.
+     */
+    public interface LineRenderer
+    {
+        /**
+         * Renders <tt>candidate</tt>.
+         *
+         * @param candidate the candidate to render.
+         *
+         * @return the rendering of <tt>candidate</tt>.
+         */
+        String render(CandidatePacketExtension candidate);
+    }
+
+    /**
+     * A rendering of a candidate, with the renderer that produced it and the
+     * <tt>attributeStamp</tt> of the candidate when rendering began.
+     */
+    private static final class CachedLine
+    {
+        final LineRenderer renderer;
+        final int stamp;
+        final String line;
+
+        CachedLine(LineRenderer renderer, int stamp, String line)
+        {
+            this.renderer = renderer;
+            this.stamp = stamp;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Replaces <tt>cachedLine</tt> atomically.
+     */
+    private static final AtomicReferenceFieldUpdater
+            <CandidatePacketExtension, CachedLine> CACHED_LINE
+        = AtomicReferenceFieldUpdater.newUpdater(
+                CandidatePacketExtension.class,
+                CachedLine.class,
+                "cachedLine");
+
+    /**
+     * Increments <tt>attributeStamp</tt> atomically.
+     */
+    private static final AtomicIntegerFieldUpdater<CandidatePacketExtension>
+        ATTRIBUTE_STAMP
+            = AtomicIntegerFieldUpdater.newUpdater(
+                    CandidatePacketExtension.class,
+                    "attributeStamp");
+
+    /**
+     * The last rendering cached by {@link #getLine(LineRenderer)}, valid as
+     * long as its stamp is the current <tt>attributeStamp</tt>.
+     */
+    private volatile CachedLine cachedLine;
+
+    /**
+     * Counts the changes to the attributes of this candidate.
+     */
+    private volatile int attributeStamp;
+
+    /**
+     * The flags of the typed attributes that are set. The fields of an
+     * attribute are written before its flag is set, so that a getter that
+     * finds the flag reads the value without locking.
+     */
+    private volatile int typedAttributes;
+
+    private int component;
+    private long priority;
+    private int port;
+    private CandidateType type;
+    private int relPort;
+    private int generation;
+    private int network;
+
     /**
      * Creates a new {@link CandidatePacketExtension}
      */
@@ -116,7 +261,7 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public void setComponent(int component)
     {
-        super.setAttribute(COMPONENT_ATTR_NAME, component);
+        setTypedAttribute(COMPONENT, component);
     }
 
     /**
@@ -126,7 +271,9 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public int getComponent()
     {
-        return super.getAttributeAsInt(COMPONENT_ATTR_NAME);
+        return ((typedAttributes & COMPONENT) != 0)
+            ? component
+            : super.getAttributeAsInt(COMPONENT_ATTR_NAME);
     }
 
     /**
@@ -159,7 +306,7 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public void setGeneration(int generation)
     {
-        super.setAttribute(GENERATION_ATTR_NAME, generation);
+        setTypedAttribute(GENERATION, generation);
     }
 
     /**
@@ -172,7 +319,9 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public int getGeneration()
     {
-        return super.getAttributeAsInt(GENERATION_ATTR_NAME);
+        return ((typedAttributes & GENERATION) != 0)
+            ? generation
+            : super.getAttributeAsInt(GENERATION_ATTR_NAME);
     }
 
     /**
@@ -227,7 +376,7 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public void setNetwork(int network)
     {
-        super.setAttribute(NETWORK_ATTR_NAME, network);
+        setTypedAttribute(NETWORK, network);
     }
 
     /**
@@ -240,7 +389,9 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public int getNetwork()
     {
-        return super.getAttributeAsInt(NETWORK_ATTR_NAME);
+        return ((typedAttributes & NETWORK) != 0)
+            ? network
+            : super.getAttributeAsInt(NETWORK_ATTR_NAME);
     }
 
     /**
@@ -250,7 +401,7 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public void setPort(int port)
     {
-        super.setAttribute(PORT_ATTR_NAME, port);
+        setTypedAttribute(PORT, port);
     }
 
     /**
@@ -260,7 +411,9 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public int getPort()
     {
-        return super.getAttributeAsInt(PORT_ATTR_NAME);
+        return ((typedAttributes & PORT) != 0)
+            ? port
+            : super.getAttributeAsInt(PORT_ATTR_NAME);
     }
 
     /**
@@ -270,17 +423,23 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public void setPriority(long priority)
     {
-        super.setAttribute(PRIORITY_ATTR_NAME, priority);
+        setTypedAttribute(PRIORITY, priority);
     }
 
     /**
-     * This candidate's priority as defined in ICE's RFC 5245
+     * This candidate's priority as defined in ICE's RFC 5245. Priorities are
+     * 32-bit unsigned integers, so they may not fit in an <tt>int</tt>.
      *
-     * @return this candidate's priority
+     * @return this candidate's priority or <tt>-1</tt> if it has none.
      */
-    public int getPriority()
+    public long getPriority()
     {
-        return super.getAttributeAsInt(PRIORITY_ATTR_NAME);
+        if((typedAttributes & PRIORITY) != 0)
+            return priority;
+
+        String priority = super.getAttributeAsString(PRIORITY_ATTR_NAME);
+
+        return (priority == null) ? -1 : Long.parseLong(priority);
     }
 
     /**
@@ -332,7 +491,7 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public void setRelPort(int relPort)
     {
-        super.setAttribute(REL_PORT_ATTR_NAME, relPort);
+        setTypedAttribute(REL_PORT, relPort);
     }
 
     /**
@@ -342,7 +501,9 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public int getRelPort()
     {
-        return super.getAttributeAsInt(REL_PORT_ATTR_NAME);
+        return ((typedAttributes & REL_PORT) != 0)
+            ? relPort
+            : super.getAttributeAsInt(REL_PORT_ATTR_NAME);
     }
 
     /**
@@ -356,7 +517,38 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public void setType(CandidateType type)
     {
-        super.setAttribute(TYPE_ATTR_NAME, type);
+        if(type == null)
+        {
+            removeAttribute(TYPE_ATTR_NAME);
+            return;
+        }
+        checkNotFrozen();
+        if(isThreadConfined())
+        {
+            storeType(type);
+        }
+        else
+        {
+            synchronized(this)
+            {
+                storeType(type);
+            }
+        }
+        attributesChanged();
+    }
+
+    /**
+     * Stores the type of this candidate in its field. Must be called while
+     * holding the lock of this candidate unless it is thread confined.
+     *
+     * @param type this candidates' type as per ICE's RFC 5245.
+     */
+    private void storeType(CandidateType type)
+    {
+        if((typedAttributes & TYPE) == 0)
+            super.removeAttribute(TYPE_ATTR_NAME);
+        this.type = type;
+        typedAttributes |= TYPE;
     }
 
     /**
@@ -366,48 +558,599 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      * candidates. All allowable values are enumerated in the {@link
      * CandidateType} enum.
      *
-     * @return this candidates' type as per ICE's RFC 5245.
+     * @return this candidates' type as per ICE's RFC 5245 or <tt>null</tt> if
+     * it has none.
      */
     public CandidateType getType()
     {
-        return CandidateType.valueOf(getAttributeAsString(TYPE_ATTR_NAME));
+        if((typedAttributes & TYPE) != 0)
+            return type;
+
+        String type = super.getAttributeAsString(TYPE_ATTR_NAME);
+
+        return (type == null) ? null : CandidateType.parseString(type);
     }
 
     /**
-     * Compares this instance with another CandidatePacketExtension by
-     * preference of type: host < local < prflx < srflx < stun < relay.
+     * Sets the TCP type of this candidate as defined in RFC 6544: "active",
+     * "passive" or "so".
      *
-     * @return 0 if the type are equal. -1 if this instance type is preferred.
-     * Otherwise 1.
+     * @param tcpType this candidate's TCP type, or <tt>null</tt> for UDP
+     * candidates.
      */
-    public int compareTo(CandidatePacketExtension candidatePacketExtension)
+    public void setTcpType(String tcpType)
     {
-        // If the types are differents.
-        if(this.getType() != candidatePacketExtension.getType())
-        {
-            CandidateType[] types = {
-                CandidateType.host,
-                CandidateType.local,
-                CandidateType.prflx,
-                CandidateType.srflx,
-                CandidateType.stun,
-                CandidateType.relay
-            };
-            for(int i = 0; i < types.length; ++i)
+        super.setAttribute(TCPTYPE_ATTR_NAME, tcpType);
+    }
+
+    /**
+     * Returns the TCP type of this candidate as defined in RFC 6544.
+     *
+     * @return this candidate's TCP type, or <tt>null</tt> if it has none.
+     */
+    public String getTcpType()
+    {
+        return super.getAttributeAsString(TCPTYPE_ATTR_NAME);
+    }
+
+    /**
+     * Sets the value of a numeric typed attribute.
+     *
+     * @param flag the flag of the attribute.
+     * @param value the value of the attribute.
+     */
+    private void setTypedAttribute(int flag, long value)
+    {
+        checkNotFrozen();
+        if(isThreadConfined())
+        {
+            storeTypedAttribute(flag, value);
+        }
+        else
+        {
+            synchronized(this)
             {
-                // this object is preferred.
-                if(types[i] == this.getType())
-                {
-                    return -1;
-                }
-                // the candidatePacketExtension is preferred.
-                else if(types[i] == candidatePacketExtension.getType())
+                storeTypedAttribute(flag, value);
+            }
+        }
+        attributesChanged();
+    }
+
+    /**
+     * Stores the value of a numeric typed attribute and sets its flag. Must
+     * be called while holding the lock of this candidate unless it is thread
+     * confined.
+     *
+     * @param flag the flag of the attribute.
+     * @param value the value of the attribute.
+     */
+    private void storeTypedAttribute(int flag, long value)
+    {
+        int typed = typedAttributes;
+
+        if((typed & flag) == 0)
+        {
+            // Drops the value kept as a string because it didn't parse.
+            super.removeAttribute(TYPED_ATTR_NAMES[
+                    Integer.numberOfTrailingZeros(flag)]);
+        }
+        setTypedField(flag, value);
+        // Written once, and last, so that getters find the value set.
+        typedAttributes = typed | flag;
+    }
+
+    /**
+     * Stores the value of a numeric typed attribute in its field.
+     *
+     * @param flag the flag of the attribute.
+     * @param value the value of the attribute.
+     */
+    private void setTypedField(int flag, long value)
+    {
+        switch(flag)
+        {
+        case COMPONENT:
+            component = (int) value;
+            break;
+        case PRIORITY:
+            priority = value;
+            break;
+        case PORT:
+            port = (int) value;
+            break;
+        case REL_PORT:
+            relPort = (int) value;
+            break;
+        case GENERATION:
+            generation = (int) value;
+            break;
+        default:
+            network = (int) value;
+            break;
+        }
+    }
+
+    /**
+     * Renders the value of a typed attribute that is set.
+     *
+     * @param flag the flag of the attribute.
+     *
+     * @return the string value of the attribute.
+     */
+    private String typedAttributeAsString(int flag)
+    {
+        switch(flag)
+        {
+        case COMPONENT:
+            return Integer.toString(component);
+        case PRIORITY:
+            return Long.toString(priority);
+        case PORT:
+            return Integer.toString(port);
+        case TYPE:
+            return type.toString();
+        case REL_PORT:
+            return Integer.toString(relPort);
+        case GENERATION:
+            return Integer.toString(generation);
+        default:
+            return Integer.toString(network);
+        }
+    }
+
+    /**
+     * Returns the flag of the typed attribute with the specified
+     * <tt>name</tt>.
+     *
+     * @param name the name of an attribute.
+     *
+     * @return the flag of the attribute or <tt>0</tt> if it isn't kept in a
+     * typed field.
+     */
+    private static int typedAttribute(String name)
+    {
+        for(int i = 0; i < TYPED_ATTR_NAMES.length; i++)
+        {
+            if(TYPED_ATTR_NAMES[i] == name)
+                return 1 << i;
+        }
+        if(name != null)
+        {
+            for(int i = 0; i < TYPED_ATTR_NAMES.length; i++)
+            {
+                if(name.equals(TYPED_ATTR_NAMES[i]))
+                    return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Parses the string value of a typed attribute into its field.
+     *
+     * @param flag the flag of the attribute.
+     * @param value the string value of the attribute.
+     *
+     * @return <tt>true</tt> if the value parsed, <tt>false</tt> if it has to
+     * be kept as a string.
+     */
+    private boolean parseTypedAttribute(int flag, String value)
+    {
+        if(flag == TYPE)
+        {
+            CandidateType candidateType = JingleVocabulary.candidateType(value);
+
+            if(candidateType == null)
+                return false;
+            type = candidateType;
+            return true;
+        }
+
+        long number;
+
+        try
+        {
+            number = Long.parseLong(value);
+        }
+        catch(NumberFormatException e)
+        {
+            return false;
+        }
+        if(flag != PRIORITY
+                && (number < Integer.MIN_VALUE || number > Integer.MAX_VALUE))
+            return false;
+        setTypedField(flag, number);
+        return true;
+    }
+
+    /**
+     * Sets the value of an attribute, keeping the typed ones in their fields.
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value an {@link Object} whose <tt>toString()</tt> method returns
+     * the XML value of the attribute we are setting or <tt>null</tt> if we'd
+     * like to remove the attribute with the specified <tt>name</tt>.
+     */
+    @Override
+    public void setAttribute(String name, Object value)
+    {
+        int flag = typedAttribute(name);
+
+        if(flag == 0)
+        {
+            super.setAttribute(name, value);
+            return;
+        }
+        checkNotFrozen();
+        if(isThreadConfined())
+        {
+            storeAttribute(flag, name, value);
+            return;
+        }
+        synchronized(this)
+        {
+            storeAttribute(flag, name, value);
+        }
+    }
+
+    /**
+     * Stores the value of a typed attribute in its field, or as a string if
+     * it doesn't parse. Must be called while holding the lock of this
+     * candidate unless it is thread confined.
+     *
+     * @param flag the flag of the attribute.
+     * @param name the name of the attribute that we are setting.
+     * @param value the value of the attribute, or <tt>null</tt> to remove it.
+     */
+    private void storeAttribute(int flag, String name, Object value)
+    {
+        typedAttributes &= ~flag;
+        if(value != null && parseTypedAttribute(flag, value.toString()))
+        {
+            typedAttributes |= flag;
+            value = null;
+        }
+        // Keeps a value that didn't parse, or drops the one kept before.
+        super.setAttribute(name, value);
+    }
+
+    /**
+     * Removes the attribute with the specified <tt>name</tt>.
+     *
+     * @param name the name of the attribute that we are removing.
+     */
+    @Override
+    public void removeAttribute(String name)
+    {
+        checkNotFrozen();
+        if(isThreadConfined())
+        {
+            typedAttributes &= ~typedAttribute(name);
+            super.removeAttribute(name);
+            return;
+        }
+        synchronized(this)
+        {
+            typedAttributes &= ~typedAttribute(name);
+            super.removeAttribute(name);
+        }
+    }
+
+    /**
+     * Returns the string value of the attribute with the specified
+     * <tt>name</tt>, rendering the typed ones.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve.
+     *
+     * @return the String value of the specified <tt>attribute</tt> or
+     * <tt>null</tt> if no such attribute is currently registered with this
+     * extension.
+     */
+    @Override
+    public String getAttributeAsString(String attribute)
+    {
+        int flag = typedAttribute(attribute);
+
+        if(isLockFree())
+        {
+            if((typedAttributes & flag) != 0)
+                return typedAttributeAsString(flag);
+        }
+        else
+        {
+            synchronized(this)
+            {
+                if((typedAttributes & flag) != 0)
+                    return typedAttributeAsString(flag);
+            }
+        }
+        return super.getAttributeAsString(attribute);
+    }
+
+    /**
+     * Returns the <tt>int</tt> value of the attribute with the specified
+     * <tt>name</tt>, without parsing the typed ones.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve
+     * @param defaultValue the <tt>int</tt> to be returned as the value of the
+     * specified attribute if no such attribute is currently registered with
+     * this extension
+     * @return the <tt>int</tt> value of the specified <tt>attribute</tt> or
+     * <tt>defaultValue</tt> if no such attribute is currently registered with
+     * this extension
+     */
+    @Override
+    public int getAttributeAsInt(String attribute, int defaultValue)
+    {
+        int flag = typedAttribute(attribute);
+
+        if(flag != TYPE && flag != PRIORITY)
+        {
+            if(isLockFree())
+            {
+                if((typedAttributes & flag) != 0)
+                    return typedIntField(flag);
+            }
+            else
+            {
+                synchronized(this)
                 {
-                    return 1;
+                    if((typedAttributes & flag) != 0)
+                        return typedIntField(flag);
                 }
             }
         }
-        // If the types are equal.
-        return 0;
+        return super.getAttributeAsInt(attribute, defaultValue);
+    }
+
+    /**
+     * Returns the value of a typed <tt>int</tt> attribute that is set.
+     *
+     * @param flag the flag of the attribute, neither <tt>TYPE</tt> nor
+     * <tt>PRIORITY</tt>.
+     *
+     * @return the value of the attribute.
+     */
+    private int typedIntField(int flag)
+    {
+        switch(flag)
+        {
+        case COMPONENT:
+            return component;
+        case PORT:
+            return port;
+        case REL_PORT:
+            return relPort;
+        case GENERATION:
+            return generation;
+        default:
+            return network;
+        }
+    }
+
+    /**
+     * Gets the names of the attributes which currently have associated values
+     * in this extension, the typed ones first.
+     *
+     * @return the names of the attributes which currently have associated
+     * values in this extension
+     */
+    @Override
+    public List<String> getAttributeNames()
+    {
+        if(isLockFree())
+            return attributeNameList();
+        synchronized(this)
+        {
+            return attributeNameList();
+        }
+    }
+
+    /**
+     * Lists the names of the typed attributes that are set, then the others.
+     * Must be called while holding the lock of this candidate unless it is
+     * lock free.
+     *
+     * @return a new list of the names of the attributes.
+     */
+    private List<String> attributeNameList()
+    {
+        List<String> names = super.getAttributeNames();
+        int typed = typedAttributes;
+
+        for(int i = TYPED_ATTR_NAMES.length - 1; i >= 0; i--)
+        {
+            if((typed & (1 << i)) != 0)
+                names.add(0, TYPED_ATTR_NAMES[i]);
+        }
+        return names;
+    }
+
+    /**
+     * Appends the typed attributes of this candidate, then the others.
+     *
+     * @param bldr the builder of the XML representation of this extension.
+     */
+    @Override
+    protected void appendAttributes(StringBuilder bldr)
+    {
+        if(isLockFree())
+        {
+            appendTypedAttributes(bldr);
+            super.appendAttributes(bldr);
+            return;
+        }
+        synchronized(this)
+        {
+            appendTypedAttributes(bldr);
+            super.appendAttributes(bldr);
+        }
+    }
+
+    /**
+     * Appends the typed attributes of this candidate that are set. Must be
+     * called while holding the lock of this candidate unless it is lock
+     * free.
+     *
+     * @param bldr the builder of the XML representation of this extension.
+     */
+    private void appendTypedAttributes(StringBuilder bldr)
+    {
+        int typed = typedAttributes;
+
+        for(int i = 0; i < TYPED_ATTR_NAMES.length; i++)
+        {
+            if((typed & (1 << i)) != 0)
+            {
+                bldr.append(" ")
+                        .append(TYPED_ATTR_NAMES[i])
+                            .append("='")
+                                .append(typedAttributeAsString(1 << i))
+                                    .append("'");
+            }
+        }
+    }
+
+    /**
+     * Copies the attributes of this candidate, the typed ones included, and
+     * its cached rendering to a new copy of it.
+     *
+     * @param copy the copy of this candidate.
+     */
+    @Override
+    protected void copyAttributesTo(AbstractPacketExtension copy)
+    {
+        CandidatePacketExtension candidate = (CandidatePacketExtension) copy;
+
+        if(isLockFree())
+        {
+            copyTypedAttributesTo(candidate);
+            super.copyAttributesTo(copy);
+            return;
+        }
+        synchronized(this)
+        {
+            copyTypedAttributesTo(candidate);
+            super.copyAttributesTo(copy);
+        }
+    }
+
+    /**
+     * Copies the typed attributes of this candidate and its cached rendering,
+     * which is valid for the copy too, to a new copy of it. Must be called while holding the lock of this
+     * candidate unless it is lock free.
+     *
+     * @param candidate the copy of this candidate.
+     */
+    private void copyTypedAttributesTo(CandidatePacketExtension candidate)
+    {
+        candidate.component = component;
+        candidate.priority = priority;
+        candidate.port = port;
+        candidate.type = type;
+        candidate.relPort = relPort;
+        candidate.generation = generation;
+        candidate.network = network;
+        candidate.typedAttributes = typedAttributes;
+        candidate.attributeStamp = attributeStamp;
+        candidate.cachedLine = cachedLine;
+    }
+
+    /**
+     * Creates an empty candidate, for copies.
+     *
+     * @return a new <tt>CandidatePacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new CandidatePacketExtension();
+    }
+
+    /**
+     * Returns the rendering of this candidate by <tt>renderer</tt>, such as
+     * its SDP line, and keeps it until one of the attributes of this
+     * candidate changes. Rendering the candidate again with the same
+     * <tt>renderer</tt> then returns the same line without calling it.
+     * <p>
+     * Only the last rendering is kept, and only for the renderer that
+     * produced it. A line is kept only if no attribute changed while it was
+     * rendered, and never in a frozen candidate, which isn't modified, but
+     * whose rendering cached before it was frozen remains in use.
+     *
+     * @param renderer renders this candidate when its line isn't cached.
+     *
+     * @return the rendering of this candidate by <tt>renderer</tt>.
+     */
+    public String getLine(LineRenderer renderer)
+    {
+        // Read before rendering, so that a change made during rendering
+        // leaves the line stale.
+        int stamp = attributeStamp;
+        CachedLine cached = cachedLine;
+
+        if((cached != null)
+                && (cached.renderer == renderer)
+                && (cached.stamp == stamp))
+            return cached.line;
+
+        String line = renderer.render(this);
+
+        if(!isFrozen() && (attributeStamp == stamp))
+        {
+            // Loses to a concurrent rendering rather than replacing it.
+            CACHED_LINE.compareAndSet(
+                    this,
+                    cached,
+                    new CachedLine(renderer, stamp, line));
+        }
+        return line;
+    }
+
+    /**
+     * Makes the cached rendering of this candidate stale, and its structural
+     * hash code too.
+     */
+    @Override
+    protected void attributesChanged()
+    {
+        if(isThreadConfined())
+            attributeStamp++;
+        else
+            ATTRIBUTE_STAMP.incrementAndGet(this);
+        super.attributesChanged();
+    }
+
+    /**
+     * Compares this instance with another CandidatePacketExtension by
+     * preference of type: host < local < prflx < srflx < stun < relay.
+     *
+     * @return 0 if the type are equal. -1 if this instance type is preferred.
+     * Otherwise 1.
+     */
+    public int compareTo(CandidatePacketExtension candidatePacketExtension)
+    {
+        int preference = typePreference(this.getType());
+        int otherPreference
+            = typePreference(candidatePacketExtension.getType());
+
+        if(preference == otherPreference)
+            return 0;
+        return (preference < otherPreference) ? -1 : 1;
+    }
+
+    /**
+     * Returns the preference of a candidate type, lower values being
+     * preferred. Candidates without a type come last.
+     *
+     * @param type a candidate type or <tt>null</tt>.
+     *
+     * @return the preference of the type.
+     */
+    private static int typePreference(CandidateType type)
+    {
+        return (type == null)
+            ? TYPE_PREFERENCES.length
+            : TYPE_PREFERENCES[type.ordinal()];
     }
 }
@@ -59,4 +59,29 @@ public enum CandidateType
      * Old name for Host Candidate used by Google Talk.
      */
     local;
+
+    /**
+     * Returns a <tt>CandidateType</tt> value corresponding to the specified
+     * <tt>candidateTypeStr</tt> or in other words {@link #host} for "host" or
+     * {@link #relay} for "relay".
+     *
+     * @param candidateTypeStr the candidate type <tt>String</tt> that we'd
+     * like to parse.
+     * @return a <tt>CandidateType</tt> value corresponding to the specified
+     * <tt>candidateTypeStr</tt>.
+     *
+     * @throws IllegalArgumentException in case <tt>candidateTypeStr</tt> is
+     * not a valid candidate type.
+     */
+    public static CandidateType parseString(String candidateTypeStr)
+        throws IllegalArgumentException
+    {
+        CandidateType value = JingleVocabulary.candidateType(candidateTypeStr);
+
+        if (value != null)
+            return value;
+
+        throw new IllegalArgumentException(
+            candidateTypeStr + " is not a valid candidate type");
+    }
 }
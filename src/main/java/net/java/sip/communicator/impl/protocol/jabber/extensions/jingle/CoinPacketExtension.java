@@ -51,4 +51,15 @@ public class CoinPacketExtension
         super(NAMESPACE, ELEMENT_NAME);
         setAttribute(ISFOCUS_ATTR_NAME, isFocus);
     }
+
+    /**
+     * Creates an empty <tt>conference-info</tt> element, for copies.
+     *
+     * @return a new <tt>CoinPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new CoinPacketExtension();
+    }
 }
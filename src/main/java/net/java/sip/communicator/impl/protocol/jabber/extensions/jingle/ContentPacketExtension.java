@@ -274,4 +274,15 @@ public class ContentPacketExtension extends AbstractPacketExtension
     {
         setAttribute(SENDERS_ATTR_NAME, senders.toString());
     }
+
+    /**
+     * Creates an empty content, for copies.
+     *
+     * @return a new <tt>ContentPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new ContentPacketExtension();
+    }
 }
@@ -6,6 +6,8 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber.extensions.jingle;
 
+import java.util.*;
+
 import ch.imvs.sdes4j.srtp.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
@@ -18,7 +20,7 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
  * @author Vincent Lucas
  */
 public class CryptoPacketExtension
-    extends AbstractPacketExtension
+    extends AbstractLeafPacketExtension
 {
     /**
      * The name of the "crypto" element.
@@ -320,4 +322,34 @@ public class CryptoPacketExtension
         }
         return false;
     }
+
+    /**
+     * Returns a hash code of the fields that {@link #equals(Object)}
+     * compares: crypto-suite, key-params, session-params and tag.
+     *
+     * @return the hash code of this <tt>crypto</tt> element.
+     */
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(
+                new Object[]
+                {
+                    getCryptoSuite(),
+                    getKeyParams(),
+                    getSessionParams(),
+                    getTag()
+                });
+    }
+
+    /**
+     * Creates an empty <tt>crypto</tt> element, for copies.
+     *
+     * @return a new <tt>CryptoPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new CryptoPacketExtension();
+    }
 }
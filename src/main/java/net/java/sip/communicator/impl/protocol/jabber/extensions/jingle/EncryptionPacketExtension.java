@@ -42,8 +42,7 @@ public class EncryptionPacketExtension
      * The list of <tt>crypto</tt> elements transported by this
      * <tt>encryption</tt> element.
      */
-    private List<CryptoPacketExtension> cryptoList
-                            = new ArrayList<CryptoPacketExtension>();
+    private List<CryptoPacketExtension> cryptoList = newChildList(0);
 
     /**
      * Creates a new instance of this <tt>EncryptionPacketExtension</tt>.
@@ -60,6 +59,7 @@ public class EncryptionPacketExtension
      */
     public void addCrypto(CryptoPacketExtension crypto)
     {
+        checkNotFrozen();
         if(!cryptoList.contains(crypto))
         {
             cryptoList.add(crypto);
@@ -68,7 +68,8 @@ public class EncryptionPacketExtension
 
     /**
      * Returns a <b>reference</b> to the list of <tt>crypto</tt> elements that
-     * we have registered with this encryption element so far.
+     * we have registered with this encryption element so far, which is
+     * read-only once this element is frozen.
      *
      * @return  a <b>reference</b> to the list of <tt>crypto</tt> elements that
      * we have registered with this encryption element so far.
@@ -120,6 +121,27 @@ public class EncryptionPacketExtension
         return ret;
     }
 
+    /**
+     * Returns the children of this element followed by the <tt>crypto</tt>
+     * elements added with {@link #addCrypto(CryptoPacketExtension)} only, so
+     * that they are part of its structure too.
+     *
+     * @return the children and the <tt>crypto</tt> elements of this element.
+     */
+    @Override
+    protected List<? extends PacketExtension> getStructureChildren()
+    {
+        List<PacketExtension> children
+            = new ArrayList<PacketExtension>(super.getChildExtensions());
+
+        for(CryptoPacketExtension crypto : cryptoList)
+        {
+            if(!containsInstance(children, crypto))
+                children.add(crypto);
+        }
+        return children;
+    }
+
     /**
      * Adds the specified <tt>childExtension</tt> to the list of extensions
      * registered with this packet.
@@ -139,4 +161,74 @@ public class EncryptionPacketExtension
             this.addCrypto(((CryptoPacketExtension) childExtension));
         }
     }
+
+    /**
+     * Makes this element and its <tt>crypto</tt> elements immutable,
+     * including those added with {@link #addCrypto(CryptoPacketExtension)}
+     * only.
+     */
+    @Override
+    public void freeze()
+    {
+        if(isFrozen())
+            return;
+        for(CryptoPacketExtension crypto : cryptoList)
+            crypto.freeze();
+        cryptoList = Collections.unmodifiableList(
+                new ArrayList<CryptoPacketExtension>(cryptoList));
+        super.freeze();
+    }
+
+    /**
+     * Confines this element and its <tt>crypto</tt> elements to the current
+     * thread, or publishes them.
+     *
+     * @param threadConfined <tt>true</tt> to confine this element to the
+     * current thread, <tt>false</tt> to publish it.
+     */
+    @Override
+    public void setThreadConfined(boolean threadConfined)
+    {
+        if(!isFrozen())
+        {
+            for(CryptoPacketExtension crypto : cryptoList)
+                crypto.setThreadConfined(threadConfined);
+        }
+        super.setThreadConfined(threadConfined);
+    }
+
+    /**
+     * Adds the children and the <tt>crypto</tt> elements of this element, or
+     * copies of them, to a copy of it. The <tt>crypto</tt> elements that are
+     * children too are added by the copy of the children.
+     *
+     * @param copy the copy of this element.
+     * @param deep whether the children have to be copied.
+     */
+    @Override
+    protected void copyChildrenTo(AbstractPacketExtension copy, boolean deep)
+    {
+        super.copyChildrenTo(copy, deep);
+
+        List<? extends PacketExtension> children = super.getChildExtensions();
+        List<CryptoPacketExtension> copyCryptoList
+            = ((EncryptionPacketExtension) copy).cryptoList;
+
+        for(CryptoPacketExtension crypto : cryptoList)
+        {
+            if(!containsInstance(children, crypto))
+                copyCryptoList.add(copyOf(crypto, deep));
+        }
+    }
+
+    /**
+     * Creates an empty encryption element, for copies.
+     *
+     * @return a new <tt>EncryptionPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new EncryptionPacketExtension();
+    }
 }
@@ -46,8 +46,8 @@ public class IceUdpTransportPacketExtension extends AbstractPacketExtension
      * higher-priority transport candidates as determined in accordance with
      * the ICE methodology.
      */
-    private final List<CandidatePacketExtension> candidateList
-        = new ArrayList<CandidatePacketExtension>();
+    private final ArrayList<CandidatePacketExtension> candidateList
+        = newChildList(0);
 
     /**
      * Once the parties have connectivity and therefore the initiator has
@@ -57,6 +57,12 @@ public class IceUdpTransportPacketExtension extends AbstractPacketExtension
      */
     private RemoteCandidatePacketExtension remoteCandidate;
 
+    /**
+     * A read-only view of {@link #candidateList}, created when this transport
+     * is frozen.
+     */
+    private List<CandidatePacketExtension> readOnlyCandidates;
+
     /**
      * Creates a new {@link IceUdpTransportPacketExtension} instance.
      */
@@ -128,21 +134,32 @@ public class IceUdpTransportPacketExtension extends AbstractPacketExtension
     @Override
     public List<? extends PacketExtension> getChildExtensions()
     {
-        synchronized (candidateList)
+        if(isFrozen())
+        {
+            if(readOnlyCandidates.size() > 0)
+                return readOnlyCandidates;
+        }
+        else if(isThreadConfined())
         {
             if(candidateList.size() > 0)
-            {
                 return candidateList;
-            }
-            else if (remoteCandidate != null)
+        }
+        else
+        {
+            synchronized (candidateList)
             {
-                List<RemoteCandidatePacketExtension> list
-                    = new ArrayList<RemoteCandidatePacketExtension>();
-                list.add(remoteCandidate);
-
-                return list;
+                if(candidateList.size() > 0)
+                    return candidateList;
             }
         }
+        if (remoteCandidate != null)
+        {
+            List<RemoteCandidatePacketExtension> list
+                = new ArrayList<RemoteCandidatePacketExtension>();
+            list.add(remoteCandidate);
+
+            return list;
+        }
 
         //there are apparently no child elements.
         return null;
@@ -157,6 +174,12 @@ public class IceUdpTransportPacketExtension extends AbstractPacketExtension
      */
     public void addCandidate(CandidatePacketExtension candidate)
     {
+        checkNotFrozen();
+        if(isThreadConfined())
+        {
+            candidateList.add(candidate);
+            return;
+        }
         synchronized(candidateList)
         {
             candidateList.add(candidate);
@@ -174,6 +197,9 @@ public class IceUdpTransportPacketExtension extends AbstractPacketExtension
      */
     public boolean removeCandidate(CandidatePacketExtension candidate)
     {
+        checkNotFrozen();
+        if(isThreadConfined())
+            return candidateList.remove(candidate);
         synchronized (candidateList)
         {
             return candidateList.remove(candidate);
@@ -189,12 +215,48 @@ public class IceUdpTransportPacketExtension extends AbstractPacketExtension
      */
     public List<CandidatePacketExtension> getCandidateList()
     {
+        if(isLockFree())
+            return new ArrayList<CandidatePacketExtension>(this.candidateList);
         synchronized(candidateList)
         {
             return new ArrayList<CandidatePacketExtension>(this.candidateList);
         }
     }
 
+    /**
+     * Returns the number of local candidates in this transport, without
+     * copying the candidate list like {@link #getCandidateList()} does.
+     *
+     * @return the number of local candidates in this transport.
+     */
+    public int getCandidateCount()
+    {
+        if(isLockFree())
+            return candidateList.size();
+        synchronized(candidateList)
+        {
+            return candidateList.size();
+        }
+    }
+
+    /**
+     * Returns the local candidate at <tt>index</tt>, without copying the
+     * candidate list like {@link #getCandidateList()} does.
+     *
+     * @param index the position of the candidate, between 0 and
+     * {@link #getCandidateCount()} - 1.
+     * @return the local candidate at <tt>index</tt>.
+     */
+    public CandidatePacketExtension getCandidate(int index)
+    {
+        if(isLockFree())
+            return candidateList.get(index);
+        synchronized(candidateList)
+        {
+            return candidateList.get(index);
+        }
+    }
+
     /**
      * Sets <tt>candidate</tt> as the in-use candidate after ICE has terminated.
      *
@@ -203,7 +265,9 @@ public class IceUdpTransportPacketExtension extends AbstractPacketExtension
      */
     public void setRemoteCandidate(RemoteCandidatePacketExtension candidate)
     {
+        checkNotFrozen();
         this.remoteCandidate = candidate;
+        childChanged(candidate);
     }
 
     /**
@@ -233,4 +297,97 @@ public class IceUdpTransportPacketExtension extends AbstractPacketExtension
         else if(childExtension instanceof CandidatePacketExtension)
             addCandidate((CandidatePacketExtension) childExtension);
     }
+
+    /**
+     * Makes this transport, its candidates and its in-use candidate
+     * immutable.
+     */
+    @Override
+    public void freeze()
+    {
+        if(isFrozen())
+            return;
+        synchronized(candidateList)
+        {
+            readOnlyCandidates = Collections.unmodifiableList(candidateList);
+        }
+        if(remoteCandidate != null)
+            remoteCandidate.freeze();
+        super.freeze();
+    }
+
+    /**
+     * Confines this transport, its candidates and its in-use candidate to
+     * the current thread, or publishes them.
+     *
+     * @param threadConfined <tt>true</tt> to confine this transport to the
+     * current thread, <tt>false</tt> to publish it.
+     */
+    @Override
+    public void setThreadConfined(boolean threadConfined)
+    {
+        RemoteCandidatePacketExtension remoteCandidate = this.remoteCandidate;
+
+        if(remoteCandidate != null)
+            remoteCandidate.setThreadConfined(threadConfined);
+        super.setThreadConfined(threadConfined);
+    }
+
+    /**
+     * Adds the candidates and the in-use candidate of this transport, or
+     * copies of them, to a copy of it.
+     *
+     * @param copy the copy of this transport.
+     * @param deep whether the candidates have to be copied.
+     */
+    @Override
+    protected void copyChildrenTo(AbstractPacketExtension copy, boolean deep)
+    {
+        IceUdpTransportPacketExtension transport
+            = (IceUdpTransportPacketExtension) copy;
+
+        if(isLockFree())
+        {
+            copyCandidatesTo(transport, deep);
+        }
+        else
+        {
+            synchronized(candidateList)
+            {
+                copyCandidatesTo(transport, deep);
+            }
+        }
+        transport.remoteCandidate = copyOf(remoteCandidate, deep);
+        transport.childChanged(transport.remoteCandidate);
+    }
+
+    /**
+     * Adds the candidates of this transport, or copies of them, to a copy of
+     * it. Must be called while holding the lock of <tt>candidateList</tt>
+     * unless this transport is lock free.
+     *
+     * @param transport the copy of this transport.
+     * @param deep whether the candidates have to be copied.
+     */
+    private void copyCandidatesTo(
+            IceUdpTransportPacketExtension transport,
+            boolean deep)
+    {
+        int candidateCount = candidateList.size();
+
+        transport.candidateList.ensureCapacity(candidateCount);
+        for(int i = 0; i < candidateCount; i++)
+            transport.candidateList.add(copyOf(candidateList.get(i), deep));
+    }
+
+    /**
+     * Creates an empty ICE-UDP transport, for copies.
+     *
+     * @return a new <tt>IceUdpTransportPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new IceUdpTransportPacketExtension();
+    }
 }
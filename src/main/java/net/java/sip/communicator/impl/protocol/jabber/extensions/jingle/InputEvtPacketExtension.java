@@ -34,4 +34,15 @@ public class InputEvtPacketExtension extends AbstractPacketExtension
     {
         super(NAMESPACE, ELEMENT_NAME);
     }
+
+    /**
+     * Creates an empty <tt>inputevt</tt> element, for copies.
+     *
+     * @return a new <tt>InputEvtPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new InputEvtPacketExtension();
+    }
 }
@@ -201,9 +201,10 @@ public enum JingleAction
     public static JingleAction parseString(String jingleActionStr)
         throws IllegalArgumentException
     {
-        for (JingleAction value : values())
-            if (value.toString().equals(jingleActionStr))
-                return value;
+        JingleAction value = JingleVocabulary.action(jingleActionStr);
+
+        if (value != null)
+            return value;
 
         throw new IllegalArgumentException(
             jingleActionStr + " is not a valid jingle action");
@@ -10,6 +10,8 @@ import java.math.*;
 import java.security.*;
 import java.util.*;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+
 import org.jivesoftware.smack.packet.*;
 
 /**
@@ -95,6 +97,13 @@ public class JingleIQ extends IQ
     private final List<ContentPacketExtension> contentList
                                 = new ArrayList<ContentPacketExtension>();
 
+    /**
+     * Whether this IQ is confined to the thread that builds it and accesses
+     * its content list without locking. See
+     * {@link #setThreadConfined(boolean)}.
+     */
+    private volatile boolean confined;
+
     /**
      * Returns the XML string of this Jingle IQ's "section" sub-element.
      *
@@ -314,6 +323,11 @@ public class JingleIQ extends IQ
      */
     public void addContent(ContentPacketExtension contentPacket)
     {
+        if(confined)
+        {
+            this.contentList.add(contentPacket);
+            return;
+        }
         synchronized(contentList)
         {
             this.contentList.add(contentPacket);
@@ -357,20 +371,75 @@ public class JingleIQ extends IQ
     public ContentPacketExtension getContentForType(
                         Class<? extends PacketExtension> contentType)
     {
+        if(confined)
+            return contentForType(contentType);
         synchronized(contentList)
         {
-            for(ContentPacketExtension content : contentList)
-            {
-                PacketExtension child
-                                  = content.getFirstChildOfType(contentType);
-                if(child != null)
-                    return content;
-            }
+            return contentForType(contentType);
         }
+    }
 
+    /**
+     * Returns the first content with a child matching <tt>contentType</tt>.
+     * Must be called while holding the lock of <tt>contentList</tt> unless
+     * this IQ is thread confined.
+     *
+     * @param contentType the type of the content child we are looking for.
+     *
+     * @return the content that has a child of the specified
+     * <tt>contentType</tt> or <tt>null</tt> if no such child was found.
+     */
+    private ContentPacketExtension contentForType(
+                        Class<? extends PacketExtension> contentType)
+    {
+        for(ContentPacketExtension content : contentList)
+        {
+            PacketExtension child = content.getFirstChildOfType(contentType);
+
+            if(child != null)
+                return content;
+        }
         return null;
     }
 
+    /**
+     * Confines this IQ and its contents to the current thread, or publishes
+     * them to all threads. A confined IQ and its contents are built and read
+     * without locking, and must not be accessed by any other thread until
+     * the thread they are confined to publishes them. See
+     * {@link AbstractPacketExtension#setThreadConfined(boolean)}.
+     *
+     * @param threadConfined <tt>true</tt> to confine this IQ to the current
+     * thread, <tt>false</tt> to publish it.
+     */
+    public void setThreadConfined(boolean threadConfined)
+    {
+        for(ContentPacketExtension content : contentList)
+            content.setThreadConfined(threadConfined);
+        // Written last: reading it makes the contents visible.
+        confined = threadConfined;
+    }
+
+    /**
+     * Publishes this IQ and its contents after building them confined to the
+     * current thread, so that any thread can use them. Same as
+     * <tt>setThreadConfined(false)</tt>.
+     */
+    public void publish()
+    {
+        setThreadConfined(false);
+    }
+
+    /**
+     * Determines whether this IQ is confined to the thread that builds it.
+     *
+     * @return <tt>true</tt> if this IQ is thread confined.
+     */
+    public boolean isThreadConfined()
+    {
+        return confined;
+    }
+
     /**
      * Sets <tt>si</tt> as the session info extension for this packet.
      *
@@ -393,4 +462,203 @@ public class JingleIQ extends IQ
     {
         return this.sessionInfo;
     }
+
+    /**
+     * Returns a hash code of the structure of this IQ that is consistent with
+     * {@link #structurallyEquals(JingleIQ)}: it covers the session ID, the
+     * action, the initiator, the responder, the reason, the session info and
+     * the contents in order, but not the addresses, type or packet ID of the
+     * IQ. The contents and the session info contribute their
+     * {@link AbstractPacketExtension#structuralHashCode()}, which they cache.
+     *
+     * @return the structural hash code of this IQ.
+     */
+    public int structuralHashCode()
+    {
+        int hash = hashCodeOf(sid);
+
+        hash = 31 * hash + hashCodeOf(action);
+        hash = 31 * hash + hashCodeOf(initiator);
+        hash = 31 * hash + hashCodeOf(responder);
+        hash = 31 * hash + reasonHashCode(reason);
+        hash = 31 * hash + extensionHashCode(sessionInfo);
+        for (ContentPacketExtension content : contentArray())
+            hash = 31 * hash + extensionHashCode(content);
+        return hash;
+    }
+
+    /**
+     * Determines whether this IQ has the same structure as <tt>other</tt>:
+     * the same session ID, action, initiator, responder and reason, and
+     * structurally equal session info and contents in the same order. The
+     * addresses, type and packet ID of the IQs aren't compared. Unlike
+     * <tt>equals(Object)</tt>, which stays that of the identity, this is
+     * meant for caches of stanzas that are rebuilt rather than reused.
+     *
+     * @param other the IQ to compare this one with, or <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if <tt>other</tt> has the same structure as this
+     * IQ.
+     */
+    public boolean structurallyEquals(JingleIQ other)
+    {
+        if (other == this)
+            return true;
+        if ((other == null)
+                || (action != other.action)
+                || !equal(sid, other.sid)
+                || !equal(initiator, other.initiator)
+                || !equal(responder, other.responder)
+                || !reasonEquals(reason, other.reason)
+                || !extensionEquals(sessionInfo, other.sessionInfo))
+            return false;
+
+        ContentPacketExtension[] contents = contentArray();
+        ContentPacketExtension[] otherContents = other.contentArray();
+
+        if (contents.length != otherContents.length)
+            return false;
+        for (int i = 0; i < contents.length; i++)
+        {
+            if (!extensionEquals(contents[i], otherContents[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the contents of this IQ as an array, taken while holding the
+     * lock of <tt>contentList</tt> unless this IQ is thread confined, so that
+     * two IQs are compared without holding both locks.
+     *
+     * @return the contents of this IQ.
+     */
+    private ContentPacketExtension[] contentArray()
+    {
+        if (confined)
+        {
+            return contentList.toArray(
+                    new ContentPacketExtension[contentList.size()]);
+        }
+        synchronized (contentList)
+        {
+            return contentList.toArray(
+                    new ContentPacketExtension[contentList.size()]);
+        }
+    }
+
+    /**
+     * Returns the structural hash code of a <tt>reason</tt> extension, which
+     * isn't an {@link AbstractPacketExtension}: that of its reason, text and
+     * other extension.
+     *
+     * @param reason a <tt>reason</tt> extension or <tt>null</tt>.
+     *
+     * @return the structural hash code of <tt>reason</tt>.
+     */
+    private static int reasonHashCode(ReasonPacketExtension reason)
+    {
+        if (reason == null)
+            return 0;
+
+        int hash = hashCodeOf(reason.getReason());
+
+        hash = 31 * hash + hashCodeOf(reason.getText());
+        return 31 * hash + extensionHashCode(reason.getOtherExtension());
+    }
+
+    /**
+     * Determines whether two <tt>reason</tt> extensions have the same reason,
+     * text and other extension.
+     *
+     * @param a a <tt>reason</tt> extension or <tt>null</tt>.
+     * @param b a <tt>reason</tt> extension or <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if <tt>a</tt> and <tt>b</tt> are structurally
+     * equal.
+     */
+    private static boolean reasonEquals(
+            ReasonPacketExtension a,
+            ReasonPacketExtension b)
+    {
+        if (a == b)
+            return true;
+        if ((a == null) || (b == null))
+            return false;
+        return (a.getReason() == b.getReason())
+            && equal(a.getText(), b.getText())
+            && extensionEquals(a.getOtherExtension(), b.getOtherExtension());
+    }
+
+    /**
+     * Returns the structural hash code of an extension, or the hash code of
+     * its XML if it isn't an {@link AbstractPacketExtension}.
+     *
+     * @param extension an extension or <tt>null</tt>.
+     *
+     * @return the structural hash code of <tt>extension</tt>.
+     */
+    private static int extensionHashCode(PacketExtension extension)
+    {
+        if (extension == null)
+            return 0;
+        if (extension instanceof AbstractPacketExtension)
+        {
+            return ((AbstractPacketExtension) extension)
+                .structuralHashCode();
+        }
+        return extension.toXML().hashCode();
+    }
+
+    /**
+     * Determines whether two extensions have the same structure. Extensions
+     * that aren't {@link AbstractPacketExtension}s are compared by their XML.
+     *
+     * @param a an extension or <tt>null</tt>.
+     * @param b an extension or <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if <tt>a</tt> and <tt>b</tt> are structurally
+     * equal.
+     */
+    private static boolean extensionEquals(PacketExtension a, PacketExtension b)
+    {
+        if (a == b)
+            return true;
+        if ((a == null) || (b == null))
+            return false;
+        if ((a instanceof AbstractPacketExtension)
+                && (b instanceof AbstractPacketExtension))
+        {
+            return ((AbstractPacketExtension) a).structurallyEquals(
+                    (AbstractPacketExtension) b);
+        }
+        return a.toXML().equals(b.toXML());
+    }
+
+    /**
+     * Returns the hash code of the string form of <tt>obj</tt>, which unlike
+     * the hash code of an enum is the same in every JVM, or <tt>0</tt> for
+     * <tt>null</tt>.
+     *
+     * @param obj an object or <tt>null</tt>.
+     *
+     * @return the hash code of <tt>obj</tt>.
+     */
+    private static int hashCodeOf(Object obj)
+    {
+        return (obj == null) ? 0 : obj.toString().hashCode();
+    }
+
+    /**
+     * Determines whether two strings are equal or both <tt>null</tt>.
+     *
+     * @param a a string or <tt>null</tt>.
+     * @param b a string or <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if <tt>a</tt> and <tt>b</tt> are equal.
+     */
+    private static boolean equal(String a, String b)
+    {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
 }
@@ -19,6 +19,13 @@ import org.xmlpull.v1.*;
  */
 public class JingleIQProvider implements IQProvider
 {
+    static
+    {
+        // Interns the names of the first stanza parsed, and of the extensions
+        // parsed by the providers registered below, too.
+        JingleVocabulary.load();
+    }
+
     /**
      * Creates a new instance of the <tt>JingleIQProvider</tt> and register all
      * jingle related extension providers. It is the responsibility of the
@@ -239,8 +246,8 @@ public class JingleIQProvider implements IQProvider
         while (!done)
         {
             eventType = parser.next();
-            elementName = parser.getName();
-            namespace = parser.getNamespace();
+            elementName = JingleVocabulary.intern(parser.getName());
+            namespace = JingleVocabulary.intern(parser.getNamespace());
 
             if (eventType == XmlPullParser.START_TAG)
             {
@@ -261,7 +268,7 @@ public class JingleIQProvider implements IQProvider
                 // <transfer/>
                 else if (elementName.equals(
                                 TransferPacketExtension.ELEMENT_NAME)
-                        && namespace.equals(TransferPacketExtension.NAMESPACE))
+                        && TransferPacketExtension.NAMESPACE.equals(namespace))
                 {
                     jingleIQ.addExtension(
                             transferProvider.parseExtension(parser));
@@ -272,9 +279,10 @@ public class JingleIQProvider implements IQProvider
                 }
 
                 //<mute/> <active/> and other session-info elements
-                if (namespace.equals( SessionInfoPacketExtension.NAMESPACE))
+                if (SessionInfoPacketExtension.NAMESPACE.equals(namespace))
                 {
-                    SessionInfoType type = SessionInfoType.valueOf(elementName);
+                    SessionInfoType type
+                        = SessionInfoType.parseString(elementName);
 
                     //<mute/>
                     if( type == SessionInfoType.mute
@@ -297,7 +305,7 @@ public class JingleIQProvider implements IQProvider
             }
 
             if ((eventType == XmlPullParser.END_TAG)
-                    && parser.getName().equals(JingleIQ.ELEMENT_NAME))
+                    && JingleIQ.ELEMENT_NAME.equals(elementName))
             {
                     done = true;
             }
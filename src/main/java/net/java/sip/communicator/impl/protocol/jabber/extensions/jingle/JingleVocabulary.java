@@ -0,0 +1,228 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions.jingle;
+
+import java.util.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+
+/**
+ * The vocabulary of Jingle, RTP and ICE: the element names, attribute names
+ * and namespaces of the packet extensions in this package, and the tokens of
+ * the enumerations their values are parsed into.
+ * <p>
+ * Loading this class adds the tokens to the {@link Vocabulary} that parsers
+ * intern names and values with; {@link JingleIQProvider} loads it when it is
+ * loaded itself, before the first stanza is parsed. The enumerations are
+ * resolved with one hash lookup instead of a scan of their values or an
+ * exception for unknown tokens.
+ * <p>
+ * The tables are built once, when the class is loaded, and never change, so
+ * they are read without locking.
+ */
+public final class JingleVocabulary
+{
+    /**
+     * The packet extensions whose element name, attribute name and namespace
+     * constants are part of the vocabulary.
+     */
+    private static final Class<?>[] EXTENSIONS = {
+        JingleIQ.class,
+        ContentPacketExtension.class,
+        RtpDescriptionPacketExtension.class,
+        PayloadTypePacketExtension.class,
+        ParameterPacketExtension.class,
+        BandwidthPacketExtension.class,
+        RTPHdrExtPacketExtension.class,
+        EncryptionPacketExtension.class,
+        CryptoPacketExtension.class,
+        ZrtpHashPacketExtension.class,
+        RtcpMuxExtension.class,
+        IceUdpTransportPacketExtension.class,
+        RawUdpTransportPacketExtension.class,
+        CandidatePacketExtension.class,
+        RemoteCandidatePacketExtension.class,
+        StreamsPacketExtension.class,
+        StreamPacketExtension.class,
+        SsrcPacketExtension.class,
+        ReasonPacketExtension.class,
+        RedirectPacketExtension.class,
+        SessionInfoPacketExtension.class,
+        MuteSessionInfoPacketExtension.class,
+        TransferPacketExtension.class,
+        TransferredPacketExtension.class,
+        CoinPacketExtension.class,
+        InputEvtPacketExtension.class
+    };
+
+    /**
+     * Enumerated attribute values of the protocol that have no enumeration of
+     * their own.
+     */
+    private static final String[] VALUES = {
+        "udp", "tcp", "audio", "video", "data", "rtp", "active", "passive", "so"
+    };
+
+    /**
+     * The Jingle actions, by their <tt>action</tt> attribute value.
+     */
+    private static final Map<String, JingleAction> ACTIONS
+        = enumeration(JingleAction.values());
+
+    /**
+     * The reasons, by their element name.
+     */
+    private static final Map<String, Reason> REASONS
+        = enumeration(Reason.values());
+
+    /**
+     * The session-info types, by their element name.
+     */
+    private static final Map<String, SessionInfoType> SESSION_INFO_TYPES
+        = enumeration(SessionInfoType.values());
+
+    /**
+     * The ICE candidate types, by their <tt>type</tt> attribute value.
+     */
+    private static final Map<String, CandidateType> CANDIDATE_TYPES
+        = enumeration(CandidateType.values());
+
+    static
+    {
+        List<String> values = new ArrayList<String>(128);
+
+        addTokens(values, JingleAction.values());
+        addTokens(values, Reason.values());
+        addTokens(values, SessionInfoType.values());
+        addTokens(values, CandidateType.values());
+        addTokens(values, ContentPacketExtension.CreatorEnum.values());
+        addTokens(values, ContentPacketExtension.SendersEnum.values());
+        values.addAll(Arrays.asList(VALUES));
+
+        // Reasons and session-info types are element names too.
+        List<String> names = new ArrayList<String>(values);
+
+        for (Class<?> extension : EXTENSIONS)
+            names.addAll(Vocabulary.constantsOf(extension));
+        Vocabulary.addNames(names);
+        Vocabulary.addValues(values);
+    }
+
+    /**
+     * This class only has static members.
+     */
+    private JingleVocabulary()
+    {
+    }
+
+    /**
+     * Makes sure that the Jingle tokens are part of the {@link Vocabulary}.
+     * Does nothing but load this class, which adds them.
+     */
+    static void load()
+    {
+    }
+
+    /**
+     * Returns the canonical instance of the name <tt>token</tt> in the
+     * {@link Vocabulary}, once the Jingle tokens are part of it.
+     *
+     * @param token an element name, attribute name or namespace, or
+     * <tt>null</tt>.
+     *
+     * @return the canonical instance of <tt>token</tt>, or <tt>token</tt> if
+     * it isn't part of the vocabulary.
+     *
+     * @see Vocabulary#intern(String)
+     */
+    public static String intern(String token)
+    {
+        return Vocabulary.intern(token);
+    }
+
+    /**
+     * Returns the Jingle action with the specified <tt>action</tt> attribute
+     * value.
+     *
+     * @param token the value of an <tt>action</tt> attribute.
+     *
+     * @return the action for <tt>token</tt> or <tt>null</tt> if it isn't one.
+     */
+    public static JingleAction action(String token)
+    {
+        return ACTIONS.get(token);
+    }
+
+    /**
+     * Returns the reason with the specified element name.
+     *
+     * @param token the name of a reason element, e.g. "success".
+     *
+     * @return the reason for <tt>token</tt> or <tt>null</tt> if it isn't one.
+     */
+    public static Reason reason(String token)
+    {
+        return REASONS.get(token);
+    }
+
+    /**
+     * Returns the session-info type with the specified element name.
+     *
+     * @param token the name of a session-info element, e.g. "ringing".
+     *
+     * @return the session-info type for <tt>token</tt> or <tt>null</tt> if it
+     * isn't one.
+     */
+    public static SessionInfoType sessionInfoType(String token)
+    {
+        return SESSION_INFO_TYPES.get(token);
+    }
+
+    /**
+     * Returns the ICE candidate type with the specified <tt>type</tt>
+     * attribute value.
+     *
+     * @param token the value of a <tt>type</tt> attribute, e.g. "host".
+     *
+     * @return the candidate type for <tt>token</tt> or <tt>null</tt> if it
+     * isn't one.
+     */
+    public static CandidateType candidateType(String token)
+    {
+        return CANDIDATE_TYPES.get(token);
+    }
+
+    /**
+     * Maps the tokens of an enumeration to its values.
+     *
+     * @param values the values of the enumeration, whose <tt>toString()</tt>
+     * is their token.
+     *
+     * @return the values of the enumeration by token.
+     */
+    private static <E extends Enum<E>> Map<String, E> enumeration(E[] values)
+    {
+        Map<String, E> map = new HashMap<String, E>(values.length * 2);
+
+        for (E value : values)
+            map.put(value.toString(), value);
+        return map;
+    }
+
+    /**
+     * Adds the tokens of an enumeration to <tt>tokens</tt>.
+     *
+     * @param tokens the list to add the tokens to.
+     * @param values the values of the enumeration, whose <tt>toString()</tt>
+     * is their token.
+     */
+    private static void addTokens(List<String> tokens, Enum<?>[] values)
+    {
+        for (Enum<?> value : values)
+            tokens.add(value.toString());
+    }
+}
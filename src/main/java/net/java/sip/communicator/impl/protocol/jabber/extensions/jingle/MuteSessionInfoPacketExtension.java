@@ -6,6 +6,8 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber.extensions.jingle;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+
 /**
  * Represents the <tt>mute</tt> and <tt>unmute</tt> session info types.
  *
@@ -58,4 +60,16 @@ public class MuteSessionInfoPacketExtension extends SessionInfoPacketExtension
     {
         return getAttributeAsString(NAME_ATTR_VALUE);
     }
+
+    /**
+     * Creates an info element of the same type, for copies. Its name is
+     * copied with the other attributes.
+     *
+     * @return a new <tt>MuteSessionInfoPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new MuteSessionInfoPacketExtension(isMute(), null);
+    }
 }
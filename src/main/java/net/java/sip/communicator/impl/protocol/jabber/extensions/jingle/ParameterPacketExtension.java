@@ -13,7 +13,7 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
  *
  * @author Emil Ivov
  */
-public class ParameterPacketExtension extends AbstractPacketExtension
+public class ParameterPacketExtension extends AbstractLeafPacketExtension
 {
     /**
      * The name of the "parameter" element.
@@ -79,4 +79,15 @@ public class ParameterPacketExtension extends AbstractPacketExtension
     {
         return super.getAttributeAsString(VALUE_ATTR_NAME);
     }
+
+    /**
+     * Creates an empty parameter, for copies.
+     *
+     * @return a new <tt>ParameterPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new ParameterPacketExtension();
+    }
 }
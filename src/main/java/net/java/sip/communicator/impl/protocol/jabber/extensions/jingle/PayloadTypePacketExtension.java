@@ -219,4 +219,15 @@ public class PayloadTypePacketExtension extends AbstractPacketExtension
     {
         return (List<ParameterPacketExtension>)super.getChildExtensions();
     }
+
+    /**
+     * Creates an empty payload type, for copies.
+     *
+     * @return a new <tt>PayloadTypePacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new PayloadTypePacketExtension();
+    }
 }
@@ -161,4 +161,14 @@ public class RTPHdrExtPacketExtension
         return null;
     }
 
+    /**
+     * Creates an empty <tt>rtp-hdrext</tt> element, for copies.
+     *
+     * @return a new <tt>RTPHdrExtPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new RTPHdrExtPacketExtension();
+    }
 }
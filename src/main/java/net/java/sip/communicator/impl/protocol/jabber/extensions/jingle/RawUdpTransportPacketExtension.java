@@ -49,4 +49,15 @@ public class RawUdpTransportPacketExtension
     {
         return getCandidateList();
     }
+
+    /**
+     * Creates an empty raw UDP transport, for copies.
+     *
+     * @return a new <tt>RawUdpTransportPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new RawUdpTransportPacketExtension();
+    }
 }
@@ -161,9 +161,10 @@ public enum Reason
     public static Reason parseString(String reasonValueStr)
         throws IllegalArgumentException
     {
-        for (Reason value : values())
-            if (value.toString().equals(reasonValueStr))
-                return value;
+        Reason value = JingleVocabulary.reason(reasonValueStr);
+
+        if (value != null)
+            return value;
 
         throw new IllegalArgumentException(
             reasonValueStr + " is not a valid reason");
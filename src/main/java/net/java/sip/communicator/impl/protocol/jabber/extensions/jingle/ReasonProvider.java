@@ -47,7 +47,7 @@ public class ReasonProvider implements PacketExtensionProvider
         while (!done)
         {
             eventType = parser.next();
-            elementName = parser.getName();
+            elementName = JingleVocabulary.intern(parser.getName());
 
             if (eventType == XmlPullParser.START_TAG)
             {
@@ -70,7 +70,7 @@ public class ReasonProvider implements PacketExtensionProvider
             }
             else if (eventType == XmlPullParser.END_TAG)
             {
-                if (parser.getName().equals(ReasonPacketExtension.ELEMENT_NAME))
+                if (ReasonPacketExtension.ELEMENT_NAME.equals(elementName))
                 {
                     done = true;
                 }
@@ -59,4 +59,28 @@ public class RedirectPacketExtension
     {
         return redir;
     }
+
+    /**
+     * Copies the text, the attributes and the redirection of this element to
+     * a copy of it.
+     *
+     * @param copy the copy of this element.
+     */
+    @Override
+    protected void copyAttributesTo(AbstractPacketExtension copy)
+    {
+        super.copyAttributesTo(copy);
+        ((RedirectPacketExtension) copy).redir = redir;
+    }
+
+    /**
+     * Creates an empty redirect element, for copies.
+     *
+     * @return a new <tt>RedirectPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new RedirectPacketExtension();
+    }
 }
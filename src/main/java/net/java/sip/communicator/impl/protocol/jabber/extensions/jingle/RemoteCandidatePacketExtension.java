@@ -6,6 +6,8 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber.extensions.jingle;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+
 /**
  * A representation of the <tt>remote-candidate</tt> ICE transport element.
  *
@@ -25,4 +27,15 @@ public class RemoteCandidatePacketExtension extends CandidatePacketExtension
     {
         super(ELEMENT_NAME);
     }
+
+    /**
+     * Creates an empty remote candidate, for copies.
+     *
+     * @return a new <tt>RemoteCandidatePacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new RemoteCandidatePacketExtension();
+    }
 }
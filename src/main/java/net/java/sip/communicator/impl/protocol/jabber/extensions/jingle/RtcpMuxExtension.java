@@ -1,15 +1,14 @@
 package net.java.sip.communicator.impl.protocol.jabber.extensions.jingle;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.AbstractLeafPacketExtension;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.AbstractPacketExtension;
 
-import java.util.List;
-
 /**
  * Copyright (c) Tuenti Technologies. All rights reserved.
  *
  * @author Manuel Peinado Gallego <mpeinado@tuenti.com>
  */
-public class RtcpMuxExtension extends AbstractPacketExtension {
+public class RtcpMuxExtension extends AbstractLeafPacketExtension {
 	/**
 	 * The name of the "payload-type" element.
 	 */
@@ -22,4 +21,14 @@ public class RtcpMuxExtension extends AbstractPacketExtension {
 	{
 		super(null, ELEMENT_NAME);
 	}
+
+	/**
+	 * Creates an empty rtcp-mux element, for copies.
+	 *
+	 * @return AbstractPacketExtension - A new <tt>RtcpMuxExtension</tt>.
+	 */
+	@Override
+	protected AbstractPacketExtension newInstance() {
+		return new RtcpMuxExtension();
+	}
 }
\ No newline at end of file
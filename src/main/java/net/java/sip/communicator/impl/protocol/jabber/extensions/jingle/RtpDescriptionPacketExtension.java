@@ -48,8 +48,8 @@ public class RtpDescriptionPacketExtension
     /**
      * The list of payload types that this description element contains.
      */
-    private final List<PayloadTypePacketExtension> payloadTypes
-                                = new ArrayList<PayloadTypePacketExtension>();
+    private List<PayloadTypePacketExtension> payloadTypes
+                                = newChildList(0);
 
 
     /**
@@ -62,13 +62,14 @@ public class RtpDescriptionPacketExtension
      * A <tt>List</tt> of the optional <tt>extmap</tt> elements that allow
      * negotiating RTP extension headers as per RFC 5282.
      */
-    private List<RTPHdrExtPacketExtension> extmapList
-                                    = new ArrayList<RTPHdrExtPacketExtension>();
+    private List<RTPHdrExtPacketExtension> extmapList = newChildList(0);
 
     /**
-     * The combined list of all child elements that this extension contains.
+     * A read-only view of all the child elements that this extension
+     * contains: the payload types, the bandwidth, the extmaps and the other
+     * children, in that order.
      */
-    private List<PacketExtension> children;
+    private final List<PacketExtension> children = new ChildrenView();
 
     /**
      * Creates a new <tt>RtpDescriptionPacketExtension</tt>.
@@ -154,12 +155,14 @@ public class RtpDescriptionPacketExtension
      */
     public void addPayloadType(PayloadTypePacketExtension payloadType)
     {
+        checkNotFrozen();
         this.payloadTypes.add(payloadType);
     }
 
     /**
      * Returns a <b>reference</b> to the list of payload types that we have
-     * registered with this description so far.
+     * registered with this description so far, which is read-only once this
+     * description is frozen.
      *
      * @return a <b>reference</b> to the list of payload types that we have
      * registered with this description so far.
@@ -171,6 +174,11 @@ public class RtpDescriptionPacketExtension
 
     /**
      * Returns all child elements that we currently have in this packet.
+     * <p>
+     * The list is a read-only view that reads the payload types, the
+     * bandwidth, the extmaps and the other children when it is accessed,
+     * without copying them, so it reflects later changes to them. Several
+     * threads can read it at once.
      *
      * @return the {@link List} of child elements currently registered with
      * this packet.
@@ -178,24 +186,6 @@ public class RtpDescriptionPacketExtension
     @Override
     public List<? extends PacketExtension> getChildExtensions()
     {
-        if(children == null)
-            children = new ArrayList<PacketExtension>();
-        else
-            children.clear();
-
-        //payload types
-        children.addAll(payloadTypes);
-
-        //bandwidth element
-        if (bandwidth != null)
-            children.add(bandwidth);
-
-        //extmap elements
-        if (extmapList != null)
-            children.addAll(extmapList);
-
-        children.addAll(super.getChildExtensions());
-
         return children;
     }
 
@@ -228,7 +218,9 @@ public class RtpDescriptionPacketExtension
      */
     public void setBandwidth(BandwidthPacketExtension bandwidth)
     {
+        checkNotFrozen();
         this.bandwidth = bandwidth;
+        childChanged(bandwidth);
     }
 
     /**
@@ -252,6 +244,7 @@ public class RtpDescriptionPacketExtension
      */
     public void addExtmap(RTPHdrExtPacketExtension extmap)
     {
+        checkNotFrozen();
         this.extmapList.add(extmap);
     }
 
@@ -266,4 +259,130 @@ public class RtpDescriptionPacketExtension
     {
         return extmapList;
     }
+
+    /**
+     * Makes this description and all its children immutable, replacing the
+     * lists of payload types and extmaps with read-only ones.
+     */
+    @Override
+    public void freeze()
+    {
+        if (isFrozen())
+            return;
+        payloadTypes = Collections.unmodifiableList(
+                new ArrayList<PayloadTypePacketExtension>(payloadTypes));
+        extmapList = Collections.unmodifiableList(
+                new ArrayList<RTPHdrExtPacketExtension>(extmapList));
+        super.freeze();
+    }
+
+    /**
+     * Adds the payload types, the bandwidth, the extmaps and the other
+     * children of this description, or copies of them, to a copy of it.
+     *
+     * @param copy the copy of this description.
+     * @param deep whether the children have to be copied.
+     */
+    @Override
+    protected void copyChildrenTo(AbstractPacketExtension copy, boolean deep)
+    {
+        RtpDescriptionPacketExtension description
+            = (RtpDescriptionPacketExtension) copy;
+        List<PayloadTypePacketExtension> payloadTypes = this.payloadTypes;
+        List<RTPHdrExtPacketExtension> extmapList = this.extmapList;
+
+        description.payloadTypes
+            = description.newChildList(payloadTypes.size());
+        for(PayloadTypePacketExtension payloadType : payloadTypes)
+            description.payloadTypes.add(copyOf(payloadType, deep));
+        description.bandwidth = copyOf(bandwidth, deep);
+        description.childChanged(description.bandwidth);
+        description.extmapList = description.newChildList(extmapList.size());
+        for(RTPHdrExtPacketExtension extmap : extmapList)
+            description.extmapList.add(copyOf(extmap, deep));
+        for(PacketExtension child : super.getChildExtensions())
+            description.addChildExtension(copyOf(child, deep));
+    }
+
+    /**
+     * Creates an empty RTP description, for copies.
+     *
+     * @return a new <tt>RtpDescriptionPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new RtpDescriptionPacketExtension();
+    }
+
+    /**
+     * The read-only view returned by {@link #getChildExtensions()}. It holds
+     * no state of its own, so concurrent readers don't interfere with each
+     * other.
+     */
+    private class ChildrenView
+        extends AbstractList<PacketExtension>
+        implements RandomAccess
+    {
+        /**
+         * Returns the child at <tt>index</tt>, looking it up in the payload
+         * types, the bandwidth, the extmaps and the other children in turn.
+         *
+         * @param index the position of the child.
+         *
+         * @return the child at <tt>index</tt>.
+         */
+        @Override
+        public PacketExtension get(int index)
+        {
+            if (index < 0)
+                throw new IndexOutOfBoundsException("Index: " + index);
+
+            int i = index;
+            int payloadTypeCount = payloadTypes.size();
+
+            if (i < payloadTypeCount)
+                return payloadTypes.get(i);
+            i -= payloadTypeCount;
+
+            BandwidthPacketExtension bandwidth
+                = RtpDescriptionPacketExtension.this.bandwidth;
+
+            if (bandwidth != null)
+            {
+                if (i == 0)
+                    return bandwidth;
+                i--;
+            }
+
+            int extmapCount = extmapList.size();
+
+            if (i < extmapCount)
+                return extmapList.get(i);
+            i -= extmapCount;
+
+            List<? extends PacketExtension> others
+                = RtpDescriptionPacketExtension.super.getChildExtensions();
+
+            if (i < others.size())
+                return others.get(i);
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + size());
+        }
+
+        /**
+         * Returns the number of children.
+         *
+         * @return the number of children.
+         */
+        @Override
+        public int size()
+        {
+            return payloadTypes.size()
+                + ((bandwidth == null) ? 0 : 1)
+                + extmapList.size()
+                + RtpDescriptionPacketExtension.super.getChildExtensions()
+                    .size();
+        }
+    }
 }
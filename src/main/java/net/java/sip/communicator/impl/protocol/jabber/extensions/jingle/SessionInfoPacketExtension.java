@@ -47,4 +47,15 @@ public class SessionInfoPacketExtension extends AbstractPacketExtension
     {
         return type;
     }
+
+    /**
+     * Creates an empty info element of the same type, for copies.
+     *
+     * @return a new <tt>SessionInfoPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new SessionInfoPacketExtension(type);
+    }
 }
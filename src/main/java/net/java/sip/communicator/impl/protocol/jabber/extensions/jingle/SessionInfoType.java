@@ -50,5 +50,31 @@ public enum SessionInfoType
     /**
      * Ends a <tt>mute</tt> state.
      */
-    unmute
+    unmute;
+
+    /**
+     * Returns a <tt>SessionInfoType</tt> value corresponding to the specified
+     * <tt>sessionInfoTypeStr</tt> or in other words {@link #ringing} for
+     * "ringing" or {@link #mute} for "mute".
+     *
+     * @param sessionInfoTypeStr the name of the session-info element that we'd
+     * like to parse.
+     * @return a <tt>SessionInfoType</tt> value corresponding to the specified
+     * <tt>sessionInfoTypeStr</tt>.
+     *
+     * @throws IllegalArgumentException in case <tt>sessionInfoTypeStr</tt> is
+     * not a valid session-info element name.
+     */
+    public static SessionInfoType parseString(String sessionInfoTypeStr)
+        throws IllegalArgumentException
+    {
+        SessionInfoType value
+            = JingleVocabulary.sessionInfoType(sessionInfoTypeStr);
+
+        if (value != null)
+            return value;
+
+        throw new IllegalArgumentException(
+            sessionInfoTypeStr + " is not a valid session-info type");
+    }
 }
@@ -1,5 +1,6 @@
 package net.java.sip.communicator.impl.protocol.jabber.extensions.jingle;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.AbstractLeafPacketExtension;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.AbstractPacketExtension;
 
 /**
@@ -7,10 +8,20 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.AbstractPacketE
  *
  * @author Manuel Peinado Gallego <mpeinado@tuenti.com>
  */
-public class SsrcPacketExtension extends AbstractPacketExtension {
+public class SsrcPacketExtension extends AbstractLeafPacketExtension {
 	public static final String ELEMENT_NAME = "ssrc";
 
 	public SsrcPacketExtension() {
 		super(null, ELEMENT_NAME);
 	}
+
+	/**
+	 * Creates an empty ssrc element, for copies.
+	 *
+	 * @return AbstractPacketExtension - A new <tt>SsrcPacketExtension</tt>.
+	 */
+	@Override
+	protected AbstractPacketExtension newInstance() {
+		return new SsrcPacketExtension();
+	}
 }
\ No newline at end of file
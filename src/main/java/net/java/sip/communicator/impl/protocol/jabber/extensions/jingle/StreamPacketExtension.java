@@ -16,6 +16,7 @@ public class StreamPacketExtension extends AbstractPacketExtension {
 	}
 
 	public void setSsrc(SsrcPacketExtension ssrc) {
+		checkNotFrozen();
 		getChildExtensions().clear();
 		addChildExtension(ssrc);
 	}
@@ -23,4 +24,14 @@ public class StreamPacketExtension extends AbstractPacketExtension {
 	public SsrcPacketExtension getSsrc() {
 		return getChildExtensionsOfType(SsrcPacketExtension.class).get(0);
 	}
+
+	/**
+	 * Creates an empty stream, for copies.
+	 *
+	 * @return AbstractPacketExtension - A new <tt>StreamPacketExtension</tt>.
+	 */
+	@Override
+	protected AbstractPacketExtension newInstance() {
+		return new StreamPacketExtension();
+	}
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import java.util.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
 
+import org.jivesoftware.smack.packet.*;
+
 
 /**
  * Copyright (c) Tuenti Technologies. All rights reserved.
@@ -13,7 +15,7 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
 public class StreamsPacketExtension extends AbstractPacketExtension {
 	public static final String ELEMENT_NAME = "streams";
 
-	private List<StreamPacketExtension> streamList = new ArrayList<StreamPacketExtension>();
+	private List<StreamPacketExtension> streamList = newChildList(0);
 
 	/**
 	 * Creates a new instance of this <tt>EncryptionPacketExtension</tt>.
@@ -23,6 +25,7 @@ public class StreamsPacketExtension extends AbstractPacketExtension {
 	}
 
 	public void addStream(StreamPacketExtension stream) {
+		checkNotFrozen();
 		if(!streamList.contains(stream)) {
 			streamList.add(stream);
 		}
@@ -30,7 +33,8 @@ public class StreamsPacketExtension extends AbstractPacketExtension {
 
 	/**
 	 * Returns a <b>reference</b> to the list of <tt>crypto</tt> elements that
-	 * we have registered with this encryption element so far.
+	 * we have registered with this encryption element so far, which is
+	 * read-only once this element is frozen.
 	 *
 	 * @return  a <b>reference</b> to the list of <tt>crypto</tt> elements that
 	 * we have registered with this encryption element so far.
@@ -38,4 +42,78 @@ public class StreamsPacketExtension extends AbstractPacketExtension {
 	public List<StreamPacketExtension> getStreamList() {
 		return streamList;
 	}
+
+	/**
+	 * Returns the children of this element followed by the streams added with
+	 * {@link #addStream(StreamPacketExtension)} only, so that they are part of its structure too.
+	 *
+	 * @return List - The children and the streams of this element.
+	 */
+	@Override
+	protected List<? extends PacketExtension> getStructureChildren() {
+		List<PacketExtension> children = new ArrayList<PacketExtension>(getChildExtensions());
+		for (StreamPacketExtension stream : streamList) {
+			if (!containsInstance(children, stream)) {
+				children.add(stream);
+			}
+		}
+		return children;
+	}
+
+	/**
+	 * Makes this element and its streams immutable, including those added with
+	 * {@link #addStream(StreamPacketExtension)} only.
+	 */
+	@Override
+	public void freeze() {
+		if (isFrozen()) {
+			return;
+		}
+		for (StreamPacketExtension stream : streamList) {
+			stream.freeze();
+		}
+		streamList = Collections.unmodifiableList(new ArrayList<StreamPacketExtension>(streamList));
+		super.freeze();
+	}
+
+	/**
+	 * Confines this element and its streams to the current thread, or publishes them.
+	 *
+	 * @param threadConfined boolean - <tt>true</tt> to confine this element to the current thread, <tt>false</tt> to
+	 *				publish it.
+	 */
+	@Override
+	public void setThreadConfined(boolean threadConfined) {
+		if (!isFrozen()) {
+			for (StreamPacketExtension stream : streamList) {
+				stream.setThreadConfined(threadConfined);
+			}
+		}
+		super.setThreadConfined(threadConfined);
+	}
+
+	/**
+	 * Adds the children and the streams of this element, or copies of them, to a copy of it.
+	 *
+	 * @param copy AbstractPacketExtension - The copy of this element.
+	 * @param deep boolean - Whether the children have to be copied.
+	 */
+	@Override
+	protected void copyChildrenTo(AbstractPacketExtension copy, boolean deep) {
+		super.copyChildrenTo(copy, deep);
+		List<StreamPacketExtension> copyStreamList = ((StreamsPacketExtension) copy).streamList;
+		for (StreamPacketExtension stream : streamList) {
+			copyStreamList.add(copyOf(stream, deep));
+		}
+	}
+
+	/**
+	 * Creates an empty streams element, for copies.
+	 *
+	 * @return AbstractPacketExtension - A new <tt>StreamsPacketExtension</tt>.
+	 */
+	@Override
+	protected AbstractPacketExtension newInstance() {
+		return new StreamsPacketExtension();
+	}
 }
@@ -109,4 +109,15 @@ public class TransferPacketExtension
     {
         setAttribute(TO_ATTR_NAME, to);
     }
+
+    /**
+     * Creates an empty <tt>transfer</tt> element, for copies.
+     *
+     * @return a new <tt>TransferPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new TransferPacketExtension();
+    }
 }
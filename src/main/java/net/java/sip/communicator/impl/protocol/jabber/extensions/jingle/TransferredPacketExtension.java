@@ -34,4 +34,15 @@ public class TransferredPacketExtension
     {
         super(NAMESPACE, ELEMENT_NAME);
     }
+
+    /**
+     * Creates an empty <tt>transferred</tt> element, for copies.
+     *
+     * @return a new <tt>TransferredPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new TransferredPacketExtension();
+    }
 }
@@ -83,4 +83,15 @@ public class ZrtpHashPacketExtension extends AbstractPacketExtension
     {
         setText(value);
     }
+
+    /**
+     * Creates an empty <tt>zrtp-hash</tt> element, for copies.
+     *
+     * @return a new <tt>ZrtpHashPacketExtension</tt>.
+     */
+    @Override
+    protected AbstractPacketExtension newInstance()
+    {
+        return new ZrtpHashPacketExtension();
+    }
 }
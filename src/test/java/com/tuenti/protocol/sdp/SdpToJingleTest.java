@@ -1,16 +1,27 @@
 package com.tuenti.protocol.sdp;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.Vocabulary;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 import net.sourceforge.jsdp.*;
 import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.PacketExtension;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Unit tests for the SdpToJingle class.
@@ -96,6 +107,20 @@ public class SdpToJingleTest {
 	@After
 	public void tearDown() {
 		sdp = null;
+		SdpToJingle.setSessionDescriptionFactory(new SessionDescriptionFactory());
+	}
+
+	/**
+	 * Uses a session description factory with a fixed host name and clock.
+	 */
+	private void useFixedSessionDescriptionFactory() {
+		SdpToJingle.setSessionDescriptionFactory(new SessionDescriptionFactory("gw.example.com",
+				new SessionDescriptionFactory.NtpClock() {
+					@Override
+					public long getNtpTime() {
+						return 3600L;
+					}
+				}));
 	}
 
 	public void prepare() {
@@ -109,13 +134,21 @@ public class SdpToJingleTest {
 	 */
 	public void prepare(boolean includeRtcpMuxAttr) {
 		try {
-			String sdpMessage = SAMPLE_SDP_MESSAGE.replace("{{RTCP-MUX}}", includeRtcpMuxAttr ? "a=rtcp-mux\r\n" : "");
-			sdp = SDPFactory.parseSessionDescription(sdpMessage);
+			sdp = SDPFactory.parseSessionDescription(getSampleSdp(includeRtcpMuxAttr));
 		} catch (SDPParseException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Returns the sample SDP text.
+	 *
+	 * @param includeRtcpMuxAttr boolean - Whether or not to include the RTCP MUX attribute.
+	 */
+	private static String getSampleSdp(boolean includeRtcpMuxAttr) {
+		return SAMPLE_SDP_MESSAGE.replace("{{RTCP-MUX}}", includeRtcpMuxAttr ? "a=rtcp-mux\r\n" : "");
+	}
+
 	/**
 	 * Verifies a Jingle IQ.
 	 *
@@ -372,6 +405,132 @@ public class SdpToJingleTest {
 		Assert.assertTrue(text.contains("a=ssrc:43633328 label:video_label"));
 	}
 
+	@Test
+	public void testSdpTextToJingle() {
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		verifyJingleIq(jingle, true);
+	}
+
+	@Test
+	public void testSdpTextToJingleMatchesSessionDescription() throws SDPParseException {
+		prepare();
+		JingleIQ expected = SdpToJingle.jingleFromSdp(sdp);
+		JingleIQ actual = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		Assert.assertEquals(expected.getChildElementXML(), actual.getChildElementXML());
+
+		prepare(false);
+		expected = SdpToJingle.jingleFromSdp(sdp);
+		actual = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(false));
+		Assert.assertEquals(expected.getChildElementXML(), actual.getChildElementXML());
+
+		// A media section without a "c=" line of its own uses the session level one.
+		String text = "v=0\r\no=- 42 1 IN IP4 127.0.0.1\r\ns=-\r\nc=IN IP4 10.0.0.1\r\nt=0 0\r\n"
+				+ "m=audio 5000 RTP/AVPF 0\r\na=rtpmap:0 PCMU/8000\r\n";
+		expected = SdpToJingle.jingleFromSdp(SDPFactory.parseSessionDescription(text));
+		actual = SdpToJingle.jingleFromSdp((CharSequence) text);
+		Assert.assertEquals(expected.getChildElementXML(), actual.getChildElementXML());
+	}
+
+	@Test
+	public void testSdpTextWithoutRtcpMuxToJingle() {
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(false));
+		for (ContentPacketExtension content : jingle.getContentList()) {
+			RtpDescriptionPacketExtension descriptionExt = content.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+			Assert.assertTrue(descriptionExt.getChildExtensionsOfType(RtcpMuxExtension.class).isEmpty());
+		}
+	}
+
+	@Test
+	public void testSdpTextWithSessionLevelConnection() {
+		String text = "v=0\r\no=- 42 1 IN IP4 127.0.0.1\r\ns=-\r\nc=IN IP4 10.0.0.1\r\nt=0 0\r\n"
+				+ "m=audio 5000 RTP/AVPF 0\r\na=rtpmap:0 PCMU/8000\r\n";
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) text);
+		Assert.assertEquals("42", jingle.getSID());
+		ContentPacketExtension audio = jingle.getContentList().get(0);
+		CandidatePacketExtension candidate = audio.getFirstChildOfType(RawUdpTransportPacketExtension.class)
+				.getCandidateList().get(0);
+		Assert.assertEquals("10.0.0.1", candidate.getIP());
+		Assert.assertEquals(5000, candidate.getPort());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSdpTextWithUnsupportedConnection() {
+		SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true).replace("c=IN IP4", "c=XX IP4"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSdpTextWithoutOrigin() {
+		SdpToJingle.jingleFromSdp((CharSequence) "v=0\r\ns=-\r\nt=0 0\r\n");
+	}
+
+	@Test
+	public void testJingleToSdpText() throws IOException {
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+
+		StringBuilder text = new StringBuilder();
+		SdpToJingle.sdpFromJingle(jingle, text);
+
+		jingle = SdpToJingle.jingleFromSdp(text);
+		verifyJingleIq(jingle, true);
+	}
+
+	@Test
+	public void testJingleToSdpTextMatchesSessionDescription() throws IOException {
+		prepare();
+		JingleIQ jingle = SdpToJingle.jingleFromSdp(sdp);
+
+		StringBuilder text = new StringBuilder();
+		SdpToJingle.sdpFromJingle(jingle, text);
+		// The writer carries the real port on the media lines and leaves out a missing ICE user fragment or password.
+		List<String> expectedLines = new ArrayList<String>();
+		for (String line : SdpToJingle.sdpFromJingle(jingle).toString().split("\r\n")) {
+			if (!line.equals("a=ice-ufrag") && !line.equals("a=ice-pwd")) {
+				expectedLines.add(line);
+			}
+		}
+		List<String> lines = Arrays.asList(text.toString().split("\r\n"));
+		Assert.assertEquals(expectedLines.size(), lines.size());
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			if (line.startsWith("m=")) {
+				line = line.replaceFirst("^(m=\\S+) \\d+ ", "$1 123456789 ");
+			}
+			Assert.assertEquals(expectedLines.get(i), line);
+		}
+		Assert.assertTrue(text.indexOf("a=crypto:0 AES_CM_128_HMAC_SHA1_80 inline:5ydJsA+FZVpAyqJMT/nW/UW+tcOmDvXJh/pPhNRe") > 0);
+		Assert.assertTrue(text.indexOf("a=ssrc:43633328 label:video_label") > 0);
+		Assert.assertTrue(text.indexOf("m=audio 36798 RTP/AVPF 111 103 104 110 107 9 102 108 0 8 106 105 13 127 126\r\n") > 0);
+		Assert.assertTrue(text.indexOf("o=ProfessorFarnsworth 123 ") > 0);
+	}
+
+	@Test
+	public void testConfiguredSessionDescriptionFactory() throws IOException {
+		useFixedSessionDescriptionFactory();
+		prepare();
+		JingleIQ jingle = SdpToJingle.jingleFromSdp(sdp);
+
+		Origin origin = SdpToJingle.sdpFromJingle(jingle).getOrigin();
+		Assert.assertEquals(123L, origin.getSessionID());
+		Assert.assertEquals(3600L, origin.getSessionVersion());
+		Assert.assertEquals("gw.example.com", origin.getAddress());
+
+		StringBuilder text = new StringBuilder();
+		SdpToJingle.sdpFromJingle(jingle, text);
+		Assert.assertTrue(text.indexOf("o=ProfessorFarnsworth 123 3600 IN IP4 gw.example.com\r\n") > 0);
+	}
+
+	@Test
+	public void testSessionDescriptionsDoNotShareFields() throws SDPException {
+		SessionDescriptionFactory factory = new SessionDescriptionFactory("gw.example.com",
+				SessionDescriptionFactory.SYSTEM_CLOCK);
+		SessionDescription first = factory.newSessionDescription("1");
+		SessionDescription second = factory.newSessionDescription("2");
+
+		Assert.assertNotSame(first.getVersion(), second.getVersion());
+		Assert.assertNotSame(first.getTimeDescriptions()[0], second.getTimeDescriptions()[0]);
+		Assert.assertEquals(2L, second.getOrigin().getSessionID());
+	}
+
 	@Test
 	public void testJingeIceCandidatesFromSdpStub() {
 		List<String> iceCandidates = Arrays.asList(SAMPLE_ICE_CANDIDATES_SDP_STUB.split("\r\n"));
@@ -403,4 +562,1257 @@ public class SdpToJingleTest {
 		verifyCandidateExtension(iceUdpExts.get(0).getCandidateList().get(2), 2, "1", "udp", 2, 0, CandidateType.srflx,
 				"172.22.76.221", 36798);
 	}
+
+	@Test
+	public void testJingleIceCandidatesFromBareCandidates() {
+		List<String> iceCandidates = Arrays.asList(
+				"candidate:1 1 udp 1 172.22.76.221 48235 typ host generation 0",
+				"1 2 udp 2 172.22.76.221 36798 typ srflx raddr 10.0.34.44 rport 48296 generation 0\r\n");
+		JingleIQ iq = SdpToJingle.transportInfoFromSdpStub(iceCandidates, "a1b2c3", MEDIA_NAME);
+
+		Assert.assertNotNull(iq);
+		Assert.assertEquals("a1b2c3", iq.getSID());
+		Assert.assertEquals(JingleAction.TRANSPORT_INFO, iq.getAction());
+		IceUdpTransportPacketExtension iceUdpExt = iq.getContentList().get(0)
+				.getFirstChildOfType(IceUdpTransportPacketExtension.class);
+		Assert.assertEquals(2, iceUdpExt.getCandidateList().size());
+		verifyCandidateExtension(iceUdpExt.getCandidateList().get(0), 1, "1", "udp", 1, 0, CandidateType.host,
+				"172.22.76.221", 48235);
+		verifyCandidateExtension(iceUdpExt.getCandidateList().get(1), 2, "1", "udp", 2, 0, CandidateType.srflx,
+				"172.22.76.221", 36798);
+		Assert.assertEquals("10.0.34.44", iceUdpExt.getCandidateList().get(1).getRelAddr());
+	}
+
+	@Test
+	public void testJingleIceCandidatesWithBrowserExtensions() {
+		List<String> iceCandidates = Arrays.asList(
+				"a=candidate:3 1 tcp 1518280447 172.22.76.221 9 typ host tcptype active generation 0 ufrag YuWM "
+						+ "network-id 1 network-cost 10",
+				"a=candidate:4 1 udp 1686052607 80.58.61.250 56021 typ srflx generation 2 rport 48296 "
+						+ "raddr 10.0.34.44");
+		JingleIQ iq = SdpToJingle.transportInfoFromSdpStub(iceCandidates, SAMPLE_SID, MEDIA_NAME);
+
+		Assert.assertNotNull(iq);
+		List<CandidatePacketExtension> candidates = iq.getContentList().get(0)
+				.getFirstChildOfType(IceUdpTransportPacketExtension.class).getCandidateList();
+		CandidatePacketExtension tcpCandidate = candidates.get(0);
+		verifyCandidateExtension(tcpCandidate, 1, "3", "tcp", 1518280447, 0, CandidateType.host, "172.22.76.221", 9);
+		Assert.assertEquals("active", tcpCandidate.getTcpType());
+		Assert.assertEquals(1, tcpCandidate.getNetwork());
+		Assert.assertEquals("3 1 tcp 1518280447 172.22.76.221 9 typ host tcptype active generation 0 network-id 1",
+				SdpToJingle.iceCandidateLineFromJingle(tcpCandidate, true));
+
+		CandidatePacketExtension srflxCandidate = candidates.get(1);
+		verifyCandidateExtension(srflxCandidate, 1, "4", "udp", 1686052607, 2, CandidateType.srflx, "80.58.61.250",
+				56021);
+		Assert.assertEquals("10.0.34.44", srflxCandidate.getRelAddr());
+		Assert.assertEquals(48296, srflxCandidate.getRelPort());
+	}
+
+	@Test
+	public void testJingleIceCandidatesWithoutGeneration() {
+		JingleIQ iq = SdpToJingle.transportInfoFromSdpStub(
+				Arrays.asList("candidate:1 1 udp 1 172.22.76.221 48235 typ host"), SAMPLE_SID, MEDIA_NAME);
+
+		CandidatePacketExtension candidate = iq.getContentList().get(0)
+				.getFirstChildOfType(IceUdpTransportPacketExtension.class).getCandidateList().get(0);
+		Assert.assertEquals(0, candidate.getGeneration());
+	}
+
+	@Test
+	public void testMalformedIceCandidate() {
+		Assert.assertNull(SdpToJingle.transportInfoFromSdpStub(
+				Arrays.asList("candidate:1 1 udp 1 172.22.76.221 48235 host generation 0"), SAMPLE_SID, MEDIA_NAME));
+		Assert.assertNull(SdpToJingle.transportInfoFromSdpStub(
+				Arrays.asList("candidate:1 1 udp 1 172.22.76.221 48235 typ bogus"), SAMPLE_SID, MEDIA_NAME));
+		Assert.assertNull(SdpToJingle.transportInfoFromSdpStub(
+				Arrays.asList("candidate:1 1 udp 1 172.22.76.221 x typ host"), SAMPLE_SID, MEDIA_NAME));
+	}
+
+	@Test
+	public void testIceCandidateLineIntoBuffer() throws IOException {
+		CandidatePacketExtension candidate = IceCandidateParser.parse(
+				"2 1 udp 2 172.22.76.221 36798 typ srflx raddr 10.0.34.44 rport 48296 generation 0");
+		String line = SdpToJingle.iceCandidateLineFromJingle(candidate, false);
+		Assert.assertEquals("a=candidate:2 1 udp 2 172.22.76.221 36798 typ srflx raddr 10.0.34.44 rport 48296 "
+				+ "generation 0\r\n", line);
+
+		StringBuilder builder = new StringBuilder("a=x\r\n");
+		SdpToJingle.iceCandidateLineFromJingle(candidate, false, builder);
+		Assert.assertEquals("a=x\r\n" + line, builder.toString());
+
+		Appendable appendable = new StringBuffer();
+		SdpToJingle.iceCandidateLineFromJingle(candidate, true, appendable);
+		Assert.assertEquals(SdpToJingle.iceCandidateLineFromJingle(candidate, true), appendable.toString());
+	}
+
+	@Test
+	public void testMemoizedIceCandidateLine() {
+		CandidatePacketExtension candidate = IceCandidateParser.parse("1 1 udp 1 172.22.76.221 48235 typ host "
+				+ "generation 0");
+		String value = SdpToJingle.memoizedIceCandidateLineFromJingle(candidate, true);
+		Assert.assertSame(value, SdpToJingle.memoizedIceCandidateLineFromJingle(candidate, true));
+		Assert.assertEquals("a=candidate:" + value + "\r\n",
+				SdpToJingle.memoizedIceCandidateLineFromJingle(candidate, false));
+
+		candidate.setPort(5000);
+		Assert.assertEquals("1 1 udp 1 172.22.76.221 5000 typ host generation 0",
+				SdpToJingle.memoizedIceCandidateLineFromJingle(candidate, true));
+		candidate.removeAttribute(CandidatePacketExtension.GENERATION_ATTR_NAME);
+		Assert.assertEquals("1 1 udp 1 172.22.76.221 5000 typ host",
+				SdpToJingle.memoizedIceCandidateLineFromJingle(candidate, true));
+
+		candidate.removeAttribute(CandidatePacketExtension.TYPE_ATTR_NAME);
+		Assert.assertNull(candidate.getType());
+		try {
+			SdpToJingle.iceCandidateLineFromJingle(candidate, true);
+			Assert.fail("A candidate without a type was written");
+		} catch (ConversionException e) {
+			Assert.assertEquals(ConversionException.Code.MALFORMED_CANDIDATE, e.getCode());
+		}
+	}
+
+	@Test
+	public void testCandidateLineChangedWhileRendered() {
+		final CandidatePacketExtension candidate = IceCandidateParser.parse("1 1 udp 1 172.22.76.221 48235 typ host "
+				+ "generation 0");
+		final int[] renderings = new int[1];
+		CandidatePacketExtension.LineRenderer renderer = new CandidatePacketExtension.LineRenderer() {
+			@Override
+			public String render(CandidatePacketExtension rendered) {
+				String line = SdpToJingle.iceCandidateLineFromJingle(rendered, true);
+				if (renderings[0]++ == 0) {
+					rendered.setPort(5000);
+				}
+				return line;
+			}
+		};
+		Assert.assertEquals("1 1 udp 1 172.22.76.221 48235 typ host generation 0", candidate.getLine(renderer));
+		Assert.assertEquals("1 1 udp 1 172.22.76.221 5000 typ host generation 0", candidate.getLine(renderer));
+		Assert.assertEquals(2, renderings[0]);
+		candidate.getLine(renderer);
+		Assert.assertEquals(2, renderings[0]);
+	}
+
+	@Test
+	public void testFrozenCandidateLineNotCached() {
+		CandidatePacketExtension candidate = IceCandidateParser.parse("1 1 udp 1 172.22.76.221 48235 typ host "
+				+ "generation 0");
+		candidate.freeze();
+		final int[] renderings = new int[1];
+		CandidatePacketExtension.LineRenderer renderer = new CandidatePacketExtension.LineRenderer() {
+			@Override
+			public String render(CandidatePacketExtension rendered) {
+				renderings[0]++;
+				return SdpToJingle.iceCandidateLineFromJingle(rendered, true);
+			}
+		};
+		Assert.assertEquals(candidate.getLine(renderer), candidate.getLine(renderer));
+		Assert.assertEquals(2, renderings[0]);
+	}
+
+	@Test
+	public void testConverterMemoizesCandidateLinesOnRequest() {
+		useFixedSessionDescriptionFactory();
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		SdpToJingleConverter converter = new SdpToJingleConverter();
+		String expected = converter.sdpTextFromJingle(jingle);
+
+		converter.setMemoizeCandidateLines(true);
+		Assert.assertEquals(expected, converter.sdpTextFromJingle(jingle));
+		Assert.assertEquals(expected, converter.sdpTextFromJingle(jingle));
+
+		CandidatePacketExtension candidate = jingle.getContentList().get(0)
+				.getFirstChildOfType(IceUdpTransportPacketExtension.class).getCandidateList().get(0);
+		int port = candidate.getPort();
+		candidate.setPort(port + 1);
+		String changed = converter.sdpTextFromJingle(jingle);
+		Assert.assertNotEquals(expected, changed);
+
+		converter.setMemoizeCandidateLines(false);
+		Assert.assertEquals(changed, converter.sdpTextFromJingle(jingle));
+		candidate.setPort(port);
+		Assert.assertEquals(expected, converter.sdpTextFromJingle(jingle));
+	}
+
+	@Test
+	public void testInterleavedMediaAttributes() throws SDPParseException {
+		String text = "v=0\r\no=- 42 1 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\n"
+				+ "m=audio 1 RTP/AVPF 0 8\r\nc=IN IP4 10.0.0.1\r\n"
+				+ "a=rtpmap:0 PCMU/8000\r\na=ice-ufrag:first\r\na=rtcp-mux\r\n"
+				+ "a=candidate:1 1 udp 1 10.0.0.1 1 typ host generation 0\r\na=ice-ufrag:second\r\n"
+				+ "a=rtpmap:8 PCMA/8000\r\na=ice-pwd:secret\r\n";
+		JingleIQ jingle = SdpToJingle.jingleFromSdp(SDPFactory.parseSessionDescription(text));
+
+		ContentPacketExtension content = jingle.getContentList().get(0);
+		RtpDescriptionPacketExtension rtpExt = content.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+		Assert.assertEquals(2, rtpExt.getPayloadTypes().size());
+		Assert.assertEquals("PCMU", rtpExt.getPayloadTypes().get(0).getName());
+		Assert.assertEquals("PCMA", rtpExt.getPayloadTypes().get(1).getName());
+		Assert.assertNotNull(rtpExt.getFirstChildOfType(RtcpMuxExtension.class));
+
+		IceUdpTransportPacketExtension iceUdpExt = Utils.filterByClass(content.getChildExtensionsOfType(
+				IceUdpTransportPacketExtension.class), IceUdpTransportPacketExtension.class).get(0);
+		Assert.assertEquals("first", iceUdpExt.getUfrag());
+		Assert.assertEquals("secret", iceUdpExt.getPassword());
+		Assert.assertEquals(1, iceUdpExt.getCandidateList().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testJingleWithoutRtpDescriptionToSdpText() throws IOException {
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		ContentPacketExtension content = new ContentPacketExtension();
+		content.setName("data");
+		jingle.addContent(content);
+
+		SdpToJingle.sdpFromJingle(jingle, new StringBuilder());
+	}
+
+	/**
+	 * Returns the sample SDP with its media sections repeated <tt>times</tt> times.
+	 */
+	private String getLargeSampleSdp(int times) {
+		String sample = getSampleSdp(true);
+		int mediaStart = sample.indexOf("m=");
+		StringBuilder builder = new StringBuilder(sample.substring(0, mediaStart));
+		for (int i = 0; i < times; i++) {
+			builder.append(sample.substring(mediaStart));
+		}
+		return builder.toString();
+	}
+
+	@Test
+	public void testParallelConversionKeepsContentOrder() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ParallelConversion parallel = new ParallelConversion(pool, 2);
+			useFixedSessionDescriptionFactory();
+			SessionDescription sdp = SDPFactory.parseSessionDescription(getLargeSampleSdp(20));
+
+			JingleIQ sequentialJingle = SdpToJingle.jingleFromSdp(sdp);
+			JingleIQ parallelJingle = SdpToJingle.jingleFromSdp(sdp, parallel);
+			Assert.assertEquals(40, parallelJingle.getContentList().size());
+			Assert.assertEquals(sequentialJingle.getChildElementXML(), parallelJingle.getChildElementXML());
+
+			Assert.assertEquals(SdpToJingle.sdpFromJingle(sequentialJingle).toString(),
+					SdpToJingle.sdpFromJingle(sequentialJingle, parallel).toString());
+
+			StringBuilder sequentialText = new StringBuilder();
+			SdpToJingle.sdpFromJingle(sequentialJingle, sequentialText);
+			StringBuilder parallelText = new StringBuilder();
+			SdpToJingle.sdpFromJingle(sequentialJingle, parallelText, parallel);
+			Assert.assertEquals(sequentialText.toString(), parallelText.toString());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParallelConversionFailure() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			JingleIQ jingle = SdpToJingle.jingleFromSdp(SDPFactory.parseSessionDescription(getLargeSampleSdp(10)));
+			ContentPacketExtension content = new ContentPacketExtension();
+			content.setName("data");
+			jingle.addContent(content);
+
+			SdpToJingle.sdpFromJingle(jingle, new StringBuilder(), new ParallelConversion(pool, 2));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testBatchConversion() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			useFixedSessionDescriptionFactory();
+			List<String> sdps = new ArrayList<String>();
+			for (int i = 0; i < 50; i++) {
+				sdps.add(i == 17 ? "v=0\r\nbogus\r\n" : getSampleSdp(i % 2 == 0));
+			}
+
+			List<ConversionResult<JingleIQ>> jingles = SdpToJingle.jingleFromSdpBatch(sdps, pool);
+			Assert.assertEquals(50, jingles.size());
+			Assert.assertFalse(jingles.get(17).isSuccess());
+			Assert.assertTrue(jingles.get(17).getFailure() instanceof IllegalArgumentException);
+			verifyJingleIq(jingles.get(16).getValue(), true);
+			verifyJingleIq(jingles.get(18).getValue(), true);
+			verifyJingleIq(jingles.get(19).getValue(), true);
+
+			List<JingleIQ> stanzas = new ArrayList<JingleIQ>();
+			for (ConversionResult<JingleIQ> result : jingles) {
+				if (result.isSuccess()) {
+					stanzas.add(result.getValue());
+				}
+			}
+			List<ConversionResult<String>> texts = SdpToJingle.sdpFromJingleBatch(stanzas, pool);
+			Assert.assertEquals(49, texts.size());
+			for (int i = 0; i < stanzas.size(); i++) {
+				StringBuilder expected = new StringBuilder();
+				SdpToJingle.sdpFromJingle(stanzas.get(i), expected);
+				Assert.assertEquals(expected.toString(), texts.get(i).getValue());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testReusedConverter() throws IOException {
+		useFixedSessionDescriptionFactory();
+		SdpToJingleConverter converter = new SdpToJingleConverter();
+		for (int i = 0; i < 3; i++) {
+			boolean includeRtcpMuxAttr = i % 2 == 0;
+			JingleIQ jingle = converter.jingleFromSdp(getSampleSdp(includeRtcpMuxAttr));
+			Assert.assertEquals(SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(includeRtcpMuxAttr))
+					.getChildElementXML(), jingle.getChildElementXML());
+
+			StringBuilder expected = new StringBuilder();
+			SdpToJingle.sdpFromJingle(jingle, expected);
+			Assert.assertEquals(expected.toString(), converter.sdpTextFromJingle(jingle));
+
+			StringBuilder actual = new StringBuilder();
+			converter.sdpFromJingle(jingle, actual);
+			Assert.assertEquals(expected.toString(), actual.toString());
+		}
+	}
+
+	@Test
+	public void testConverterFollowsConfiguredFactory() {
+		SdpToJingleConverter converter = SdpToJingleConverter.forCurrentThread();
+		Assert.assertSame(converter, SdpToJingleConverter.forCurrentThread());
+
+		JingleIQ jingle = converter.jingleFromSdp(getSampleSdp(true));
+		converter.sdpTextFromJingle(jingle);
+		useFixedSessionDescriptionFactory();
+		Assert.assertTrue(converter.sdpTextFromJingle(jingle).contains(
+				"o=ProfessorFarnsworth 123 3600 IN IP4 gw.example.com\r\n"));
+	}
+
+	@Test
+	public void testConversionFailuresAsResults() {
+		ConversionResult<JingleIQ> jingle = SdpToJingle.tryJingleFromSdp(
+				getSampleSdp(true).replace("m=video 39456", "m=video x"));
+		Assert.assertFalse(jingle.isSuccess());
+		Assert.assertEquals(ConversionException.Code.MALFORMED_NUMBER, jingle.getErrorCode());
+		Assert.assertTrue(jingle.getOffendingLine().startsWith("m=video x RTP/AVPF"));
+		Assert.assertEquals(0, jingle.getFailure().getStackTrace().length);
+
+		jingle = SdpToJingle.tryJingleFromSdp("v=0\r\nbogus\r\n");
+		Assert.assertEquals(ConversionException.Code.MALFORMED_LINE, jingle.getErrorCode());
+		Assert.assertEquals("bogus", jingle.getOffendingLine());
+
+		jingle = SdpToJingle.tryTransportInfoFromSdpStub(
+				Arrays.asList("a=candidate:1 1 udp 1 172.22.76.221 48235 typ bogus"), SAMPLE_SID, MEDIA_NAME);
+		Assert.assertEquals(ConversionException.Code.MALFORMED_CANDIDATE, jingle.getErrorCode());
+		Assert.assertEquals("1 1 udp 1 172.22.76.221 48235 typ bogus", jingle.getOffendingLine());
+
+		JingleIQ valid = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		ContentPacketExtension content = new ContentPacketExtension();
+		content.setName("data");
+		valid.addContent(content);
+		ConversionResult<SessionDescription> sdp = SdpToJingle.trySdpFromJingle(valid);
+		Assert.assertEquals(ConversionException.Code.MISSING_RTP_DESCRIPTION, sdp.getErrorCode());
+		Assert.assertNull(sdp.getOffendingLine());
+		Assert.assertEquals(ConversionException.Code.MISSING_RTP_DESCRIPTION,
+				new SdpToJingleConverter().trySdpTextFromJingle(valid).getErrorCode());
+	}
+
+	@Test
+	public void testSuccessfulConversionAsResult() {
+		ConversionResult<JingleIQ> jingle = new SdpToJingleConverter().tryJingleFromSdp(getSampleSdp(true));
+		Assert.assertTrue(jingle.isSuccess());
+		Assert.assertNull(jingle.getErrorCode());
+		verifyJingleIq(jingle.getValue(), true);
+	}
+
+	@Test
+	public void testRtpMapCache() {
+		RtpMapCache cache = new RtpMapCache(2);
+		RtpMap opus = cache.get("111 opus/48000/2");
+		Assert.assertSame(opus, cache.get("111 opus/48000/2"));
+		Assert.assertEquals("opus", opus.getName());
+		Assert.assertEquals("PCMU", cache.get("0 PCMU/8000").getName());
+
+		PayloadTypePacketExtension payloadExt = opus.newPayloadType();
+		Assert.assertNotSame(payloadExt, opus.newPayloadType());
+		Assert.assertEquals(111, payloadExt.getID());
+		Assert.assertEquals("opus", payloadExt.getName());
+		Assert.assertEquals("48000/2", payloadExt.getClockrate());
+
+		cache.get("8 PCMA/8000");
+		Assert.assertEquals(1, cache.size());
+
+		try {
+			cache.get("96 VP8");
+			Assert.fail();
+		} catch (ConversionException e) {
+			Assert.assertEquals(ConversionException.Code.MALFORMED_ATTRIBUTE, e.getCode());
+			Assert.assertEquals("a=rtpmap:96 VP8", e.getLine());
+		}
+		String[] malformedNumbers = {"x opus/48000/2", "111 opus/48k/2", "111 opus/48000/two", "111 opus/48000/"};
+		for (String value : malformedNumbers) {
+			try {
+				cache.get(value);
+				Assert.fail(value);
+			} catch (ConversionException e) {
+				Assert.assertEquals(ConversionException.Code.MALFORMED_NUMBER, e.getCode());
+				Assert.assertEquals("a=rtpmap:" + value, e.getLine());
+			}
+		}
+	}
+
+	@Test
+	public void testReofferReusesUnchangedMediaSections() {
+		MediaSectionCache cache = new MediaSectionCache();
+		String offer = getSampleSdp(true);
+		JingleIQ first = SdpToJingle.jingleFromSdp(offer, cache);
+		verifyJingleIq(first, true);
+		Assert.assertEquals(2, cache.size());
+
+		JingleIQ second = SdpToJingle.jingleFromSdp(offer, cache);
+		Assert.assertSame(first.getContentList().get(0), second.getContentList().get(0));
+		Assert.assertSame(first.getContentList().get(1), second.getContentList().get(1));
+
+		// Only the video section changes.
+		String reoffer = offer.replace("m=video 39456", "m=video 40000");
+		JingleIQ third = SdpToJingle.jingleFromSdp(reoffer, cache);
+		Assert.assertSame(first.getContentList().get(0), third.getContentList().get(0));
+		Assert.assertNotSame(first.getContentList().get(1), third.getContentList().get(1));
+		Assert.assertEquals(SdpToJingle.jingleFromSdp((CharSequence) reoffer).getChildElementXML(),
+				third.getChildElementXML());
+		Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testReofferWithNewSessionConnection() {
+		MediaSectionCache cache = new MediaSectionCache();
+		String offer = "v=0\r\no=- 42 1 IN IP4 127.0.0.1\r\ns=-\r\nc=IN IP4 10.0.0.1\r\nt=0 0\r\n"
+				+ "m=audio 5000 RTP/AVPF 0\r\na=rtpmap:0 PCMU/8000\r\n";
+		JingleIQ first = SdpToJingle.jingleFromSdp(offer, cache);
+		JingleIQ second = SdpToJingle.jingleFromSdp(offer.replace("10.0.0.1", "10.0.0.2"), cache);
+		Assert.assertNotSame(first.getContentList().get(0), second.getContentList().get(0));
+		Assert.assertEquals("10.0.0.2", second.getContentList().get(0)
+				.getFirstChildOfType(RawUdpTransportPacketExtension.class).getCandidateList().get(0).getIP());
+	}
+
+	@Test
+	public void testFailedReofferKeepsMediaSections() {
+		MediaSectionCache cache = new MediaSectionCache();
+		JingleIQ first = SdpToJingle.jingleFromSdp(getSampleSdp(true), cache);
+		try {
+			SdpToJingle.jingleFromSdp(getSampleSdp(true) + "bogus\r\n", cache);
+			Assert.fail();
+		} catch (ConversionException e) {
+			Assert.assertEquals(ConversionException.Code.MALFORMED_LINE, e.getCode());
+		}
+		JingleIQ second = SdpToJingle.jingleFromSdp(getSampleSdp(true), cache);
+		Assert.assertSame(first.getContentList().get(0), second.getContentList().get(0));
+	}
+
+	@Test
+	public void testRoundTripCache() {
+		useFixedSessionDescriptionFactory();
+		RoundTripCache cache = new RoundTripCache(4);
+		JingleIQ offer = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		offer.setAction(JingleAction.SESSION_INITIATE);
+		offer.setInitiator("romeo@montague.lit/orchard");
+		ContentPacketExtension audio = offer.getContentList().get(0);
+
+		String sdp = cache.sdpFromJingle(offer);
+		Assert.assertEquals(SdpToJingleConverter.forCurrentThread().sdpTextFromJingle(offer), sdp);
+		Assert.assertEquals(1, cache.size());
+
+		// The SDP converts back to a copy of the original stanza, and both stay their callers' to modify.
+		JingleIQ echo = cache.jingleFromSdp(sdp);
+		Assert.assertNotSame(offer, echo);
+		Assert.assertEquals(offer.getSID(), echo.getSID());
+		Assert.assertEquals(JingleAction.SESSION_INITIATE, echo.getAction());
+		Assert.assertEquals("romeo@montague.lit/orchard", echo.getInitiator());
+		Assert.assertNotSame(audio, echo.getContentList().get(0));
+		Assert.assertEquals(audio.toXML(), echo.getContentList().get(0).toXML());
+		Assert.assertFalse(echo.getContentList().get(0).isFrozen());
+		Assert.assertFalse(audio.isFrozen());
+		Assert.assertNotSame(echo.getContentList().get(0), cache.jingleFromSdp(sdp).getContentList().get(0));
+		echo.getContentList().get(0).getFirstChildOfType(IceUdpTransportPacketExtension.class).getCandidate(0)
+				.setPort(1);
+		Assert.assertEquals(audio.toXML(), cache.jingleFromSdp(sdp).getContentList().get(0).toXML());
+
+		// A structurally equal stanza is paired with the same SDP.
+		JingleIQ copy = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		copy.setAction(JingleAction.SESSION_INITIATE);
+		copy.setInitiator("romeo@montague.lit/orchard");
+		Assert.assertSame(sdp, cache.sdpFromJingle(copy));
+
+		// The other fields of the stanza are part of its structure too.
+		copy.setAction(JingleAction.SESSION_ACCEPT);
+		Assert.assertNotSame(sdp, cache.sdpFromJingle(copy));
+		Assert.assertEquals(JingleAction.SESSION_ACCEPT, cache.jingleFromSdp(sdp).getAction());
+		Assert.assertEquals(1, cache.size());
+
+		JingleIQ other = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(false));
+		Assert.assertNotSame(sdp, cache.sdpFromJingle(other));
+		Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testJingleStructuralEquality() {
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		JingleIQ other = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		Assert.assertTrue(jingle.structurallyEquals(other));
+		Assert.assertEquals(jingle.structuralHashCode(), other.structuralHashCode());
+		Assert.assertFalse(jingle.structurallyEquals(null));
+
+		// Addresses and packet IDs aren't part of the structure.
+		other.setTo("juliet@capulet.lit/balcony");
+		Assert.assertTrue(jingle.structurallyEquals(other));
+
+		other.setResponder("juliet@capulet.lit/balcony");
+		Assert.assertFalse(jingle.structurallyEquals(other));
+		other.setResponder(null);
+		other.setReason(new ReasonPacketExtension(Reason.SUCCESS, "done", null));
+		Assert.assertFalse(jingle.structurallyEquals(other));
+		jingle.setReason(new ReasonPacketExtension(Reason.SUCCESS, "done", null));
+		Assert.assertTrue(jingle.structurallyEquals(other));
+		Assert.assertEquals(jingle.structuralHashCode(), other.structuralHashCode());
+
+		// The contents are compared in order.
+		int hash = jingle.structuralHashCode();
+		Collections.reverse(other.getContentList());
+		Assert.assertFalse(jingle.structurallyEquals(other));
+		Collections.reverse(other.getContentList());
+		other.getContentList().get(1).getFirstChildOfType(IceUdpTransportPacketExtension.class).getCandidate(0)
+				.setPort(1);
+		Assert.assertFalse(jingle.structurallyEquals(other));
+		Assert.assertEquals(hash, jingle.structuralHashCode());
+	}
+
+	@Test
+	public void testRoundTripCacheFromSdp() {
+		RoundTripCache cache = new RoundTripCache(1);
+		String sdp = getSampleSdp(true);
+		JingleIQ jingle = cache.jingleFromSdp(sdp);
+		verifyJingleIq(jingle, true);
+		Assert.assertFalse(jingle.getContentList().get(1).isFrozen());
+		Assert.assertSame(sdp, cache.sdpFromJingle(jingle));
+		ContentPacketExtension cached = cache.jingleFromSdp(sdp).getContentList().get(1);
+		Assert.assertEquals(jingle.getContentList().get(1).toXML(), cached.toXML());
+		Assert.assertFalse(cached.isFrozen());
+		Assert.assertNotSame(cached, cache.jingleFromSdp(sdp).getContentList().get(1));
+
+		cache.jingleFromSdp(getSampleSdp(false));
+		Assert.assertEquals(1, cache.size());
+		Assert.assertNotSame(cached, cache.jingleFromSdp(sdp).getContentList().get(1));
+	}
+
+	@Test
+	public void testAttributeStorageKeepsInsertionOrder() {
+		CandidatePacketExtension candidate = new CandidatePacketExtension();
+		for (int i = 0; i < 10; i++) {
+			candidate.setAttribute("attr" + i, i);
+		}
+		candidate.setAttribute("attr3", "three");
+		candidate.removeAttribute("attr0");
+		candidate.setAttribute("attr5", null);
+		candidate.setAttribute("attr0", 0);
+
+		Assert.assertEquals(Arrays.asList("attr1", "attr2", "attr3", "attr4", "attr6", "attr7", "attr8", "attr9",
+				"attr0"), candidate.getAttributeNames());
+		Assert.assertEquals("three", candidate.getAttribute("attr3"));
+		Assert.assertEquals(9, candidate.getAttributeAsInt(new String("attr9")));
+		Assert.assertNull(candidate.getAttribute("attr5"));
+		Assert.assertTrue(candidate.toXML().contains("attr8='8' attr9='9' attr0='0'"));
+	}
+
+	@Test
+	public void testCandidateTypedAttributes() {
+		CandidatePacketExtension candidate = new CandidatePacketExtension();
+		candidate.setFoundation("1");
+		candidate.setPriority(4294967295L);
+		candidate.setPort(5000);
+		candidate.setType(CandidateType.srflx);
+		Assert.assertEquals(4294967295L, candidate.getPriority());
+		Assert.assertEquals("5000", candidate.getAttributeAsString(CandidatePacketExtension.PORT_ATTR_NAME));
+		Assert.assertEquals("srflx", candidate.getAttribute(CandidatePacketExtension.TYPE_ATTR_NAME));
+		Assert.assertEquals(Arrays.asList("priority", "port", "type", "foundation"), candidate.getAttributeNames());
+		Assert.assertEquals("<candidate  priority='4294967295' port='5000' type='srflx' foundation='1'/>",
+				candidate.toXML());
+
+		// The generic attribute methods, as used when parsing XML, set the typed fields.
+		candidate.setAttribute("port", "6000");
+		candidate.setAttribute(new String("component"), "2");
+		candidate.setAttribute("type", "relay");
+		Assert.assertEquals(6000, candidate.getPort());
+		Assert.assertEquals(2, candidate.getComponent());
+		Assert.assertEquals(CandidateType.relay, candidate.getType());
+		Assert.assertTrue(candidate.compareTo(new CandidatePacketExtension()) < 0);
+
+		// Values that don't parse are kept as they are.
+		candidate.setAttribute("port", "none");
+		Assert.assertEquals("none", candidate.getAttributeAsString("port"));
+		try {
+			candidate.getPort();
+			Assert.fail();
+		} catch (NumberFormatException e) {
+			// Expected.
+		}
+		candidate.setPort(7000);
+		Assert.assertEquals("7000", candidate.getAttributeAsString("port"));
+		Assert.assertEquals(1, Collections.frequency(candidate.getAttributeNames(), "port"));
+
+		candidate.removeAttribute("priority");
+		candidate.setType(null);
+		Assert.assertEquals(-1, candidate.getPriority());
+		Assert.assertNull(candidate.getType());
+		Assert.assertNull(candidate.getAttribute("type"));
+	}
+
+	@Test
+	public void testCandidateComparison() {
+		CandidatePacketExtension host = new CandidatePacketExtension();
+		host.setType(CandidateType.host);
+		CandidatePacketExtension relay = new CandidatePacketExtension();
+		relay.setType(CandidateType.relay);
+		CandidatePacketExtension local = new CandidatePacketExtension();
+		local.setAttribute("type", "local");
+		List<CandidatePacketExtension> candidates = new ArrayList<CandidatePacketExtension>(Arrays.asList(relay,
+				local, host));
+		Collections.sort(candidates);
+		Assert.assertEquals(Arrays.asList(host, local, relay), candidates);
+		Assert.assertEquals(0, host.compareTo(host));
+	}
+
+	@Test
+	public void testLazyChildExtensions() {
+		StreamPacketExtension stream = new StreamPacketExtension();
+		Assert.assertTrue(stream.getChildExtensions().isEmpty());
+		Assert.assertNull(stream.getFirstChildOfType(SsrcPacketExtension.class));
+		Assert.assertEquals("<stream />", stream.toXML());
+
+		SsrcPacketExtension ssrc = new SsrcPacketExtension();
+		ssrc.setText("1234");
+		stream.setSsrc(ssrc);
+		Assert.assertSame(ssrc, stream.getSsrc());
+		Assert.assertEquals("<stream ><ssrc >1234</ssrc></stream>", stream.toXML());
+
+		Assert.assertTrue(ssrc.getChildExtensions().isEmpty());
+		Assert.assertNull(ssrc.getFirstChildOfType(SsrcPacketExtension.class));
+	}
+
+	@Test
+	public void testLeafKeepsParsedChildren() throws Exception {
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		jingle.setAction(JingleAction.SESSION_INITIATE);
+		CryptoPacketExtension crypto = jingle.getContentList().get(0)
+				.getFirstChildOfType(RtpDescriptionPacketExtension.class)
+				.getFirstChildOfType(EncryptionPacketExtension.class).getCryptoList().get(0);
+		Assert.assertSame(Collections.emptyList(), crypto.getChildExtensions());
+		Assert.assertNull(crypto.getFirstChildOfType(ParameterPacketExtension.class));
+		Assert.assertSame(Collections.emptyList(), crypto.getChildExtensionsOfType(ParameterPacketExtension.class));
+		ParameterPacketExtension parameter = new ParameterPacketExtension();
+		parameter.setName("x-key");
+		parameter.setValue("x-value");
+		crypto.addChildExtension(parameter);
+		Assert.assertEquals(Arrays.asList(parameter), crypto.getChildExtensions());
+		Assert.assertSame(parameter, crypto.getFirstChildOfType(ParameterPacketExtension.class));
+		Assert.assertEquals(Arrays.asList(parameter), crypto.getChildExtensionsOfType(ParameterPacketExtension.class));
+		Assert.assertTrue(crypto.getChildExtensionsOfType(SsrcPacketExtension.class).isEmpty());
+
+		CryptoPacketExtension frozenCrypto = (CryptoPacketExtension) crypto.deepCopy();
+		frozenCrypto.freeze();
+		Assert.assertEquals(1, frozenCrypto.getChildExtensions().size());
+		try {
+			frozenCrypto.getChildExtensions().clear();
+			Assert.fail("Modified the children of a frozen leaf");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		// Children of leaves survive a round trip through XML.
+		JingleIQ parsed = parseJingleIq(jingle.getChildElementXML());
+		CryptoPacketExtension parsedCrypto = parsed.getContentList().get(0)
+				.getFirstChildOfType(RtpDescriptionPacketExtension.class)
+				.getFirstChildOfType(EncryptionPacketExtension.class).getCryptoList().get(0);
+		ParameterPacketExtension parsedParameter = parsedCrypto.getFirstChildOfType(ParameterPacketExtension.class);
+		Assert.assertEquals("x-key", parsedParameter.getName());
+		Assert.assertEquals("x-value", parsedParameter.getValue());
+	}
+
+	@Test
+	public void testChildExtensionIndex() {
+		ContentPacketExtension content = new ContentPacketExtension();
+		RtpDescriptionPacketExtension description = new RtpDescriptionPacketExtension();
+		IceUdpTransportPacketExtension iceUdp = new IceUdpTransportPacketExtension();
+		RawUdpTransportPacketExtension rawUdp = new RawUdpTransportPacketExtension();
+		content.addChildExtension(description);
+		content.addChildExtension(iceUdp);
+
+		List<IceUdpTransportPacketExtension> iceUdps = content.getChildExtensionsOfType(
+				IceUdpTransportPacketExtension.class);
+		Assert.assertEquals(Arrays.asList(iceUdp), iceUdps);
+		try {
+			iceUdps.clear();
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected.
+		}
+
+		// The lists returned are snapshots of the index, which children added or removed later don't change.
+		content.addChildExtension(new IceUdpTransportPacketExtension());
+		Assert.assertEquals(1, iceUdps.size());
+		content.getChildExtensions().remove(2);
+		Assert.assertEquals(Arrays.asList(iceUdp), iceUdps);
+		content.setThreadConfined(true);
+		iceUdps = content.getChildExtensionsOfType(IceUdpTransportPacketExtension.class);
+		Assert.assertSame(iceUdps, content.getChildExtensionsOfType(IceUdpTransportPacketExtension.class));
+		content.setThreadConfined(false);
+		Assert.assertSame(iceUdps, content.getChildExtensionsOfType(IceUdpTransportPacketExtension.class));
+
+		// Subclasses of the requested type match too.
+		content.addChildExtension(rawUdp);
+		Assert.assertEquals(Arrays.asList(iceUdp, rawUdp),
+				content.getChildExtensionsOfType(IceUdpTransportPacketExtension.class));
+		Assert.assertEquals(Arrays.asList(rawUdp), content.getChildExtensionsOfType(RawUdpTransportPacketExtension.class));
+		Assert.assertSame(iceUdp, content.getFirstChildOfType(IceUdpTransportPacketExtension.class));
+		Assert.assertSame(description, content.getFirstChildOfType(RtpDescriptionPacketExtension.class));
+		Assert.assertTrue(content.getChildExtensionsOfType(CryptoPacketExtension.class).isEmpty());
+
+		// Modifications of the child list itself are seen too.
+		StreamPacketExtension stream = new StreamPacketExtension();
+		SsrcPacketExtension first = new SsrcPacketExtension();
+		SsrcPacketExtension second = new SsrcPacketExtension();
+		stream.setSsrc(first);
+		Assert.assertSame(first, stream.getSsrc());
+		stream.setSsrc(second);
+		Assert.assertSame(second, stream.getSsrc());
+		Assert.assertEquals(1, stream.getChildExtensionsOfType(SsrcPacketExtension.class).size());
+	}
+
+	@Test
+	public void testRtpDescriptionChildrenView() {
+		RtpDescriptionPacketExtension description = new RtpDescriptionPacketExtension();
+		List<? extends PacketExtension> children = description.getChildExtensions();
+		Assert.assertTrue(children.isEmpty());
+
+		PayloadTypePacketExtension opus = new PayloadTypePacketExtension();
+		RtcpMuxExtension rtcpMux = new RtcpMuxExtension();
+		BandwidthPacketExtension bandwidth = new BandwidthPacketExtension();
+		PayloadTypePacketExtension pcmu = new PayloadTypePacketExtension();
+		description.addChildExtension(opus);
+		description.addChildExtension(rtcpMux);
+		description.setBandwidth(bandwidth);
+		description.addPayloadType(pcmu);
+
+		// The view sees later changes, payload types first.
+		Assert.assertSame(children, description.getChildExtensions());
+		Assert.assertEquals(Arrays.asList(opus, pcmu, bandwidth, rtcpMux), children);
+		Assert.assertEquals(Arrays.asList(opus, pcmu),
+				description.getChildExtensionsOfType(PayloadTypePacketExtension.class));
+		Assert.assertSame(rtcpMux, description.getFirstChildOfType(RtcpMuxExtension.class));
+		try {
+			description.getChildExtensions().clear();
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected.
+		}
+		try {
+			children.get(4);
+			Assert.fail();
+		} catch (IndexOutOfBoundsException e) {
+			// Expected.
+		}
+	}
+
+	@Test
+	public void testFrozenExtensionTree() {
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		ContentPacketExtension audio = jingle.getContentList().get(0);
+		String xml = audio.toXML();
+		audio.freeze();
+		Assert.assertTrue(audio.isFrozen());
+		Assert.assertEquals(xml, audio.toXML());
+
+		RtpDescriptionPacketExtension description = audio.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+		Assert.assertTrue(description.isFrozen());
+		Assert.assertTrue(description.getPayloadTypes().get(0).isFrozen());
+		try {
+			description.getPayloadTypes().get(0).setName("PCMU");
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// Frozen.
+		}
+		try {
+			description.addPayloadType(new PayloadTypePacketExtension());
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// Frozen.
+		}
+		try {
+			description.getPayloadTypes().clear();
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// Read-only.
+		}
+		IceUdpTransportPacketExtension transport = audio.getFirstChildOfType(IceUdpTransportPacketExtension.class);
+		try {
+			transport.getCandidate(0).setPort(1);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// Frozen.
+		}
+
+		// A mutable copy shares the frozen children.
+		ContentPacketExtension copy = (ContentPacketExtension) audio.mutableCopy();
+		Assert.assertFalse(copy.isFrozen());
+		Assert.assertEquals(xml, copy.toXML());
+		Assert.assertSame(description, copy.getFirstChildOfType(RtpDescriptionPacketExtension.class));
+		copy.setName("voice");
+		Assert.assertEquals("audio", audio.getName());
+
+		IceUdpTransportPacketExtension transportCopy = (IceUdpTransportPacketExtension) transport.mutableCopy();
+		transportCopy.removeCandidate(transportCopy.getCandidate(0));
+		Assert.assertEquals(transport.getCandidateCount() - 1, transportCopy.getCandidateCount());
+
+		// Streams added with addStream() only are frozen with their element.
+		StreamsPacketExtension streams = new StreamsPacketExtension();
+		StreamPacketExtension stream = new StreamPacketExtension();
+		streams.addStream(stream);
+		streams.freeze();
+		Assert.assertTrue(stream.isFrozen());
+		try {
+			streams.addStream(new StreamPacketExtension());
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// Frozen.
+		}
+		try {
+			streams.getStreamList().clear();
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// Read-only.
+		}
+	}
+
+	@Test
+	public void testCachedContentsAreFrozen() {
+		MediaSectionCache cache = new MediaSectionCache();
+		JingleIQ jingle = SdpToJingle.jingleFromSdp(getSampleSdp(true), cache);
+		for (ContentPacketExtension content : jingle.getContentList()) {
+			Assert.assertTrue(content.isFrozen());
+		}
+		Assert.assertFalse(SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true)).getContentList().get(0)
+				.isFrozen());
+	}
+
+	@Test
+	public void testDeepCopy() {
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		ContentPacketExtension audio = jingle.getContentList().get(0);
+		audio.freeze();
+
+		ContentPacketExtension copy = (ContentPacketExtension) audio.deepCopy();
+		Assert.assertEquals(audio.toXML(), copy.toXML());
+		RtpDescriptionPacketExtension description = audio.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+		RtpDescriptionPacketExtension descriptionCopy = copy.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+		Assert.assertNotSame(description, descriptionCopy);
+		Assert.assertFalse(descriptionCopy.isFrozen());
+		Assert.assertNotSame(description.getPayloadTypes().get(0), descriptionCopy.getPayloadTypes().get(0));
+		Assert.assertEquals(description.getFirstChildOfType(EncryptionPacketExtension.class).getCryptoList().size(),
+				descriptionCopy.getFirstChildOfType(EncryptionPacketExtension.class).getCryptoList().size());
+
+		IceUdpTransportPacketExtension transport = audio.getFirstChildOfType(IceUdpTransportPacketExtension.class);
+		IceUdpTransportPacketExtension transportCopy = copy.getFirstChildOfType(IceUdpTransportPacketExtension.class);
+		Assert.assertEquals(transport.getCandidateCount(), transportCopy.getCandidateCount());
+		CandidatePacketExtension candidateCopy = transportCopy.getCandidate(0);
+		Assert.assertNotSame(transport.getCandidate(0), candidateCopy);
+		Assert.assertEquals(transport.getCandidate(0).getPriority(), candidateCopy.getPriority());
+
+		// The copy is adapted without changing the original.
+		candidateCopy.setPort(1);
+		descriptionCopy.getPayloadTypes().get(0).setName("PCMU");
+		Assert.assertFalse(audio.toXML().equals(copy.toXML()));
+		Assert.assertEquals(1, candidateCopy.getPort());
+		Assert.assertFalse(transport.getCandidate(0).getPort() == 1);
+
+		// Every extension creates its copies with its own constructor.
+		MuteSessionInfoPacketExtension mute = new MuteSessionInfoPacketExtension(true, "voice");
+		MuteSessionInfoPacketExtension muteCopy = (MuteSessionInfoPacketExtension) mute.deepCopy();
+		Assert.assertTrue(muteCopy.isMute());
+		Assert.assertEquals("voice", muteCopy.getName());
+		RedirectPacketExtension redirect = new RedirectPacketExtension();
+		redirect.setRedir("xmpp:someone@example.com");
+		Assert.assertEquals(redirect.getRedir(), ((RedirectPacketExtension) redirect.deepCopy()).getRedir());
+		Assert.assertEquals(redirect.toXML(), redirect.deepCopy().toXML());
+	}
+
+	@Test
+	public void testThreadConfinedConversion() {
+		SdpToJingleConverter converter = new SdpToJingleConverter();
+		JingleIQ published = converter.jingleFromSdp(getSampleSdp(true));
+		Assert.assertFalse(published.isThreadConfined());
+		Assert.assertFalse(published.getContentList().get(0).isThreadConfined());
+
+		JingleIQ confined = converter.confinedJingleFromSdp(getSampleSdp(true));
+		verifyJingleIq(confined, true);
+		Assert.assertTrue(confined.isThreadConfined());
+		ContentPacketExtension audio = confined.getContentList().get(0);
+		IceUdpTransportPacketExtension transport = audio.getFirstChildOfType(IceUdpTransportPacketExtension.class);
+		Assert.assertTrue(audio.isThreadConfined());
+		Assert.assertTrue(transport.getCandidate(0).isThreadConfined());
+		Assert.assertTrue(audio.getFirstChildOfType(RtpDescriptionPacketExtension.class).getPayloadTypes().get(0)
+				.isThreadConfined());
+		Assert.assertEquals(published.getChildElementXML(), confined.getChildElementXML());
+
+		confined.publish();
+		Assert.assertFalse(confined.isThreadConfined());
+		Assert.assertFalse(audio.isThreadConfined());
+		Assert.assertFalse(transport.getCandidate(0).isThreadConfined());
+		Assert.assertEquals(published.getChildElementXML(), confined.getChildElementXML());
+	}
+
+	@Test
+	public void testJingleVocabulary() throws Exception {
+		Assert.assertSame(CandidatePacketExtension.ELEMENT_NAME, JingleVocabulary.intern(new String("candidate")));
+		Assert.assertSame(CandidatePacketExtension.IP_ATTR_NAME, JingleVocabulary.intern(new String("ip")));
+		Assert.assertSame(PayloadTypePacketExtension.CLOCKRATE_ATTR_NAME,
+				JingleVocabulary.intern(new String("clockrate")));
+		String unknown = new String("x-unknown");
+		Assert.assertSame(unknown, JingleVocabulary.intern(unknown));
+		Assert.assertNull(JingleVocabulary.intern(null));
+		Assert.assertSame(CandidatePacketExtension.ELEMENT_NAME, Vocabulary.intern(new String("candidate")));
+		Vocabulary.addNames(Arrays.asList(new String("candidate"), unknown));
+		Assert.assertSame(CandidatePacketExtension.ELEMENT_NAME, Vocabulary.intern(new String("candidate")));
+		Assert.assertSame(unknown, Vocabulary.intern(new String("x-unknown")));
+
+		Assert.assertSame(CandidateType.srflx.toString(), Vocabulary.internValue(new String("srflx")));
+		Assert.assertSame("udp", Vocabulary.internValue(new String("udp")));
+		Assert.assertNotSame("candidate", Vocabulary.internValue(new String("candidate")));
+		String ip = new String("172.22.76.221");
+		Assert.assertSame(ip, Vocabulary.internValue(ip));
+		String key = new String("inline:WVNfX19zZW1jdGwgKCkgewkyMjA7fQp9CnVubGVz");
+		Assert.assertSame(key, Vocabulary.internValue(key));
+		Assert.assertNull(Vocabulary.internValue(null));
+
+		Assert.assertEquals(JingleAction.SESSION_INITIATE, JingleAction.parseString("session-initiate"));
+		Assert.assertEquals(Reason.CONNECTIVITY_ERROR, Reason.parseString("connectivity-error"));
+		Assert.assertEquals(SessionInfoType.ringing, SessionInfoType.parseString("ringing"));
+		Assert.assertEquals(CandidateType.srflx, CandidateType.parseString("srflx"));
+		Assert.assertNull(JingleVocabulary.candidateType("SRFLX"));
+		try {
+			CandidateType.parseString("SRFLX");
+			Assert.fail("Parsed an unknown candidate type");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		jingle.setAction(JingleAction.SESSION_INITIATE);
+		JingleIQ parsed = parseJingleIq(jingle.getChildElementXML());
+		Assert.assertEquals(JingleAction.SESSION_INITIATE, parsed.getAction());
+		String parsedXml = parsed.getChildElementXML();
+		Assert.assertEquals(parsedXml, parseJingleIq(parsedXml).getChildElementXML());
+		List<IceUdpTransportPacketExtension> transports = parsed.getContentList().get(0)
+				.getChildExtensionsOfType(IceUdpTransportPacketExtension.class);
+		IceUdpTransportPacketExtension transport = transports.get(transports.size() - 1);
+		Assert.assertEquals(CandidateType.srflx, transport.getCandidateList().get(2).getType());
+
+		ContentPacketExtension content = parsed.getContentList().get(0);
+		List<String> names = content.getAttributeNames();
+		Assert.assertSame(ContentPacketExtension.CREATOR_ATTR_NAME,
+				names.get(names.indexOf(ContentPacketExtension.CREATOR_ATTR_NAME)));
+		Assert.assertSame(ContentPacketExtension.CreatorEnum.initiator.toString(),
+				content.getAttributeAsString(ContentPacketExtension.CREATOR_ATTR_NAME));
+	}
+
+	private static JingleIQ parseJingleIq(final String xml) throws Exception {
+		XmlPullParser parser = new MXParser();
+		parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+		parser.setInput(new StringReader(xml));
+		parser.next();
+		return new JingleIQProvider().parseIQ(parser);
+	}
+
+	@Test
+	public void testStructuralEquality() {
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		JingleIQ other = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		ContentPacketExtension audio = jingle.getContentList().get(0);
+		ContentPacketExtension otherAudio = other.getContentList().get(0);
+		Assert.assertTrue(audio.structurallyEquals(otherAudio));
+		Assert.assertEquals(audio.structuralHashCode(), otherAudio.structuralHashCode());
+
+		// equals() and hashCode() stay those of the identity.
+		Assert.assertFalse(audio.equals(otherAudio));
+		List<ContentPacketExtension> contents = new ArrayList<ContentPacketExtension>();
+		contents.add(audio);
+		contents.add(otherAudio);
+		Assert.assertEquals(1, contents.indexOf(otherAudio));
+		Assert.assertTrue(contents.remove(otherAudio));
+		Assert.assertSame(audio, contents.get(0));
+
+		// A change deep in the tree changes the structural hash code of the content.
+		int hash = audio.structuralHashCode();
+		CandidatePacketExtension candidate = audio.getFirstChildOfType(IceUdpTransportPacketExtension.class)
+				.getCandidate(0);
+		int port = candidate.getPort();
+		candidate.setPort(port + 1);
+		Assert.assertFalse(audio.structurallyEquals(otherAudio));
+		Assert.assertFalse(hash == audio.structuralHashCode());
+		candidate.setPort(port);
+		Assert.assertEquals(hash, audio.structuralHashCode());
+		Assert.assertTrue(audio.structurallyEquals(otherAudio));
+
+		PayloadTypePacketExtension payloadType = audio.getFirstChildOfType(RtpDescriptionPacketExtension.class)
+				.getPayloadTypes().get(0);
+		String name = payloadType.getName();
+		payloadType.setName("PCMU");
+		Assert.assertFalse(hash == audio.structuralHashCode());
+		payloadType.setName(name);
+		Assert.assertEquals(hash, audio.structuralHashCode());
+
+		// So does a change made through the lists of the extensions.
+		RtpDescriptionPacketExtension description = audio.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+		description.getPayloadTypes().remove(0);
+		Assert.assertFalse(hash == audio.structuralHashCode());
+		description.getPayloadTypes().add(0, payloadType);
+		Assert.assertEquals(hash, audio.structuralHashCode());
+
+		// Attributes are compared in any order.
+		PayloadTypePacketExtension a = new PayloadTypePacketExtension();
+		a.setId(111);
+		a.setName("opus");
+		PayloadTypePacketExtension b = new PayloadTypePacketExtension();
+		b.setName("opus");
+		b.setId(111);
+		Assert.assertTrue(a.structurallyEquals(b));
+		Assert.assertEquals(a.structuralHashCode(), b.structuralHashCode());
+		Assert.assertFalse(a.structurallyEquals(null));
+
+		// Frozen trees and their copies are equal to the originals.
+		audio.freeze();
+		Assert.assertTrue(audio.structurallyEquals(otherAudio));
+		ContentPacketExtension copy = (ContentPacketExtension) audio.deepCopy();
+		Assert.assertTrue(audio.structurallyEquals(copy));
+		Assert.assertEquals(audio.structuralHashCode(), copy.structuralHashCode());
+		copy.freeze();
+		Assert.assertTrue(copy.structurallyEquals(audio));
+
+		// Streams added with addStream() are part of the structure of their element.
+		StreamsPacketExtension streams = new StreamsPacketExtension();
+		StreamPacketExtension stream = new StreamPacketExtension();
+		streams.addStream(stream);
+		Assert.assertFalse(streams.structurallyEquals(new StreamsPacketExtension()));
+		stream.setSsrc(new SsrcPacketExtension());
+		StreamsPacketExtension equalStreams = new StreamsPacketExtension();
+		StreamPacketExtension equalStream = new StreamPacketExtension();
+		equalStream.setSsrc(new SsrcPacketExtension());
+		equalStreams.addStream(equalStream);
+		Assert.assertTrue(streams.structurallyEquals(equalStreams));
+		Assert.assertEquals(streams.structuralHashCode(), equalStreams.structuralHashCode());
+	}
+
+	@Test
+	public void testCachedStructuralHashCode() {
+		ContentPacketExtension audio = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true))
+				.getContentList().get(0);
+		int hash = audio.structuralHashCode();
+		Assert.assertEquals(hash, audio.structuralHashCode());
+
+		// Changes made through sub-lists and iterators reach the ancestors, and keep the child index up to date.
+		RtpDescriptionPacketExtension description = audio.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+		PayloadTypePacketExtension payloadType = description.getPayloadTypes().get(0);
+		PayloadTypePacketExtension other = new PayloadTypePacketExtension();
+		other.setId(0);
+		other.setName("PCMU");
+		description.getPayloadTypes().subList(0, 1).set(0, other);
+		Assert.assertFalse(hash == audio.structuralHashCode());
+		description.getPayloadTypes().set(0, payloadType);
+		Assert.assertEquals(hash, audio.structuralHashCode());
+
+		IceUdpTransportPacketExtension transport = audio.getFirstChildOfType(IceUdpTransportPacketExtension.class);
+		@SuppressWarnings("unchecked")
+		List<PacketExtension> children = (List<PacketExtension>) audio.getChildExtensions();
+		int index = children.indexOf(transport);
+		IceUdpTransportPacketExtension otherTransport = new IceUdpTransportPacketExtension();
+		children.subList(index, index + 1).set(0, otherTransport);
+		Assert.assertSame(otherTransport, audio.getFirstChildOfType(IceUdpTransportPacketExtension.class));
+		Assert.assertFalse(hash == audio.structuralHashCode());
+		ListIterator<PacketExtension> iterator = children.listIterator(index);
+		iterator.next();
+		iterator.set(transport);
+		Assert.assertSame(transport, audio.getFirstChildOfType(IceUdpTransportPacketExtension.class));
+		Assert.assertEquals(hash, audio.structuralHashCode());
+
+		// A child shared by a mutable copy tells both extensions about its changes.
+		ContentPacketExtension copy = (ContentPacketExtension) audio.mutableCopy();
+		Assert.assertEquals(hash, copy.structuralHashCode());
+		CandidatePacketExtension candidate = transport.getCandidate(0);
+		int port = candidate.getPort();
+		candidate.setPort(port + 1);
+		Assert.assertFalse(hash == audio.structuralHashCode());
+		Assert.assertFalse(hash == copy.structuralHashCode());
+		Assert.assertTrue(audio.structurallyEquals(copy));
+		candidate.setPort(port);
+		Assert.assertEquals(hash, audio.structuralHashCode());
+		Assert.assertEquals(hash, copy.structuralHashCode());
+	}
+
+	@Test
+	public void testStreamsWithoutCryptoMatchSessionDescription() throws SDPParseException {
+		String text = getSampleSdp(true).replaceAll("a=crypto:[^\r]*\r\n", "")
+				.replace("a=ssrc:2570980487 cname:hsWuSQJxx7przmb8\r\n",
+						"a=ssrc:3000000001 cname:hsWuSQJxx7przmb8\r\n"
+						+ "a=ssrc:2570980487 cname:hsWuSQJxx7przmb8\r\n"
+						+ "a=ssrc:3000000001 label:audio_label_2\r\n");
+		JingleIQ expected = SdpToJingle.jingleFromSdp(SDPFactory.parseSessionDescription(text));
+		JingleIQ actual = SdpToJingle.jingleFromSdp((CharSequence) text);
+		Assert.assertEquals(expected.getChildElementXML(), actual.getChildElementXML());
+
+		RtpDescriptionPacketExtension description = actual.getContentList().get(0)
+				.getFirstChildOfType(RtpDescriptionPacketExtension.class);
+		Assert.assertNull(description.getFirstChildOfType(EncryptionPacketExtension.class));
+		List<StreamPacketExtension> streams = description.getFirstChildOfType(StreamsPacketExtension.class)
+				.getChildExtensionsOfType(StreamPacketExtension.class);
+		Assert.assertEquals(2, streams.size());
+		Assert.assertEquals("3000000001", streams.get(0).getSsrc().getText());
+		Assert.assertEquals("audio_label_2", streams.get(0).getAttribute("label"));
+		Assert.assertEquals("2570980487", streams.get(1).getSsrc().getText());
+	}
+
+	@Test
+	public void testEveryStreamWrittenToSdp() throws IOException {
+		String text = getSampleSdp(true).replace("a=ssrc:2570980487 label:audio_label\r\n",
+				"a=ssrc:2570980487 label:audio_label\r\n" + "a=ssrc:3000000001 cname:hsWuSQJxx7przmb8\r\n");
+		JingleIQ jingle = SdpToJingle.jingleFromSdp((CharSequence) text);
+
+		String sdpText = SdpToJingle.sdpFromJingle(jingle).toString();
+		StringBuilder written = new StringBuilder();
+		SdpToJingle.sdpFromJingle(jingle, written);
+		for (String out : new String[] {sdpText, written.toString()}) {
+			Assert.assertTrue(out.contains("a=ssrc:2570980487 label:audio_label\r\n"));
+			Assert.assertTrue(out.contains("a=ssrc:3000000001 cname:hsWuSQJxx7przmb8\r\n"));
+			Assert.assertTrue(out.contains("a=ssrc:43633328 label:video_label\r\n"));
+		}
+	}
+
+	@Test
+	public void testRoundTripCacheLeavesCallerStanzasMutable() {
+		useFixedSessionDescriptionFactory();
+		RoundTripCache cache = new RoundTripCache(2);
+		JingleIQ offer = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		offer.setAction(JingleAction.SESSION_INITIATE);
+		String sdp = cache.sdpFromJingle(offer);
+
+		// The caller's stanza is still its own, and changing it doesn't change the pair.
+		CandidatePacketExtension candidate = offer.getContentList().get(0)
+				.getFirstChildOfType(IceUdpTransportPacketExtension.class).getCandidate(0);
+		candidate.setPort(candidate.getPort() + 1);
+		String changedSdp = cache.sdpFromJingle(offer);
+		Assert.assertFalse(sdp.equals(changedSdp));
+		Assert.assertEquals(2, cache.size());
+		JingleIQ copy = SdpToJingle.jingleFromSdp((CharSequence) getSampleSdp(true));
+		copy.setAction(JingleAction.SESSION_INITIATE);
+		Assert.assertSame(sdp, cache.sdpFromJingle(copy));
+
+		// Both directions of a pair are evicted together: the least recently used pair goes first whichever way
+		// it was last looked up.
+		cache.jingleFromSdp(sdp);
+		cache.jingleFromSdp(getSampleSdp(false));
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(JingleAction.SESSION_INITIATE, cache.jingleFromSdp(sdp).getAction());
+		Assert.assertNull(cache.jingleFromSdp(changedSdp).getAction());
+	}
+
+	@Test
+	public void testRemoveCandidateInstance() {
+		IceUdpTransportPacketExtension transport = new IceUdpTransportPacketExtension();
+		CandidatePacketExtension first = new CandidatePacketExtension();
+		first.setType(CandidateType.host);
+		first.setPort(5000);
+		CandidatePacketExtension second = new CandidatePacketExtension();
+		second.setType(CandidateType.host);
+		second.setPort(5000);
+		Assert.assertTrue(first.structurallyEquals(second));
+		transport.addCandidate(first);
+		transport.addCandidate(second);
+
+		// The candidate passed is the one removed, not the first one structurally equal to it.
+		Assert.assertTrue(transport.removeCandidate(second));
+		Assert.assertEquals(1, transport.getCandidateCount());
+		Assert.assertSame(first, transport.getCandidate(0));
+		Assert.assertFalse(transport.removeCandidate(second));
+		Assert.assertSame(first, transport.getCandidate(0));
+
+		// Crypto elements are still told apart by their suite, key and session parameters and tag only.
+		EncryptionPacketExtension encryption = new EncryptionPacketExtension();
+		CryptoPacketExtension crypto = new CryptoPacketExtension();
+		crypto.setCryptoSuite("AES_CM_128_HMAC_SHA1_80");
+		CryptoPacketExtension equalCrypto = new CryptoPacketExtension();
+		equalCrypto.setCryptoSuite("AES_CM_128_HMAC_SHA1_80");
+		Assert.assertEquals(crypto, equalCrypto);
+		encryption.addCrypto(crypto);
+		encryption.addCrypto(equalCrypto);
+		Assert.assertEquals(1, encryption.getCryptoList().size());
+		StreamsPacketExtension streams = new StreamsPacketExtension();
+		streams.addStream(new StreamPacketExtension());
+		streams.addStream(new StreamPacketExtension());
+		Assert.assertEquals(2, streams.getStreamList().size());
+	}
+
+	@Test
+	public void testAttributeView() {
+		CandidateSubclass candidate = new CandidateSubclass();
+		Map<String, String> attributes = candidate.attributes();
+		Assert.assertTrue(attributes.isEmpty());
+
+		// The view follows the attributes, including the ones candidates keep in fields of their own.
+		candidate.setPort(5000);
+		candidate.setAttribute("label", "first");
+		Assert.assertEquals(2, attributes.size());
+		Assert.assertEquals("5000", attributes.get(CandidatePacketExtension.PORT_ATTR_NAME));
+		Assert.assertEquals(Arrays.asList("port", "label"), new ArrayList<String>(attributes.keySet()));
+		candidate.removeAttribute("label");
+		Assert.assertFalse(attributes.containsKey("label"));
+
+		try {
+			attributes.put("label", "second");
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			Assert.assertNull(candidate.getAttribute("label"));
+		}
+	}
+
+	@Test
+	public void testCopyOfSubclassWithoutNewInstanceFails() {
+		CandidateSubclass candidate = new CandidateSubclass();
+		candidate.setPort(5000);
+		try {
+			candidate.deepCopy();
+			Assert.fail("Copied a subclass as its parent class");
+		} catch (UnsupportedOperationException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains(CandidateSubclass.class.getName()));
+		}
+		try {
+			candidate.mutableCopy();
+			Assert.fail("Copied a subclass as its parent class");
+		} catch (UnsupportedOperationException e) {
+			// Expected.
+		}
+
+		// The classes that override it are still copied as themselves.
+		RemoteCandidatePacketExtension remote = new RemoteCandidatePacketExtension();
+		remote.setPort(5000);
+		Assert.assertSame(RemoteCandidatePacketExtension.class, remote.deepCopy().getClass());
+	}
+
+	/**
+	 * A subclass of a copyable extension that doesn't override newInstance(), and exposes the protected attribute
+	 * view to the tests.
+	 */
+	private static class CandidateSubclass extends CandidatePacketExtension {
+		Map<String, String> attributes() {
+			return getAttributeMap();
+		}
+	}
 }